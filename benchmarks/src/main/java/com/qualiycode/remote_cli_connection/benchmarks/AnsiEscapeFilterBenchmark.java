@@ -0,0 +1,64 @@
+package com.qualiycode.remote_cli_connection.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qualiycode.remote_cli_connection.AnsiEscapeFilter;
+import com.qualiycode.remote_cli_connection.benchmarks.Transcripts.Transcript;
+
+/**
+ * Measures the throughput of the terminal escape sequences filter (AnsiEscapeFilter) on 8K chars reads
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnsiEscapeFilterBenchmark {
+
+	private static final int READ_SIZE = 8192;
+	
+	@Param({"HUGE", "ANSI", "SYSTEMCTL"})
+	public Transcript transcript;
+	
+	private char[] output;
+	private char[] buffer;
+	private AnsiEscapeFilter filter;
+	
+	@Setup
+	public void setup(){
+		output = transcript.build().toCharArray();
+		buffer = new char[READ_SIZE];
+		filter = new AnsiEscapeFilter();
+	}
+	
+	/**
+	 * Filters the whole transcript, one read buffer at a time (the way the connection does)
+	 * @return the number of chars kept
+	 */
+	@Benchmark
+	public int filter(){
+		int kept = 0;
+		for(int offset=0; offset<output.length; offset+=READ_SIZE){
+			int count = Math.min(READ_SIZE, output.length - offset);
+			System.arraycopy(output, offset, buffer, 0, count);
+			kept += filter.filter(buffer, 0, count);
+		}
+		return kept;
+	}
+}
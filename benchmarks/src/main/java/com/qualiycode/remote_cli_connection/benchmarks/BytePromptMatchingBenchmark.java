@@ -0,0 +1,63 @@
+package com.qualiycode.remote_cli_connection.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.benchmarks.Transcripts.Transcript;
+
+/**
+ * Measures reading a whole command output fed as raw bytes, matching the prompts on the decoded chars or on the raw bytes
+ * 
+ * With retainOutput off the lines are not decoded at all when the prompts are matched on the bytes
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BytePromptMatchingBenchmark {
+
+	@Param({"SMALL", "HUGE", "ANSI"})
+	public Transcript transcript;
+	
+	@Param({"false", "true"})
+	public boolean bytePromptMatching;
+	
+	@Param({"true", "false"})
+	public boolean retainOutput;
+	
+	private byte[] output;
+	private TranscriptCliConnection connection;
+	
+	@Setup
+	public void setup() throws Exception{
+		output = transcript.build().getBytes(StandardCharsets.UTF_8);
+		connection = new TranscriptCliConnection(Transcripts.END_PROMPT);
+		connection.setBytePromptMatching(bytePromptMatching);
+	}
+	
+	@Benchmark
+	public String waitForTerminal() throws Exception{
+		CliCommand command = new CliCommand("cat");
+		command.setSilent(true);
+		command.setRetainOutput(retainOutput);
+		return connection.read(output, command);
+	}
+}
@@ -0,0 +1,95 @@
+package com.qualiycode.remote_cli_connection.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.benchmarks.Transcripts.Transcript;
+import com.qualiycode.remote_cli_connection.ssh.CentOS6.Centos6SshCliConnection;
+
+/**
+ * Measures the terminal colors filtering of the CentOS 6 connection (Centos6SshCliConnection.readOutputAndAddLine),
+ * alone and as part of reading a whole command output
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Centos6ReadBenchmark {
+
+	@Param({"HUGE", "ANSI", "SYSTEMCTL"})
+	public Transcript transcript;
+	
+	private String output;
+	private TranscriptCentos6Connection connection;
+	private char[] buffer;
+	
+	@Setup
+	public void setup() throws Exception{
+		output = transcript.build();
+		connection = new TranscriptCentos6Connection(Transcripts.END_PROMPT);
+		buffer = new char[8192];
+	}
+	
+	@Benchmark
+	public int readOutputAndAddLine() throws Exception{
+		return connection.filter(output, buffer);
+	}
+	
+	@Benchmark
+	public String waitForTerminal() throws Exception{
+		CliCommand command = new CliCommand("ls");
+		command.setSilent(true);
+		return connection.read(output, command);
+	}
+	
+	/**
+	 * The CentOS 6 connection reading canned transcripts from memory 
+	 */
+	public static class TranscriptCentos6Connection extends Centos6SshCliConnection{
+
+		public TranscriptCentos6Connection(String endLineStr) {
+			super("user", "password", "127.0.0.1", endLineStr);
+			dataOut = new DataOutputStream(new TranscriptCliConnection.DiscardingOutputStream());
+		}
+		
+		/**
+		 * Reads the whole transcript through the colors filter
+		 * @return the number of chars kept
+		 */
+		public int filter(String transcript, char[] buffer) throws Exception{
+			BufferedReader reader = new BufferedReader(new StringReader(transcript));
+			int kept = 0;
+			int count;
+			while((count = readOutputAndAddLine(reader, buffer)) >= 0){
+				kept += count;
+			}
+			return kept;
+		}
+		
+		public String read(String transcript, CliCommand command) throws Exception{
+			dataIn = new BufferedReader(new StringReader(transcript));
+			readPosition = readLimit = 0;
+			return waitForTerminal(command);
+		}
+	}
+}
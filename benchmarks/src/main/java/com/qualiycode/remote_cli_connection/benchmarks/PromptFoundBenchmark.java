@@ -0,0 +1,68 @@
+package com.qualiycode.remote_cli_connection.benchmarks;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qualiycode.remote_cli_connection.Prompt;
+import com.qualiycode.remote_cli_connection.PromptMatcher;
+import com.qualiycode.remote_cli_connection.RegexPromptMatcher;
+
+/**
+ * Measures finding a single prompt in a line the way the terminal output is read 
+ * (PromptMatcher is fed one char at a time, RegexPromptMatcher searches the line)
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromptFoundBenchmark {
+
+	private PromptMatcher literalMatcher;
+	private RegexPromptMatcher regexMatcher;
+	private StringBuilder line;
+	
+	@Setup
+	public void setup() throws Exception{
+		Prompt literalPrompt = new Prompt();
+		literalPrompt.setPrompt(Transcripts.END_PROMPT);
+		literalMatcher = new PromptMatcher(Collections.singletonList(literalPrompt));
+		Prompt regexPrompt = new Prompt();
+		regexPrompt.setPrompt("\\[\\w+@[\\w.-]+ [^\\]]*\\]# $");
+		regexPrompt.setRegularExpression(true, false);
+		regexMatcher = new RegexPromptMatcher(Collections.singletonList(regexPrompt), RegexPromptMatcher.DEFAULT_WINDOW);
+		line = new StringBuilder("Oct 17 10:15:42 host kernel: [12345] eth0: link is up, 1000 Mbps full duplex, flow control rx/tx, ")
+			.append("some more text for making the line long enough ").append(Transcripts.SHELL_PROMPT);
+	}
+	
+	@Benchmark
+	public boolean literalPrompt(){
+		literalMatcher.reset();
+		boolean found = false;
+		for(int i=0; i<line.length(); i++){
+			found = literalMatcher.next(line.charAt(i)) >= 0;
+		}
+		return found;
+	}
+	
+	@Benchmark
+	public boolean regexPrompt(){
+		regexMatcher.reset();
+		return regexMatcher.find(line) >= 0;
+	}
+}
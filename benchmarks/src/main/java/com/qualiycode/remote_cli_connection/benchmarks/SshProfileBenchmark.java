@@ -0,0 +1,112 @@
+package com.qualiycode.remote_cli_connection.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.CliOutputListener;
+import com.qualiycode.remote_cli_connection.ssh.ShellType;
+import com.qualiycode.remote_cli_connection.ssh.SshCliConnection;
+import com.qualiycode.remote_cli_connection.ssh.SshCliSession;
+import com.qualiycode.remote_cli_connection.ssh.SshConnectionProfile;
+
+/**
+ * Compares the SSH algorithm profiles: the handshake time, and the time of a command with a large text output
+ *
+ * Unlike the other benchmarks this one needs an SSH server (a local one gives the CPU cost, a remote one shows the compression gain),
+ * set it using system properties:
+ *
+ *     java -Dssh.host=127.0.0.1 -Dssh.port=22 -Dssh.user=user -Dssh.password=password -jar target/benchmarks.jar SshProfileBenchmark
+ *
+ * The bulk output command can be changed using -Dssh.bulkCommand (the default prints about 6MB of text)
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SshProfileBenchmark {
+
+	@Param({"DEFAULT", "LOW_LATENCY", "HIGH_THROUGHPUT"})
+	public SshConnectionProfile profile;
+
+	private String host;
+	private int port;
+	private String user;
+	private String password;
+	private String bulkCommand;
+
+	private SshCliConnection connection;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception{
+		host = System.getProperty("ssh.host");
+		if(host == null){
+			throw new IllegalStateException("Set the SSH server using -Dssh.host, -Dssh.port, -Dssh.user and -Dssh.password");
+		}
+		port = Integer.getInteger("ssh.port", 22);
+		user = System.getProperty("ssh.user");
+		password = System.getProperty("ssh.password");
+		bulkCommand = System.getProperty("ssh.bulkCommand", "seq 1 1000000");
+
+		//the bulk output runs on an exec channel, so the terminal parsing is not part of the measurement
+		connection = new SshCliConnection(user, password, host, port, ShellType.EXEC, "#");
+		connection.setProfile(profile);
+		if(!connection.connect()){
+			throw new IllegalStateException("Unable to connect to " + host + ":" + port);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown(){
+		if(connection != null){
+			connection.disconnect();
+		}
+	}
+
+	@Benchmark
+	public boolean handshake() throws Exception{
+		SshCliSession session = new SshCliSession(user, password, host, port);
+		session.setProfile(profile);
+		session.setNumberOfRetries(1);
+		try {
+			return session.connect();
+		} finally {
+			session.disconnect();
+		}
+	}
+
+	@Benchmark
+	public long bulkOutput() throws Exception{
+		final long[] chars = new long[1];
+		CliCommand command = new CliCommand(bulkCommand);
+		command.setSilent(true);
+		command.setTimeout(300);
+		command.setRetainOutput(false);
+		command.setOutputListener(new CliOutputListener() {
+			@Override
+			public void outputLine(CliCommand command, String line) throws Exception {
+				chars[0] += line.length();
+			}
+		});
+		connection.handleCliCommand(command);
+		return chars[0];
+	}
+}
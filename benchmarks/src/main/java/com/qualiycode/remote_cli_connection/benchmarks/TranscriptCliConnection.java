@@ -0,0 +1,97 @@
+package com.qualiycode.remote_cli_connection.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.CliConnection;
+import com.qualiycode.remote_cli_connection.TerminalInputBuffer;
+
+/**
+ * This class is a CLI connection that reads canned terminal transcripts from memory, used for measuring the terminal parsing code
+ * 
+ * Each read starts a new transcript, the responses sent to the "remote" terminal are dropped
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class TranscriptCliConnection extends CliConnection {
+
+	public TranscriptCliConnection(String endLineStr) {
+		super("user", "password", "127.0.0.1", 0, endLineStr);
+		dataOut = new DataOutputStream(new DiscardingOutputStream());
+	}
+	
+	/**
+	 * This method reads a whole transcript the way a command output is read from the terminal
+	 * @param transcript - the terminal output (must end with a prompt that marks the end of the output)
+	 * @param command - the command the output belongs to
+	 * @return the command output
+	 * @throws Exception
+	 */
+	public String read(String transcript, CliCommand command) throws Exception{
+		dataIn = new BufferedReader(new StringReader(transcript));
+		readPosition = readLimit = 0;
+		return waitForTerminal(command);
+	}
+	
+	/**
+	 * This method reads a whole transcript given as raw bytes, fed through an input buffer the way the SSH connection is fed
+	 * (so the prompts can be matched on the bytes, see setBytePromptMatching)
+	 * @param transcript - the terminal output bytes (must end with a prompt that marks the end of the output)
+	 * @param command - the command the output belongs to
+	 * @return the command output
+	 * @throws Exception
+	 */
+	public String read(byte[] transcript, CliCommand command) throws Exception{
+		inputBuffer = new TerminalInputBuffer(transcript.length);
+		inputBuffer.getOutputStream().write(transcript);
+		inputBuffer.getOutputStream().close();
+		dataIn = new BufferedReader(new InputStreamReader(inputBuffer.getInputStream(), charset));
+		readPosition = readLimit = 0;
+		byteReadPosition = byteReadLimit = 0;
+		return waitForTerminal(command);
+	}
+	
+	@Override
+	protected boolean doConnect() {
+		return true;
+	}
+
+	@Override
+	public boolean doDisconnect() {
+		return true;
+	}
+
+	@Override
+	public String handleCliCommand(String command) throws Exception {
+		return handleCliCommand(new CliCommand(command));
+	}
+
+	@Override
+	public String handleCliCommand(CliCommand command) throws Exception {
+		return waitForTerminal(command);
+	}
+
+	@Override
+	public boolean isConnected() throws Exception {
+		return true;
+	}
+	
+	/**
+	 * Drops everything written to it
+	 */
+	static class DiscardingOutputStream extends OutputStream{
+
+		@Override
+		public void write(int b) {
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package com.qualiycode.remote_cli_connection.benchmarks;
+
+/**
+ * This class builds the canned terminal transcripts used by the benchmarks
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class Transcripts {
+
+	public static final String END_PROMPT = "]# ";
+	
+	public static final String SHELL_PROMPT = "[root@host ~]# ";
+	
+	private static final String ESC = "\u001b";
+	
+	/**
+	 * The transcripts the benchmarks can use
+	 */
+	public enum Transcript{
+		/**
+		 * A short output (10 lines)
+		 */
+		SMALL,
+		
+		/**
+		 * A large output (about 1MB)
+		 */
+		HUGE,
+		
+		/**
+		 * A large output (about 1MB) where most of the words are colored by ANSI escape sequences (like "ls --color")
+		 */
+		ANSI,
+		
+		/**
+		 * A large output (about 1MB) like the one of "systemctl status", with colored status markers and bold units
+		 */
+		SYSTEMCTL;
+		
+		public String build(){
+			switch (this) {
+			case SMALL:
+				return plain(10);
+			case HUGE:
+				return plain(13000);
+			case ANSI:
+				return colored(13000);
+			case SYSTEMCTL:
+				return systemctl(4000);
+			default:
+				throw new IllegalStateException("Unknown transcript: " + this);
+			}
+		}
+	}
+	
+	/**
+	 * @param lines - the number of output lines
+	 * @return a transcript of a command with a plain output (about 80 chars per line)
+	 */
+	public static String plain(int lines){
+		StringBuilder transcript = new StringBuilder("cat /var/log/messages\r\n");
+		for(int i=0; i<lines; i++){
+			transcript.append("Oct 17 10:15:").append(i % 60).append(" host kernel: [").append(i)
+				.append("] eth0: link is up, 1000 Mbps full duplex, flow control rx/tx\r\n");
+		}
+		return transcript.append(SHELL_PROMPT).toString();
+	}
+	
+	/**
+	 * @param lines - the number of output lines
+	 * @return a transcript of a command with a colored output (like "ls --color" on a terminal that is not "dumb")
+	 */
+	public static String colored(int lines){
+		StringBuilder transcript = new StringBuilder("ls -l --color\r\n");
+		for(int i=0; i<lines; i++){
+			transcript.append("drwxr-xr-x 2 root root 4096 Oct 17 10:15 ")
+				.append(ESC).append("[01;34m").append("directory").append(i).append(ESC).append("[0m ")
+				.append(ESC).append("[01;32m").append("run.sh").append(ESC).append("[0m")
+				.append(ESC).append("[K\r\n");
+		}
+		return transcript.append(SHELL_PROMPT).toString();
+	}
+	
+	/**
+	 * @param units - the number of units
+	 * @return a transcript of "systemctl status" on a terminal that is not "dumb" (colors, bold text and bracketed paste mode in the prompt)
+	 */
+	public static String systemctl(int units){
+		StringBuilder transcript = new StringBuilder("systemctl status\r\n");
+		for(int i=0; i<units; i++){
+			transcript.append(ESC).append("[0;1;32m\u25cf").append(ESC).append("[0m ")
+				.append(ESC).append("[1mservice").append(i).append(".service").append(ESC).append("[0m - Service number ").append(i).append("\r\n")
+				.append("     Loaded: loaded (/usr/lib/systemd/system/service").append(i).append(".service; ")
+				.append(ESC).append("[0;1;32menabled").append(ESC).append("[0m)\r\n")
+				.append("     Active: ").append(ESC).append("[0;1;32mactive (running)").append(ESC).append("[0m since Sat 2026-10-17 10:15:42 UTC\r\n");
+		}
+		return transcript.append(ESC).append("]0;root@host:~\u0007").append(ESC).append("[?2004h").append(SHELL_PROMPT).toString();
+	}
+}
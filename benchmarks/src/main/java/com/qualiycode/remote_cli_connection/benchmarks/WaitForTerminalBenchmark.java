@@ -0,0 +1,97 @@
+package com.qualiycode.remote_cli_connection.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.Prompt;
+import com.qualiycode.remote_cli_connection.benchmarks.Transcripts.Transcript;
+
+/**
+ * Measures reading a whole command output from the terminal (CliConnection.waitForTerminal) with different prompts sets
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WaitForTerminalBenchmark {
+
+	/**
+	 * The prompts sets the connection can use
+	 */
+	public enum Prompts{
+		/**
+		 * Only the end of line prompt
+		 */
+		END_PROMPT_ONLY,
+		
+		/**
+		 * The end of line prompt and 50 literal prompts that never show up
+		 */
+		MANY_PROMPTS,
+		
+		/**
+		 * The end of line prompt and a few regular expression prompts that never show up
+		 */
+		REGEX_PROMPTS
+	}
+	
+	@Param({"SMALL", "HUGE", "ANSI"})
+	public Transcript transcript;
+	
+	@Param({"END_PROMPT_ONLY", "MANY_PROMPTS", "REGEX_PROMPTS"})
+	public Prompts prompts;
+	
+	private String output;
+	private TranscriptCliConnection connection;
+	
+	@Setup
+	public void setup() throws Exception{
+		output = transcript.build();
+		connection = new TranscriptCliConnection(Transcripts.END_PROMPT);
+		switch (prompts) {
+		case MANY_PROMPTS:
+			for(int i=0; i<50; i++){
+				Prompt prompt = new Prompt();
+				prompt.setPrompt("Question number " + i + " [y/n]? ");
+				prompt.setResponseString("y");
+				connection.addPrompt(prompt);
+			}
+			break;
+		case REGEX_PROMPTS:
+			for(String regex : new String[]{"[Pp]assword for \\w+: $", "Are you sure you want to continue connecting \\(yes/no\\)\\? $", "--More--\\s*\\(\\d+%\\)"}){
+				Prompt prompt = new Prompt();
+				prompt.setPrompt(regex);
+				prompt.setRegularExpression(true, false);
+				prompt.setResponseString("y");
+				connection.addPrompt(prompt);
+			}
+			break;
+		default:
+			break;
+		}
+	}
+	
+	@Benchmark
+	public String waitForTerminal() throws Exception{
+		CliCommand command = new CliCommand("cat");
+		command.setSilent(true);
+		return connection.read(output, command);
+	}
+}
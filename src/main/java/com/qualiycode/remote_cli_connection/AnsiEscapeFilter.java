@@ -0,0 +1,267 @@
+package com.qualiycode.remote_cli_connection;
+
+/**
+ * This class removes the terminal escape sequences (ECMA-48 / ANSI) from the terminal output while it is read
+ * 
+ * The following sequences are removed:
+ * - CSI sequences: colors, cursor movements, erase, modes (for example ESC[01;34m, ESC[2K, ESC[?2004h)
+ * - OSC sequences: window title etc. (ESC]0;title BEL or ESC]0;title ESC\)
+ * - DCS, SOS, PM and APC strings (ended by ESC\)
+ * - Character set and other short escape sequences (for example ESC(B, ESC=, ESC7)
+ * - The 8 bit forms of CSI, OSC and DCS
+ * 
+ * The filter is a state machine that keeps its state between calls, so a sequence split between two reads is removed as well.
+ * The chars are filtered in place and no objects are created.
+ * 
+ * Note:
+ * A filter instance should be used by a single reader
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class AnsiEscapeFilter {
+
+	private static final char ESC = 0x1B;
+	private static final char BEL = 0x07;
+	private static final char CAN = 0x18;
+	private static final char SUB = 0x1A;
+	private static final char C1_DCS = 0x90;
+	private static final char C1_SOS = 0x98;
+	private static final char C1_CSI = 0x9B;
+	private static final char C1_ST = 0x9C;
+	private static final char C1_OSC = 0x9D;
+	private static final char C1_PM = 0x9E;
+	private static final char C1_APC = 0x9F;
+	
+	/**
+	 * Stands for any byte above 0x7F when filtering bytes (a text char that is not part of any sequence)
+	 */
+	private static final char NON_ASCII = 0xA0;
+	
+	/**
+	 * Not inside a sequence
+	 */
+	private static final int TEXT = 0;
+	
+	/**
+	 * After ESC
+	 */
+	private static final int ESCAPE = 1;
+	
+	/**
+	 * After ESC and intermediate chars (for example "ESC(" waiting for the final char)
+	 */
+	private static final int ESCAPE_INTERMEDIATE = 2;
+	
+	/**
+	 * Inside a CSI sequence (waiting for the final char)
+	 */
+	private static final int CSI = 3;
+	
+	/**
+	 * Inside an OSC string (ended by BEL or ST)
+	 */
+	private static final int OSC = 4;
+	
+	/**
+	 * Inside a DCS, SOS, PM or APC string (ended by ST)
+	 */
+	private static final int STRING = 5;
+	
+	/**
+	 * After ESC inside a string (ESC\ is the string terminator)
+	 */
+	private static final int STRING_ESCAPE = 6;
+	
+	private int state = TEXT;
+	
+	/**
+	 * This function removes the escape sequences from the chars (in place)
+	 * @param buffer - the chars to filter
+	 * @param offset - the first char to filter
+	 * @param length - the number of chars to filter
+	 * @return the number of chars kept (the kept chars are moved to the start of the filtered range)
+	 */
+	public int filter(char[] buffer, int offset, int length){
+		int kept = offset;
+		int end = offset + length;
+		for(int i=offset; i<end; i++){
+			char c = buffer[i];
+			if(state == TEXT){
+				if(c != ESC && (c < C1_DCS || c > C1_APC)){
+					//the common case, plain text
+					buffer[kept++] = c;
+					continue;
+				}
+			}else if(state == CSI && c >= 0x20 && c <= 0x3F){
+				//the parameters of a CSI sequence (for example "01;34" of a color)
+				continue;
+			}
+			if(accept(c)){
+				buffer[kept++] = c;
+			}
+		}
+		return kept - offset;
+	}
+	
+	/**
+	 * This function removes the escape sequences from raw output bytes (in place), before the bytes are decoded to chars
+	 * 
+	 * Note:
+	 * The escape sequences are plain ASCII, the bytes above 0x7F are treated as text (as the chars of a multi byte charset),
+	 * so the 8 bit forms of CSI, OSC and DCS are not removed from the bytes
+	 * 
+	 * @param buffer - the bytes to filter
+	 * @param offset - the first byte to filter
+	 * @param length - the number of bytes to filter
+	 * @return the number of bytes kept (the kept bytes are moved to the start of the filtered range)
+	 */
+	public int filter(byte[] buffer, int offset, int length){
+		int kept = offset;
+		int end = offset + length;
+		for(int i=offset; i<end; i++){
+			byte b = buffer[i];
+			if(state == TEXT && b != ESC){
+				//the common case, plain text (including the bytes of multi byte chars)
+				buffer[kept++] = b;
+				continue;
+			}
+			if(accept(b < 0 ? NON_ASCII : (char)b)){
+				buffer[kept++] = b;
+			}
+		}
+		return kept - offset;
+	}
+	
+	/**
+	 * This function advances the filter with the next char of the output
+	 * @param c - the next char of the output
+	 * @return true if the char should be kept, false if it is part of an escape sequence
+	 */
+	public boolean accept(char c){
+		switch (state) {
+		case TEXT:
+			return acceptText(c);
+		case ESCAPE:
+			if(c == '['){
+				state = CSI;
+			}else if(c == ']'){
+				state = OSC;
+			}else if(c == 'P' || c == 'X' || c == '^' || c == '_'){
+				state = STRING;
+			}else if(c >= 0x20 && c <= 0x2F){
+				state = ESCAPE_INTERMEDIATE;
+			}else if(c >= 0x30 && c <= 0x7E){
+				//a short sequence (for example ESC7, ESC=, ESCM)
+				state = TEXT;
+			}else{
+				return acceptInsideSequence(c);
+			}
+			return false;
+		case ESCAPE_INTERMEDIATE:
+			if(c >= 0x20 && c <= 0x2F){
+				//more intermediate chars
+				return false;
+			}
+			if(c >= 0x30 && c <= 0x7E){
+				//the final char
+				state = TEXT;
+				return false;
+			}
+			return acceptInsideSequence(c);
+		case CSI:
+			if(c >= 0x20 && c <= 0x3F){
+				//parameter and intermediate chars
+				return false;
+			}
+			if(c >= 0x40 && c <= 0x7E){
+				//the final char
+				state = TEXT;
+				return false;
+			}
+			return acceptInsideSequence(c);
+		case OSC:
+		case STRING:
+			if(c == ESC){
+				state = STRING_ESCAPE;
+			}else if(c == C1_ST || (c == BEL && state == OSC) || c == CAN || c == SUB){
+				state = TEXT;
+			}
+			return false;
+		case STRING_ESCAPE:
+			if(c == '\\'){
+				state = TEXT;
+				return false;
+			}
+			//the string was ended by a new escape sequence
+			state = ESCAPE;
+			return accept(c);
+		default:
+			state = TEXT;
+			return true;
+		}
+	}
+	
+	/**
+	 * Handles a char that is not a valid part of the escape sequence we are in
+	 */
+	private boolean acceptInsideSequence(char c){
+		if(c == ESC){
+			state = ESCAPE;
+			return false;
+		}
+		if(c == CAN || c == SUB){
+			//the sequence is canceled
+			state = TEXT;
+			return false;
+		}
+		if(c < 0x20){
+			//control chars inside a sequence are still executed
+			return true;
+		}
+		if(c == 0x7F){
+			return false;
+		}
+		//not a sequence char, the sequence is over
+		state = TEXT;
+		return acceptText(c);
+	}
+	
+	private boolean acceptText(char c){
+		switch (c) {
+		case ESC:
+			state = ESCAPE;
+			return false;
+		case C1_CSI:
+			state = CSI;
+			return false;
+		case C1_OSC:
+			state = OSC;
+			return false;
+		case C1_DCS:
+		case C1_SOS:
+		case C1_PM:
+		case C1_APC:
+			state = STRING;
+			return false;
+		case C1_ST:
+			return false;
+		default:
+			return true;
+		}
+	}
+	
+	/**
+	 * @return true if the last char filtered was inside an escape sequence that is not over yet
+	 */
+	public boolean isInSequence(){
+		return state != TEXT;
+	}
+	
+	/**
+	 * Forget the sequence that was started (used when a new output starts)
+	 */
+	public void reset(){
+		state = TEXT;
+	}
+}
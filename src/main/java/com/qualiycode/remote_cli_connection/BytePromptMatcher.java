@@ -0,0 +1,190 @@
+package com.qualiycode.remote_cli_connection;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class finds the literal (non regular expression) prompts in the raw bytes of the terminal output, before the bytes are decoded to chars
+ *
+ * The prompts are encoded once using the connection charset and compiled into an automaton (Aho-Corasick) that is advanced one byte at a time,
+ * like PromptMatcher each byte costs a single table lookup and no objects are created while matching.
+ *
+ * Note:
+ * Regular expression prompts are ignored by this class
+ * The charset must encode the prompts the same way wherever they appear in the output (true for UTF-8 and the single byte charsets)
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public class BytePromptMatcher {
+
+	/**
+	 * Holds the prompts list this matcher was compiled from
+	 */
+	private final List<Prompt> prompts;
+
+	/**
+	 * The charset the prompts were encoded with
+	 */
+	private final Charset charset;
+
+	/**
+	 * Maps a byte (0-255) to its column in the transitions table (0 means the byte is not part of any prompt)
+	 */
+	private final int[] byteColumns = new int[256];
+
+	/**
+	 * The number of columns in the transitions table
+	 */
+	private final int columns;
+
+	/**
+	 * The transitions table, the next state is transitions[state * columns + column]
+	 */
+	private final int[] transitions;
+
+	/**
+	 * Holds for each state the index (in the prompts list) of the first prompt that ends in this state, or -1
+	 */
+	private final int[] matches;
+
+	/**
+	 * The current state
+	 */
+	private int state = 0;
+
+	/**
+	 * @param prompts - the prompts to look for, when several prompts end at the same byte the first one in the list is reported
+	 * @param charset - the charset used for encoding the prompts (the charset of the terminal)
+	 */
+	public BytePromptMatcher(List<Prompt> prompts, Charset charset){
+		this.prompts = new ArrayList<>(prompts);
+		this.charset = charset;
+
+		byte[][] encoded = new byte[this.prompts.size()][];
+		for(int i=0; i<this.prompts.size(); i++){
+			Prompt prompt = this.prompts.get(i);
+			if(PromptMatcher.isLiteral(prompt)){
+				encoded[i] = prompt.getPrompt().getBytes(charset);
+				for(byte b : encoded[i]){
+					byteColumns[b & 0xFF] = -1;
+				}
+			}
+		}
+		int column = 1;
+		for(int b=0; b<byteColumns.length; b++){
+			if(byteColumns[b] == -1){
+				byteColumns[b] = column++;
+			}
+		}
+		columns = column;
+
+		//building the trie
+		List<Map<Integer, Integer>> children = new ArrayList<>();
+		List<Integer> stateMatches = new ArrayList<>();
+		children.add(new HashMap<Integer, Integer>());
+		stateMatches.add(-1);
+		for(int promptIndex=0; promptIndex<encoded.length; promptIndex++){
+			if(encoded[promptIndex] == null){
+				continue;
+			}
+			int current = 0;
+			for(byte b : encoded[promptIndex]){
+				int byteColumn = byteColumns[b & 0xFF];
+				Integer next = children.get(current).get(byteColumn);
+				if(next == null){
+					next = children.size();
+					children.add(new HashMap<Integer, Integer>());
+					stateMatches.add(-1);
+					children.get(current).put(byteColumn, next);
+				}
+				current = next;
+			}
+			if(stateMatches.get(current) == -1){
+				stateMatches.set(current, promptIndex);
+			}
+		}
+
+		//turning the trie into a full transitions table using the failure links (breadth first)
+		int states = children.size();
+		transitions = new int[states * columns];
+		matches = new int[states];
+		int[] failure = new int[states];
+		for(int i=0; i<states; i++){
+			matches[i] = stateMatches.get(i);
+		}
+		int[] queue = new int[states];
+		int head = 0;
+		int tail = 0;
+		for(int c=1; c<columns; c++){
+			Integer next = children.get(0).get(c);
+			if(next != null){
+				transitions[c] = next;
+				failure[next] = 0;
+				queue[tail++] = next;
+			}
+		}
+		while(head < tail){
+			int current = queue[head++];
+			int fallback = failure[current];
+			//a prompt that ends in the failure state also ends in this state
+			if(matches[fallback] != -1 && (matches[current] == -1 || matches[fallback] < matches[current])){
+				matches[current] = matches[fallback];
+			}
+			for(int c=1; c<columns; c++){
+				Integer next = children.get(current).get(c);
+				if(next != null){
+					failure[next] = transitions[fallback * columns + c];
+					transitions[current * columns + c] = next;
+					queue[tail++] = next;
+				}else{
+					transitions[current * columns + c] = transitions[fallback * columns + c];
+				}
+			}
+		}
+	}
+
+	/**
+	 * This function advances the matcher with the next byte of the output
+	 * @param b - the next byte of the output
+	 * @return the index (in the prompts list) of the prompt that ends with this byte, or -1 if no prompt was found
+	 */
+	public int next(byte b){
+		state = transitions[state * columns + byteColumns[b & 0xFF]];
+		return matches[state];
+	}
+
+	/**
+	 * This function advances the matcher with the next byte of the output
+	 * @param b - the next byte of the output
+	 * @return the prompt that ends with this byte, or null if no prompt was found
+	 */
+	public Prompt nextPrompt(byte b){
+		int index = next(b);
+		return index < 0 ? null : prompts.get(index);
+	}
+
+	/**
+	 * Forget the bytes that were matched so far (used when a new line starts)
+	 */
+	public void reset(){
+		state = 0;
+	}
+
+	/**
+	 * @return the prompts list this matcher was compiled from
+	 */
+	public List<Prompt> getPrompts(){
+		return prompts;
+	}
+
+	/**
+	 * @return the charset the prompts were encoded with
+	 */
+	public Charset getCharset(){
+		return charset;
+	}
+}
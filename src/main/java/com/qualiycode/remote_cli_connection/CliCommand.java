@@ -1,5 +1,10 @@
 package com.qualiycode.remote_cli_connection;
 
+import java.io.Reader;
+import java.io.StringReader;
+
+import com.qualiycode.remote_cli_connection.parser.OutputParser;
+
 /**
  * This object contains a CLI command to execute on remote connection with specific properties
  * 
@@ -33,12 +38,83 @@ public class CliCommand {
 	 */
 	protected String commandOutput = null;
 	
+	/**
+	 * Holds the command output as it was read (may be stored in a file, see outputSpillThreshold) 
+	 */
+	protected CommandOutput output = null;
+	
+	/**
+	 * The output size (in chars) above which the output is moved from memory to a temporary file, 0 means the output is always kept in memory 
+	 */
+	protected int outputSpillThreshold = 0;
+	
+	/**
+	 * The time (in milliseconds) the command result can be answered from the connection result cache, 0 means the command is not cached 
+	 */
+	protected long cacheTtl = 0;
+	
+	/**
+	 * Holds the listener that gets the command output while it is read (optional) 
+	 */
+	protected CliOutputListener outputListener = null;
+	
+	/**
+	 * Holds the parser that turns the command output into records while it is read (optional) 
+	 */
+	protected OutputParser<?> outputParser = null;
+	
+	/**
+	 * if set to false the command output is only sent to the output listener and not kept in memory 
+	 */
+	protected boolean retainOutput = true;
+	
+	/**
+	 * if set to true the command can safely run again (used for retrying the command after the connection was lost and reconnected)
+	 */
+	protected boolean idempotent = false;
+	
+	/**
+	 * Holds the command error output (only when the connection separates it from the output) 
+	 */
+	protected String errorOutput = null;
+	
+	/**
+	 * Holds the command exit status (-1 if the connection does not know it) 
+	 */
+	protected int exitStatus = -1;
+	
+	/**
+	 * Set to true once the whole output was read: the end of output prompt (or the batch marker) was found, 
+	 * or the command exited with an exit status (exec channels)
+	 */
+	protected boolean outputComplete = false;
+	
 	/**
 	 * @param command - the command string to execute on the remote connection
 	 */
 	public CliCommand(String command){
 		this.command = command;
 	}
+	
+	/**
+	 * Creates a new command with the same command string and properties as another command
+	 * 
+	 * Note:
+	 * The output, the output listener and the output parser are not copied (they hold the state of a single output),
+	 * set new ones on the copy if needed
+	 * 
+	 * @param other - the command to copy
+	 */
+	public CliCommand(CliCommand other){
+		this.command = other.command;
+		this.timeout = other.timeout;
+		this.ignoreErrors = other.ignoreErrors;
+		this.silent = other.silent;
+		this.retainOutput = other.retainOutput;
+		this.idempotent = other.idempotent;
+		this.outputSpillThreshold = other.outputSpillThreshold;
+		this.cacheTtl = other.cacheTtl;
+	}
 
 	/**
 	 * @return the command timeout (In seconds)
@@ -90,9 +166,20 @@ public class CliCommand {
 	}
 	
 	/**
+	 * Note:
+	 * If the output was moved to a file the whole output is loaded to memory, use getOutput() or getOutputReader() for large outputs
+	 * 
 	 * @return the command output
 	 */
 	public String getCommandOutput() {
+		if(commandOutput == null && output != null){
+			if(output.isSpilled()){
+				return output.toString();
+			}
+			//the String replaces the output that was read, so the output is held once
+			commandOutput = output.toString();
+			output = null;
+		}
 		return commandOutput;
 	}
 
@@ -100,7 +187,189 @@ public class CliCommand {
 	 * @param commandOutput - the command output
 	 */
 	public void setCommandOutput(String commandOutput) {
+		releaseOutput();
 		this.commandOutput = commandOutput;
 	}
+	
+	/**
+	 * @return the command output without copying it (a view of the file if the output was moved to a file)
+	 */
+	public CharSequence getOutput() {
+		return output != null ? output : commandOutput;
+	}
+	
+	/**
+	 * @return a reader of the command output (reads the file if the output was moved to a file), or null if there is no output
+	 */
+	public Reader getOutputReader() {
+		if(output != null){
+			return output.getReader();
+		}
+		return commandOutput == null ? null : new StringReader(commandOutput);
+	}
+	
+	/**
+	 * @param output - the command output as it was read
+	 */
+	public void setOutput(CommandOutput output) {
+		if(this.output != output){
+			releaseOutput();
+		}
+		this.output = output;
+		//the String is built once it is asked for (see getCommandOutput), outputs in a file are not copied to memory
+		this.commandOutput = null;
+	}
+	
+	/**
+	 * @return true if the command output was moved to a file
+	 */
+	public boolean isOutputSpilled() {
+		return output != null && output.isSpilled();
+	}
+	
+	/**
+	 * This method deletes the file of an output that was moved to a file (the output can not be read afterwards)
+	 */
+	public void releaseOutput() {
+		if(output != null){
+			output.release();
+			output = null;
+		}
+	}
+
+	/**
+	 * @return the output size (in chars) above which the output is moved from memory to a temporary file (0 means the output is always kept in memory)
+	 */
+	public int getOutputSpillThreshold() {
+		return outputSpillThreshold;
+	}
+
+	/**
+	 * Note:
+	 * Once the output was moved to a file handleCliCommand returns an empty string, read the output using getOutput() or getOutputReader() 
+	 * and delete the file using releaseOutput()
+	 * 
+	 * @param outputSpillThreshold - the output size (in chars) above which the output is moved from memory to a temporary file 
+	 * 								 (0 means the output is always kept in memory)
+	 */
+	public void setOutputSpillThreshold(int outputSpillThreshold) {
+		this.outputSpillThreshold = outputSpillThreshold;
+	}
+
+	/**
+	 * @return the listener that gets the command output while it is read
+	 */
+	public CliOutputListener getOutputListener() {
+		return outputListener;
+	}
+
+	/**
+	 * @param outputListener - the listener that gets the command output while it is read
+	 */
+	public void setOutputListener(CliOutputListener outputListener) {
+		this.outputListener = outputListener;
+	}
+
+	/**
+	 * @return the parser that turns the command output into records while it is read
+	 */
+	public OutputParser<?> getOutputParser() {
+		return outputParser;
+	}
+
+	/**
+	 * Note:
+	 * Commands with a parser are not answered from the result cache (the parser must see the output)
+	 * 
+	 * @param outputParser - the parser that turns the command output into records while it is read
+	 */
+	public void setOutputParser(OutputParser<?> outputParser) {
+		this.outputParser = outputParser;
+	}
+
+	/**
+	 * @return true if the command output is kept in memory
+	 */
+	public boolean isRetainOutput() {
+		return retainOutput;
+	}
+
+	/**
+	 * @param retainOutput - set to false for sending the output only to the output listener (the command output will be empty)
+	 */
+	public void setRetainOutput(boolean retainOutput) {
+		this.retainOutput = retainOutput;
+	}
+
+	/**
+	 * @return true if the command can safely run again
+	 */
+	public boolean isIdempotent() {
+		return idempotent;
+	}
+
+	/**
+	 * @param idempotent - set to true if the command can safely run again (the command is retried once if the connection was lost while it ran)
+	 */
+	public void setIdempotent(boolean idempotent) {
+		this.idempotent = idempotent;
+	}
+
+	/**
+	 * @return the time (in milliseconds) the command result can be answered from the connection result cache (0 means the command is not cached)
+	 */
+	public long getCacheTtl() {
+		return cacheTtl;
+	}
+
+	/**
+	 * Use only for read only commands (for example "uname -a"), the result cache is set on the connection (see CliConnection.setResultCache)
+	 * @param cacheTtl - the time (in milliseconds) the command result can be answered from the connection result cache (0 means the command is not cached)
+	 */
+	public void setCacheTtl(long cacheTtl) {
+		this.cacheTtl = cacheTtl;
+	}
+
+	/**
+	 * @return the command error output, or null if the connection does not separate it from the output
+	 */
+	public String getErrorOutput() {
+		return errorOutput;
+	}
+
+	/**
+	 * @param errorOutput - the command error output
+	 */
+	public void setErrorOutput(String errorOutput) {
+		this.errorOutput = errorOutput;
+	}
+
+	/**
+	 * @return the command exit status, or -1 if the connection does not know it
+	 */
+	public int getExitStatus() {
+		return exitStatus;
+	}
+
+	/**
+	 * @param exitStatus - the command exit status
+	 */
+	public void setExitStatus(int exitStatus) {
+		this.exitStatus = exitStatus;
+	}
+
+	/**
+	 * @return true if the whole output was read (false if the reading failed or timed out, even when the command ignores errors)
+	 */
+	public boolean isOutputComplete() {
+		return outputComplete;
+	}
+
+	/**
+	 * @param outputComplete - set to true once the whole output was read
+	 */
+	public void setOutputComplete(boolean outputComplete) {
+		this.outputComplete = outputComplete;
+	}
 
 }
@@ -0,0 +1,312 @@
+package com.qualiycode.remote_cli_connection;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class runs the commands of many connections using a small fixed pool of threads
+ *
+ * Unlike handleCliCommand (and handleCliCommandAsync), no thread waits for the remote terminal while a command runs:
+ * the command is written to the terminal, and whenever data arrives to the connection input buffer
+ * one of the pool threads reads what is ready, feeds it to the prompts detection and completes the command once its output is over.
+ * The number of threads does not grow with the number of connections.
+ *
+ * Note:
+ * Only terminal connections that feed their data-in stream through the inputBuffer, and detect the end of each output by the prompts, are driven by the pool,
+ * other connections (for example SSH exec connections, or SSH connections that use an end of output sentinel) run their commands using handleCliCommandAsync
+ * The commands of a connection run one after the other, in the order they were given
+ * A connection driven by the scheduler must not run commands directly (handleCliCommand, handleCliCommands) at the same time
+ * The scheduler does not reconnect lost connections, a command of a closed connection fails
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public class CliCommandScheduler {
+
+	private final static Logger log = LoggerFactory.getLogger(CliCommandScheduler.class);
+
+	private final ExecutorService pool;
+
+	private final Map<CliConnection, ConnectionDriver> drivers = new ConcurrentHashMap<>();
+
+	private volatile boolean shutdown = false;
+
+	/**
+	 * Creates a scheduler with a thread per available processor
+	 */
+	public CliCommandScheduler(){
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads - the number of threads that drive all the connections
+	 */
+	public CliCommandScheduler(int threads){
+		this(Executors.newFixedThreadPool(threads, CliExecutors.newDaemonThreadFactory("cli-scheduler")));
+	}
+
+	/**
+	 * @param pool - the executor that drives all the connections (should be a small fixed pool, the tasks never block on the terminal)
+	 */
+	public CliCommandScheduler(ExecutorService pool){
+		this.pool = pool;
+	}
+
+	/**
+	 * This method run command on a connected connection
+	 * @param connection - the connection to run the command on
+	 * @param command - the command to run
+	 * @return a future of the command output
+	 */
+	public CompletableFuture<String> submit(CliConnection connection, String command){
+		return submit(connection, new CliCommand(command));
+	}
+
+	/**
+	 * This method run command on a connected connection
+	 * @param connection - the connection to run the command on
+	 * @param command - the command to run
+	 * @return a future of the command output (completed exceptionally if the command failed)
+	 */
+	public CompletableFuture<String> submit(CliConnection connection, CliCommand command){
+		CompletableFuture<String> result = new CompletableFuture<>();
+		if(shutdown){
+			result.completeExceptionally(new Exception("Unable to excecute command \"" + command.getCommand() + "\", scheduler is shut down"));
+			return result;
+		}
+		if(!connection.isTerminalConnection() || !connection.isEndOfOutputByPrompt() || connection.inputBuffer == null){
+			return connection.handleCliCommandAsync(command);
+		}
+		ConnectionDriver driver = drivers.computeIfAbsent(connection, ConnectionDriver::new);
+		driver.jobs.add(new Job(command, result));
+		driver.signal();
+		return result;
+	}
+
+	/**
+	 * This method stops driving a connection (call it when the connection is no longer used)
+	 *
+	 * Note:
+	 * Commands of the connection that did not end yet are failed
+	 *
+	 * @param connection - the connection
+	 */
+	public void release(CliConnection connection){
+		ConnectionDriver driver = drivers.remove(connection);
+		if(driver != null){
+			driver.released = true;
+			driver.signal();
+		}
+	}
+
+	/**
+	 * @return the number of connections driven by the scheduler
+	 */
+	public int getConnectionCount(){
+		return drivers.size();
+	}
+
+	/**
+	 * This method stops the scheduler, commands that did not end yet are failed
+	 */
+	public void shutdown(){
+		shutdown = true;
+		for(CliConnection connection : drivers.keySet()){
+			release(connection);
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * A command waiting to run on a connection
+	 */
+	private static class Job{
+
+		private final CliCommand command;
+		private final CompletableFuture<String> result;
+
+		Job(CliCommand command, CompletableFuture<String> result){
+			this.command = command;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * Runs the commands of a single connection, one step whenever data arrives
+	 * (the steps of a connection never run at the same time, the wip counter hands them to one pool thread at a time)
+	 */
+	private class ConnectionDriver implements TerminalInputBuffer.DataListener, Runnable{
+
+		private final CliConnection connection;
+		private final Queue<Job> jobs = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger wip = new AtomicInteger();
+		private volatile boolean released = false;
+
+		//accessed only by the running step
+		private Job job = null;
+		private CliConnection.TerminalRead read = null;
+		private ScheduledFuture<?> timeoutTask = null;
+
+		ConnectionDriver(CliConnection connection){
+			this.connection = connection;
+		}
+
+		@Override
+		public void dataArrived(TerminalInputBuffer buffer) {
+			signal();
+		}
+
+		/**
+		 * Hands a step to the pool, unless a step is already running (it will run again)
+		 */
+		void signal(){
+			if(wip.getAndIncrement() != 0){
+				return;
+			}
+			try {
+				pool.execute(this);
+			} catch (RejectedExecutionException e) {
+				//the pool is shut down, we fail the commands on the calling thread
+				released = true;
+				run();
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			while(true){
+				try {
+					step();
+				} catch (Throwable e) {
+					log.error("Scheduler failed to drive connection " + connection.getIp(), e);
+				}
+				missed = wip.addAndGet(-missed);
+				if(missed == 0){
+					return;
+				}
+			}
+		}
+
+		private void step(){
+			while(true){
+				if(released){
+					failAll();
+					return;
+				}
+				if(read == null){
+					job = jobs.poll();
+					if(job == null){
+						return;
+					}
+					start();
+					continue;
+				}
+				try {
+					if(read.getElapsedMillis() > job.command.getTimeout()*1000){
+						read.timeout();
+					}
+					if(!read.step()){
+						//we wait for more data (or for the timeout)
+						return;
+					}
+				} catch (Exception e) {
+					finish(e);
+					continue;
+				}
+				finish(null);
+			}
+		}
+
+		/**
+		 * Writes the next command to the terminal (or completes it from the cache)
+		 */
+		private void start(){
+			if(connection.loadCachedResult(job.command)){
+				job.result.complete(job.command.getCommandOutput());
+				job = null;
+				return;
+			}
+			TerminalInputBuffer buffer = connection.inputBuffer;
+			if(buffer != null){
+				//the connection may have a new buffer since its last command (after a reconnection)
+				buffer.setDataListener(this);
+			}
+			try {
+				read = connection.startCliCommand(job.command);
+			} catch (Exception e) {
+				job.result.completeExceptionally(new Exception("Unable to excecute command \"" + job.command.getCommand() + "\", " + e.getMessage(), e));
+				job = null;
+				return;
+			}
+			timeoutTask = CliExecutors.getMonitorScheduler().schedule(this::signal, job.command.getTimeout()*1000 + 1, TimeUnit.MILLISECONDS);
+		}
+
+		/**
+		 * Ends the running command (successfully if error is null)
+		 */
+		private void finish(Exception error){
+			timeoutTask.cancel(false);
+			String output = null;
+			Exception failure = null;
+			if(error == null){
+				try {
+					output = read.complete();
+				} catch (Exception e) {
+					error = e;
+				}
+			}
+			if(error != null){
+				try {
+					output = read.fail(error);
+				} catch (Exception e) {
+					failure = e;
+				}
+			}
+			try {
+				read.close();
+			} catch (Exception e) {
+				if(failure == null){
+					failure = e;
+				}
+			}
+			if(failure == null){
+				//only a complete output is cached, not the partial output of a failure that was ignored
+				if(error == null){
+					connection.cacheResult(job.command);
+				}
+				job.result.complete(output);
+			}else{
+				job.result.completeExceptionally(failure);
+			}
+			read = null;
+			job = null;
+		}
+
+		private void failAll(){
+			if(read != null){
+				finish(new Exception("scheduler stopped driving the connection"));
+			}
+			TerminalInputBuffer buffer = connection.inputBuffer;
+			if(buffer != null){
+				buffer.setDataListener(null);
+			}
+			Job next;
+			while((next = jobs.poll()) != null){
+				next.result.completeExceptionally(new Exception("Unable to excecute command \"" + next.command.getCommand() + "\", scheduler stopped driving the connection"));
+			}
+		}
+	}
+}
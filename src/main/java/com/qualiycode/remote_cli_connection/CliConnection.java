@@ -2,12 +2,36 @@ package com.qualiycode.remote_cli_connection;
 
 import java.io.BufferedReader;
 import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.qualiycode.remote_cli_connection.cache.CachedResult;
+import com.qualiycode.remote_cli_connection.cache.CommandResultCache;
+import com.qualiycode.remote_cli_connection.metrics.CliMetricsListener;
+import com.qualiycode.remote_cli_connection.metrics.CommandMetrics;
+
 /**
  * This class is a base class for CLI connections implementation classes.
  * 
@@ -15,6 +39,9 @@ import org.slf4j.LoggerFactory;
  * 
  * Note:
  * When extending this class you must set the dataIn & dataOut variables to allow reading and writing to your connection
+ * If your connection feeds dataIn through the inputBuffer object, waiting for the terminal is signaled instead of polled
+ * (and the prompts can be matched on the raw bytes, see setBytePromptMatching)
+ * The dataIn reader should decode the terminal output using the connection charset (see getCharset)
  * 
  * Link to ASCII table codes: http://www.bluesock.org/~willg/dev/ascii.html
  *  
@@ -54,6 +81,26 @@ public abstract class CliConnection {
 	 * Holds the list of prompts that will be used when handling this connection 
 	 */
 	protected ArrayList<Prompt> prompts = null;
+	
+	/**
+	 * Holds the matcher compiled from the literal prompts 
+	 */
+	private PromptMatcher promptMatcher = null;
+	
+	/**
+	 * Holds the matcher compiled from the literal prompts encoded to bytes (used when matching the prompts on the raw bytes) 
+	 */
+	private BytePromptMatcher bytePromptMatcher = null;
+	
+	/**
+	 * Holds the matcher compiled from the regular expression prompts 
+	 */
+	private RegexPromptMatcher regexPromptMatcher = null;
+	
+	/**
+	 * The number of already searched chars we search again for regular expression prompts when new chars arrive (0 means search the whole line) 
+	 */
+	protected int regexPromptWindow = RegexPromptMatcher.DEFAULT_WINDOW;
 
 	/**
 	 * holds the data-out stream, used for sending the data to the remote connection  
@@ -65,15 +112,141 @@ public abstract class CliConnection {
 	 */
 	protected BufferedReader dataIn = null;
 
+	/**
+	 * holds the buffer that feeds the data-in stream (optional), used for waiting for data without polling the data-in stream
+	 */
+	protected TerminalInputBuffer inputBuffer = null;
+
 	/**
 	 * If true - we keep reading from remote terminal
 	 */
-	protected boolean keepReadingOutput;
+	protected volatile boolean keepReadingOutput;
+	
+	/**
+	 * Set to true once a batch marker was found, the rest of the marker line is dropped
+	 */
+	private boolean skippingMarkerLine = false;
+	
+	/**
+	 * Held while a command is written to the terminal and its output is read, so only one command uses the terminal at a time
+	 */
+	protected final ReentrantLock commandLock = new ReentrantLock();
+	
+	/**
+	 * Holds the commands waiting to run in the background (see handleCliCommandAsync), they run one after the other 
+	 */
+	private final ArrayDeque<Runnable> commandQueue = new ArrayDeque<>();
+	
+	/**
+	 * True while a background command of this connection is running 
+	 */
+	private boolean commandQueueRunning = false;
+	
+	/**
+	 * Holds the executor that runs the background commands of this connection (if null the default executor is used)
+	 */
+	protected Executor commandExecutor = null;
+	
+	/**
+	 * Holds the filter that removes the terminal escape sequences (colors, cursor movements etc.) from the output, null if they are kept
+	 */
+	protected AnsiEscapeFilter escapeFilter = null;
+	
+	/**
+	 * Holds the listener that gets the connect and commands metrics of this connection (optional)
+	 */
+	protected CliMetricsListener metricsListener = null;
 	
 	/**
 	 * Hold the number of retries we do when trying to connect 
 	 */
 	protected int numberOfRetries = 3;
+
+	/**
+	 * The max time (in nanoseconds) we park between polls of a data-in stream that is not fed by an inputBuffer
+	 */
+	protected static final long MAX_POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	
+	/**
+	 * The size (in chars) of the buffer we read the terminal output into 
+	 */
+	protected static final int READ_BUFFER_SIZE = 8192;
+	
+	/**
+	 * The prefix of the markers that separate the outputs of a commands batch (see handleCliCommands)
+	 */
+	protected static final String BATCH_MARKER_PREFIX = "__CLI_BATCH_";
+	
+	/**
+	 * Holds the chars read from the terminal, reused for all reads of this connection 
+	 */
+	protected char[] readBuffer = new char[READ_BUFFER_SIZE];
+	
+	/**
+	 * The position of the next char in the readBuffer to add to our line container 
+	 */
+	protected int readPosition = 0;
+	
+	/**
+	 * The number of valid chars in the readBuffer 
+	 */
+	protected int readLimit = 0;
+	
+	/**
+	 * The charset of the remote terminal, used for encoding the commands and the prompts and for decoding the output 
+	 */
+	protected Charset charset = StandardCharsets.UTF_8;
+	
+	/**
+	 * If true - the prompts are matched on the raw bytes read from the inputBuffer, and the bytes are decoded a line at a time
+	 * (only when the charset encodes the line feed as a single byte, see isBytePromptMatching) 
+	 */
+	protected boolean bytePromptMatching = false;
+	
+	/**
+	 * Holds the bytes read from the inputBuffer when the prompts are matched on the raw bytes, reused for all reads of this connection 
+	 */
+	protected byte[] byteReadBuffer = null;
+	
+	/**
+	 * The position of the next byte in the byteReadBuffer to match 
+	 */
+	protected int byteReadPosition = 0;
+	
+	/**
+	 * The number of valid bytes in the byteReadBuffer 
+	 */
+	protected int byteReadLimit = 0;
+	
+	/**
+	 * The char a single char read appends at the end of the stream ((char) -1)
+	 */
+	private static final char END_OF_STREAM_CHAR = (char) -1;
+	
+	/**
+	 * True if an extender class overrides the single char readOutputAndAddLine (null until checked)
+	 */
+	private Boolean charReadOverridden = null;
+	
+	/**
+	 * Holds the chars the single char readOutputAndAddLine of an extender class added and were not read yet
+	 */
+	private final StringBuilder charReadPending = new StringBuilder();
+	
+	/**
+	 * If true - the characters that arrive after the end prompt are dropped, otherwise they are kept as the start of the next command output
+	 */
+	protected boolean discardTrailingOutput = false;
+	
+	/**
+	 * The max time (in seconds) we wait for the terminal prompt that follows the last command of a batch
+	 */
+	protected int batchEndTimeout = 5;
+	
+	/**
+	 * Holds the cache that answers cacheable commands without running them (optional, can be shared by many connections)
+	 */
+	protected CommandResultCache resultCache = null;
 	
 	/**
 	 * @param username - the remote connection user name
@@ -113,15 +286,18 @@ public abstract class CliConnection {
 	 */
 	public boolean connect() throws Exception{
 		
+		long startTime = System.nanoTime();
 		int retry = 1;
 		while(retry <= numberOfRetries && !isConnected()){
 			try {
 				log.info("Connecting to: " + ip + ":" + port + ", Try #" + retry + ", User: " + username + ", Pass: ******");
 				if(doConnect() == true){
-					if(dataIn == null || dataOut == null){
-						throw new Exception("You must set dataIn & dataOut objects to allow reading and writing to your connection");
+					if(isTerminalConnection()){
+						if(dataIn == null || dataOut == null){
+							throw new Exception("You must set dataIn & dataOut objects to allow reading and writing to your connection");
+						}
+						waitForTerminal();
 					}
-					waitForTerminal();
 				}else{
 					log.error("Unable to connect to: " + ip + ":" + port + ", User: " + username + ", Pass: ******");
 				}
@@ -131,13 +307,39 @@ public abstract class CliConnection {
 			retry ++;
 		}
 		
-		if(isConnected()){
+		boolean connected = isConnected();
+		if(connected){
 			log.info("Connestion successfull");
 		}else{
 			log.error("Unable to connect to: " + ip + ", User = " + username + ", Pass = " + password);
 		}
 		
-		return isConnected();
+		if(metricsListener != null && retry > 1){
+			try {
+				metricsListener.connectFinished(this, System.nanoTime() - startTime, retry - 1, connected);
+			} catch (Exception e) {
+				log.error("Metrics listener failed", e);
+			}
+		}
+		return connected;
+	}
+
+	/**
+	 * Extender classes that run each command on its own (without an open terminal) should return false,
+	 * in this case dataIn & dataOut are not required and we do not wait for the terminal when connecting
+	 * @return true if this connection reads and writes commands using an open terminal
+	 */
+	protected boolean isTerminalConnection(){
+		return true;
+	}
+
+	/**
+	 * Extender classes that detect the end of a command output by other means than the prompts (for example a sentinel echoed after the command)
+	 * should return false, in this case CliCommandScheduler runs the connection commands using handleCliCommandAsync
+	 * @return true if the end of each command output is detected by the prompts
+	 */
+	protected boolean isEndOfOutputByPrompt(){
+		return true;
 	}
 
 	/**
@@ -159,6 +361,9 @@ public abstract class CliConnection {
 			if(dataOut != null){
 				dataOut.close();
 			}
+			if(inputBuffer != null){
+				inputBuffer.getInputStream().close();
+			}
 			result = doDisconnect() && result;
 			if(result){
 				log.info("Disconnected successfuly");
@@ -194,6 +399,173 @@ public abstract class CliConnection {
 	 */
 	public abstract String handleCliCommand(CliCommand command) throws Exception;
 
+	/**
+	 * This method run command on a connected connection in the background
+	 * 
+	 * Note:
+	 * The commands of a connection run one after the other, in the order they were given
+	 * 
+	 * @param command - the command to run
+	 * @return a future of the command output
+	 */
+	public CompletableFuture<String> handleCliCommandAsync(String command){
+		return handleCliCommandAsync(new CliCommand(command));
+	}
+	
+	/**
+	 * This method run command on a connected connection in the background
+	 * 
+	 * Note:
+	 * The commands of a connection run one after the other, in the order they were given
+	 * 
+	 * @param command - the command to run
+	 * @return a future of the command output (completed exceptionally if the command failed)
+	 */
+	public CompletableFuture<String> handleCliCommandAsync(final CliCommand command){
+		final CompletableFuture<String> result = new CompletableFuture<>();
+		Runnable task = () -> {
+			try {
+				result.complete(handleCliCommand(command));
+			} catch (Throwable e) {
+				result.completeExceptionally(e);
+			} finally {
+				runNextQueuedCommand();
+			}
+		};
+		synchronized (commandQueue) {
+			commandQueue.add(task);
+			if(commandQueueRunning){
+				return result;
+			}
+			commandQueueRunning = true;
+		}
+		runNextQueuedCommand();
+		return result;
+	}
+	
+	/**
+	 * This method run several commands on a connected connection in a single round trip:
+	 * all the commands are written to the terminal at once, each one followed by an echo of a unique marker and the command exit status,
+	 * the output of each command is the terminal output up to its marker and the exit status is set on the command
+	 * (the terminal echo of the marker commands is dropped from the outputs)
+	 * 
+	 * The end of output prompts are not used for the batch commands, so outputs that contain the prompt text do not end the output
+	 * 
+	 * Note:
+	 * The markers are written using echo, so the remote terminal must be a shell (sh, bash etc.)
+	 * The commands must not wait for input, the commands written after them would be read as their input
+	 * Each command keeps its own timeout (counted from the time we start reading its output) and ignoreErrors setting,
+	 * once a command fails (and does not ignore errors) the outputs of the rest of the commands are not read
+	 * Connections that do not use an open terminal run the commands one after the other
+	 * After the last marker we wait (up to the batch end timeout) for the end of output prompt that follows it, 
+	 * if the terminal prompt does not match the end of output prompts use handleCliCommands(commands, false)
+	 * 
+	 * @param commands - the commands to run
+	 * @return the commands outputs (in the commands order)
+	 * @throws Exception
+	 */
+	public List<String> handleCliCommands(List<CliCommand> commands) throws Exception{
+		return handleCliCommands(commands, true);
+	}
+	
+	/**
+	 * This method run several commands on a connected connection in a single round trip (see handleCliCommands(List))
+	 * 
+	 * Note:
+	 * If we do not wait for the end of output prompt, the batch ends on the last marker and the terminal output 
+	 * that was not read yet (the prompt of the previous batch) is dropped before the batch is written
+	 * 
+	 * @param commands - the commands to run
+	 * @param waitForEndPrompt - true for reading the end of output prompt that follows the last marker, 
+	 * 							 false for ending on the last marker (when the terminal prompt is not known)
+	 * @return the commands outputs (in the commands order)
+	 * @throws Exception
+	 */
+	public List<String> handleCliCommands(List<CliCommand> commands, boolean waitForEndPrompt) throws Exception{
+		List<String> outputs = new ArrayList<>(commands.size());
+		if(!isTerminalConnection()){
+			for(CliCommand command : commands){
+				outputs.add(handleCliCommand(command));
+			}
+			return outputs;
+		}
+		if(commands.isEmpty()){
+			return outputs;
+		}
+		
+		commandLock.lock();
+		try {
+			String batchId = BATCH_MARKER_PREFIX + Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+			StringBuilder batch = new StringBuilder();
+			List<Prompt> markers = new ArrayList<>(commands.size());
+			List<String> markerCommands = new ArrayList<>(commands.size());
+			for(int i=0; i<commands.size(); i++){
+				batch.append(commands.get(i).getCommand()).append(LINUX_CRLF);
+				//the marker is split by quotes, so the terminal echo of the marker command does not end the output
+				String markerCommand = "echo '" + batchId + "''_" + i + "_'$?'__'";
+				batch.append(markerCommand).append(LINUX_CRLF);
+				markerCommands.add(markerCommand);
+				Prompt marker = new Prompt();
+				marker.setPrompt(batchId + "_" + i + "_", false);
+				marker.setMarkEndOfOutput(true);
+				markers.add(marker);
+			}
+			if(!waitForEndPrompt){
+				//the prompt that followed the last marker of the previous batch was not read
+				discardAvailableInput();
+			}
+			writeToTerminal(batch.toString());
+			
+			//the prompts of the connection (except the end of output prompts) are handled while reading the batch outputs
+			List<Prompt> batchPrompts = new ArrayList<>();
+			for(Prompt prompt : prompts){
+				if(!prompt.isMarkEndOfOutput()){
+					batchPrompts.add(prompt);
+				}
+			}
+			RegexPromptMatcher regexMatcher = new RegexPromptMatcher(batchPrompts, regexPromptWindow);
+			for(int i=0; i<commands.size(); i++){
+				batchPrompts.add(markers.get(i));
+				outputs.add(waitForTerminal(commands.get(i), new PromptMatcher(batchPrompts), regexMatcher, markers.get(i), markerCommands.get(i)));
+				batchPrompts.remove(batchPrompts.size() - 1);
+			}
+			
+			if(waitForEndPrompt){
+				//reading the terminal prompt that follows the last marker, it arrives right after the marker so the wait is short
+				CliCommand endOfBatch = new CliCommand("EndOfBatch");
+				endOfBatch.setTimeout(Math.min(batchEndTimeout, commands.get(commands.size() - 1).getTimeout()));
+				endOfBatch.setIgnoreErrors(true);
+				endOfBatch.setSilent(true);
+				waitForTerminal(endOfBatch);
+			}
+		} finally {
+			commandLock.unlock();
+		}
+		return outputs;
+	}
+	
+	/**
+	 * Hands the next queued command to the executor, or marks the queue as idle if there are no more commands
+	 */
+	private void runNextQueuedCommand(){
+		Runnable next;
+		synchronized (commandQueue) {
+			next = commandQueue.poll();
+			if(next == null){
+				commandQueueRunning = false;
+				return;
+			}
+		}
+		Executor executor = commandExecutor != null ? commandExecutor : CliExecutors.getDefaultExecutor();
+		try {
+			executor.execute(next);
+		} catch (RejectedExecutionException e) {
+			//the executor is shut down or full, we run the command on the calling thread
+			log.error("Background commands executor refused to run command, running it on the calling thread");
+			next.run();
+		}
+	}
+
 	/**
 	 * @return true if the remote connection is connected and alive
 	 * @throws Exception
@@ -213,126 +585,874 @@ public abstract class CliConnection {
 	 * @throws Exception
 	 */
 	protected String waitForTerminal(CliCommand command) throws Exception{
-		long startTime = System.currentTimeMillis();
-		long elapsTime;
-		
-		StringBuilder lines = new StringBuilder();
-		StringBuilder line = new StringBuilder();
+		return waitForTerminal(command, getPromptMatcher(), getRegexPromptMatcher(), null, null);
+	}
+	
+	/**
+	 * This function read characters from the terminal and return the output once the reading is over.
+	 * 
+	 * @param command - the CLI command that is been used
+	 * @param matcher - the literal prompts matcher
+	 * @param regexMatcher - the regular expression prompts matcher
+	 * @param batchMarker - the marker that ends the output of a batch command (null for a single command),
+	 * 						the marker line is not part of the output and the chars after it are kept for the next command 
+	 * @param markerCommand - the command that echoes the batch marker, its terminal echo line is not part of the output (null for a single command)
+	 * @return the output from the CLI
+	 * @throws Exception
+	 */
+	private String waitForTerminal(CliCommand command, PromptMatcher matcher, RegexPromptMatcher regexMatcher, Prompt batchMarker, String markerCommand) throws Exception{
+		TerminalRead read = new TerminalRead(command, matcher, regexMatcher, batchMarker, markerCommand);
 		try {
-    	   //read all output after executing command
-    	   keepReadingOutput = true;
-    	   
-    	   elapsTime = System.currentTimeMillis()-startTime;
-    	   if(isTerminalReadyForReading(command, elapsTime)){
-    		   readOutputAndAddLine(dataIn, line);
-    	   }else{
-    		   throw new Exception("Unable to read command output, no prompt return");
-    	   }
-    	   
-//    	   while(line.length() > 0 && keepReadingOutput) {
-       	   while(keepReadingOutput) {
-    		   boolean found = false;
-    		   for(int i=0; i<prompts.size() && !found; i++){
-    			   Prompt prompt = prompts.get(i);
-    			   found = isPromptFound(prompt, line);
-    			   if(found){
-    				   if(prompt.isMarkEndOfOutput()){
-        	    		   lines.append(line);
-        	    		   if(!command.isSilent()){
-        	    			   log.info("[terminal] " + line);
-        	    		   }
-    					   keepReadingOutput = false;
-    					   continue; //once we know the output is ended we stop processing prompts (and because we set keepReadingOutput to false we will also stop reading outputs)
-    				   }
-    				   if(prompt.isSendResponseString()){
-    			     	   dataOut.writeBytes(prompt.getResponseString());  
-    			     	   dataOut.flush();
-    				   }
-    				   if(prompt.isAddEnter()){
-    			     	   dataOut.writeBytes(LINUX_CRLF);  
-    			     	   dataOut.flush();
-    				   }
-    			   }else{
-    				   if(line.toString().endsWith(LINUX_CRLF)){
-        	    		   lines.append(line);
-        	    		   if(!command.isSilent()){
-        	    			   log.info("[terminal] " + line);
-        	    		   }
-        	    		   line.setLength(0);
-        	    		   break;
-    				   }
-    			   }
-    		   }
-    		   elapsTime = System.currentTimeMillis()-startTime; 
-    		   if(elapsTime > (command.getTimeout()*1000)){
-    			   throw new Exception("Got timeout (After " + command.getTimeout() + " seconds) while reading command output");
-    		   }
-    		   
-    		   if(keepReadingOutput){
-    			   if(isTerminalReadyForReading(command, elapsTime)){
-    				   readOutputAndAddLine(dataIn, line);
-    	    	   }else{
-    	    		   throw new Exception("Got timeout (After " + command.getTimeout() + " seconds) while reading command output");
-    	    	   }
-    		   }
-           }
-    	   command.setCommandOutput(lines.toString());
-    	   
-    	   //This is here because we stop reading from the buffer then we find the correct prompt... 
-    	   //In some cases after the prompt we could still find more characters... 
-    	   //So we need to pull those out of the buffer to prevent it from showing up next time we interact with the console  
-    	   while(dataIn.ready()){
-    		   int i = dataIn.read();
-    		   log.debug("****************** reading JUNK char " + i + "********************");
-    	   }
-    			   
+			while(!read.processBuffer()){
+				//all the characters we have read were processed, we wait for more
+				long elapsTime = read.getElapsedMillis();
+				if(elapsTime > (command.getTimeout()*1000) || !isTerminalReadyForReading(command, elapsTime)){
+					read.timeout();
+				}
+				read.fillBuffer();
+			}
+			return read.complete();
 		} catch (Exception e) {
-			if(line.length() > 0){
-				lines.append(line);
+			return read.fail(e);
+		} finally {
+			read.close();
+		}
+	}
+	
+	/**
+	 * This function writes a command to the terminal and returns the state of reading its output, without waiting for the output
+	 * (used for running commands without a blocked thread, see CliCommandScheduler)
+	 * 
+	 * Note:
+	 * The caller must call step() whenever data is ready, and complete() or fail() followed by close() once the reading is over
+	 * Extender classes that write commands differently can override this function
+	 * 
+	 * @param command - the CLI command to run
+	 * @return the state of reading the command output
+	 * @throws Exception if the command could not be written
+	 */
+	protected TerminalRead startCliCommand(CliCommand command) throws Exception{
+		TerminalRead read = new TerminalRead(command, getPromptMatcher(), getRegexPromptMatcher(), null);
+		try {
+			writeToTerminal(command.getCommand() + LINUX_CRLF);
+		} catch (Exception e) {
+			read.close();
+			throw e;
+		}
+		return read;
+	}
+	
+	/**
+	 * This class holds the state of reading a single command output from the terminal:
+	 * the output is read in one go (waitForTerminal), or in steps whenever data is ready (step)
+	 * 
+	 * When the prompts are matched on the raw bytes (see isBytePromptMatching), the bytes of each line are decoded in bulk
+	 * once the line is over, and lines nobody asked for (no retained output, listener, parser or log) are not decoded at all
+	 * 
+	 * Note:
+	 * Only one output of a connection can be read at a time
+	 */
+	protected class TerminalRead{
+		
+		private final CliCommand command;
+		private final PromptMatcher matcher;
+		private final RegexPromptMatcher regexMatcher;
+		private final Prompt batchMarker;
+		private final String markerCommand;
+		
+		//matching the prompts on the raw bytes
+		private final boolean byteMode;
+		private final BytePromptMatcher byteMatcher;
+		private final CharsetDecoder decoder;
+		private final boolean decodeLines;
+		private ByteBuffer pendingBytes = null;
+		private int segmentStart = 0;
+		private CharBuffer decodedChars = null;
+		
+		private final long startTime = System.currentTimeMillis();
+		private final CommandOutput lines;
+		private final StringBuilder line = new StringBuilder();
+		private boolean outputStarted = false;
+		
+		//metrics
+		private final long startNanos = System.nanoTime();
+		private long firstByteNanos = -1;
+		private long charsRead = 0;
+		private final long bytesReadBefore;
+		private int junkChars = 0;
+		private boolean timedOut = false;
+		private boolean failed = false;
+		
+		/**
+		 * @param command - the CLI command that is been used
+		 * @param matcher - the literal prompts matcher
+		 * @param regexMatcher - the regular expression prompts matcher
+		 * @param batchMarker - the marker that ends the output of a batch command (null for a single command)
+		 */
+		TerminalRead(CliCommand command, PromptMatcher matcher, RegexPromptMatcher regexMatcher, Prompt batchMarker){
+			this(command, matcher, regexMatcher, batchMarker, null);
+		}
+		
+		/**
+		 * @param command - the CLI command that is been used
+		 * @param matcher - the literal prompts matcher
+		 * @param regexMatcher - the regular expression prompts matcher
+		 * @param batchMarker - the marker that ends the output of a batch command (null for a single command)
+		 * @param markerCommand - the command that echoes the batch marker, its terminal echo line is dropped (null for a single command)
+		 */
+		TerminalRead(CliCommand command, PromptMatcher matcher, RegexPromptMatcher regexMatcher, Prompt batchMarker, String markerCommand){
+			this.command = command;
+			this.matcher = matcher;
+			this.regexMatcher = regexMatcher;
+			this.batchMarker = batchMarker;
+			this.markerCommand = markerCommand;
+			byteMode = isBytePromptMatching();
+			if(byteMode){
+				byteMatcher = getBytePromptMatcher(matcher.getPrompts());
+				byteMatcher.reset();
+				decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+				pendingBytes = ByteBuffer.allocate(256);
+				if(byteReadBuffer == null){
+					byteReadBuffer = new byte[READ_BUFFER_SIZE];
+				}
+			}else{
+				byteMatcher = null;
+				decoder = null;
+			}
+			decodeLines = command.isRetainOutput() || command.getOutputListener() != null || command.getOutputParser() != null 
+					|| !command.isSilent() || regexMatcher.hasPrompts();
+			lines = new CommandOutput(command.getOutputSpillThreshold());
+			bytesReadBefore = inputBuffer != null ? inputBuffer.getBytesRead() : 0;
+			command.setOutputComplete(false);
+			command.setExitStatus(-1);
+			keepReadingOutput = true;
+			skippingMarkerLine = false;
+			matcher.reset();
+			regexMatcher.reset();
+		}
+		
+		/**
+		 * @return the CLI command that is been used
+		 */
+		public CliCommand getCommand(){
+			return command;
+		}
+		
+		/**
+		 * @return the time (in milliseconds) since the reading started
+		 */
+		public long getElapsedMillis(){
+			return System.currentTimeMillis() - startTime;
+		}
+		
+		/**
+		 * This function reads and processes all the characters that are ready, without blocking
+		 * @return true if the output is over (call complete), false if we need to wait for more data
+		 * @throws Exception if the terminal was closed (call fail)
+		 */
+		public boolean step() throws Exception{
+			while(!processBuffer()){
+				if(!dataIn.ready()){
+					if(inputBuffer != null && inputBuffer.isEndOfStream()){
+						throw new Exception("Connection closed while reading command output");
+					}
+					return false;
+				}
+				fillBuffer();
+			}
+			return true;
+		}
+		
+		/**
+		 * This function throws the timeout exception of the command (call fail with it)
+		 * @throws Exception the timeout exception
+		 */
+		public void timeout() throws Exception{
+			timedOut = true;
+			if(!outputStarted){
+				throw new Exception("Unable to read command output, no prompt return");
+			}
+			throw new Exception("Got timeout (After " + command.getTimeout() + " seconds) while reading command output");
+		}
+		
+		/**
+		 * Reads the characters that are ready into the read buffer (blocks if none are ready)
+		 */
+		void fillBuffer() throws Exception{
+			if(byteMode){
+				byteReadPosition = 0;
+				byteReadLimit = readOutputBytes(inputBuffer.getInputStream(), byteReadBuffer);
+				if(byteReadLimit < 0){
+					byteReadLimit = 0;
+					throw new Exception("Connection closed while reading command output");
+				}
+				outputStarted = true;
+				charsRead += byteReadLimit;
+				return;
+			}
+			readPosition = 0;
+			readLimit = readOutputAndAddLine(dataIn, readBuffer);
+			if(readLimit < 0){
+				readLimit = 0;
+				throw new Exception("Connection closed while reading command output");
+			}
+			outputStarted = true;
+			charsRead += readLimit;
+		}
+		
+		/**
+		 * We feed the prompts detection with all the characters in the read buffer
+		 * @return true if the output is over
+		 */
+		boolean processBuffer() throws Exception{
+			if(byteMode){
+				return processBytes();
 			}
-			command.setCommandOutput(lines.toString());
+			if(firstByteNanos < 0 && readPosition < readLimit){
+				firstByteNanos = System.nanoTime() - startNanos;
+			}
+			while(readPosition < readLimit && keepReadingOutput){
+				char character = readBuffer[readPosition++];
+				if(skippingMarkerLine){
+					//the rest of the batch marker line holds the command exit status
+					if(character == '\n'){
+						command.setExitStatus(parseExitStatus(line));
+						line.setLength(0);
+						keepReadingOutput = false;
+					}else{
+						line.append(character);
+					}
+					continue;
+				}
+				line.append(character);
+				Prompt prompt = matcher.nextPrompt(character);
+				if(prompt == null && character == '\n'){
+					//regular expression prompts must be searched before the line is over
+					prompt = findRegexPrompt(regexMatcher, line);
+				}
+				if(prompt != null){
+					handlePrompt(prompt, command, line, lines, batchMarker);
+				}else if(character == '\n'){
+					//end of line (LINUX_CRLF)
+					addLine();
+					line.setLength(0);
+					matcher.reset();
+					regexMatcher.reset();
+				}
+			}
+			
+			//regular expression prompts are searched once for all the new characters
+			if(keepReadingOutput && !skippingMarkerLine){
+				Prompt prompt = findRegexPrompt(regexMatcher, line);
+				if(prompt != null){
+					handlePrompt(prompt, command, line, lines, batchMarker);
+				}
+			}
+			return !keepReadingOutput;
+		}
+		
+		/**
+		 * We feed the prompts detection with all the bytes in the byte read buffer, 
+		 * the bytes are decoded only when a line is over or a prompt is found
+		 * @return true if the output is over
+		 */
+		private boolean processBytes() throws Exception{
+			if(firstByteNanos < 0 && byteReadPosition < byteReadLimit){
+				firstByteNanos = System.nanoTime() - startNanos;
+			}
+			//the bytes of the current line are copied to the pending bytes in bulk, only when they are decoded or the read buffer is over
+			segmentStart = byteReadPosition;
+			while(byteReadPosition < byteReadLimit && keepReadingOutput){
+				byte b = byteReadBuffer[byteReadPosition++];
+				if(skippingMarkerLine){
+					//the rest of the batch marker line holds the command exit status
+					if(b == '\n'){
+						decodePendingBytes();
+						command.setExitStatus(parseExitStatus(line));
+						line.setLength(0);
+						keepReadingOutput = false;
+					}
+					continue;
+				}
+				Prompt prompt = byteMatcher.nextPrompt(b);
+				if(prompt == null && b == '\n' && regexMatcher.hasPrompts()){
+					//regular expression prompts must be searched before the line is over
+					decodePendingBytes();
+					prompt = findRegexPromptInBytes();
+				}
+				if(prompt != null){
+					decodePendingBytes();
+					handlePrompt(prompt, command, line, lines, batchMarker);
+				}else if(b == '\n'){
+					//end of line (LINUX_CRLF)
+					if(decodeLines){
+						decodePendingBytes();
+						addLine();
+					}else{
+						//nobody reads the line, so it is not decoded
+						((Buffer) pendingBytes).clear();
+						segmentStart = byteReadPosition;
+					}
+					line.setLength(0);
+					byteMatcher.reset();
+					regexMatcher.reset();
+				}
+			}
+			if(keepReadingOutput){
+				addPendingBytes();
+			}
+			
+			//regular expression prompts are searched once for all the new bytes
+			if(keepReadingOutput && !skippingMarkerLine && regexMatcher.hasPrompts()){
+				decodePendingBytes();
+				Prompt prompt = findRegexPromptInBytes();
+				if(prompt != null){
+					handlePrompt(prompt, command, line, lines, batchMarker);
+				}
+			}
+			return !keepReadingOutput;
+		}
+		
+		/**
+		 * Copies the bytes read since the last copy (from segmentStart) to the pending bytes
+		 */
+		private void addPendingBytes(){
+			int count = byteReadPosition - segmentStart;
+			if(count <= 0){
+				return;
+			}
+			if(pendingBytes.remaining() < count){
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(pendingBytes.capacity() * 2, pendingBytes.position() + count));
+				((Buffer) pendingBytes).flip();
+				larger.put(pendingBytes);
+				pendingBytes = larger;
+			}
+			pendingBytes.put(byteReadBuffer, segmentStart, count);
+			segmentStart = byteReadPosition;
+		}
+		
+		/**
+		 * Decodes the pending bytes into the line (the bytes of a char that is not complete yet stay pending)
+		 */
+		private void decodePendingBytes(){
+			addPendingBytes();
+			if(pendingBytes.position() == 0){
+				return;
+			}
+			((Buffer) pendingBytes).flip();
+			int maxChars = (int) (pendingBytes.remaining() * decoder.maxCharsPerByte()) + 1;
+			if(decodedChars == null || decodedChars.capacity() < maxChars){
+				decodedChars = CharBuffer.allocate(Math.max(maxChars, 256));
+			}
+			((Buffer) decodedChars).clear();
+			decoder.decode(pendingBytes, decodedChars, false);
+			line.append(decodedChars.array(), 0, decodedChars.position());
+			pendingBytes.compact();
+		}
+		
+		/**
+		 * This function searches the regular expression prompts in the decoded line,
+		 * if the prompt found marks the end of the output the bytes after it are returned to the byte read buffer
+		 * @return the prompt found, or null if no prompt was found
+		 */
+		private Prompt findRegexPromptInBytes(){
+			Prompt prompt = regexMatcher.findPrompt(line);
+			if(prompt != null && prompt.isMarkEndOfOutput()){
+				int matchEnd = regexMatcher.getMatchEnd();
+				int extraBytes = pendingBytes.position();
+				if(matchEnd < line.length()){
+					extraBytes += charset.encode(CharBuffer.wrap(line, matchEnd, line.length())).remaining();
+				}
+				byteReadPosition -= Math.min(extraBytes, byteReadPosition);
+				segmentStart = byteReadPosition;
+				line.setLength(matchEnd);
+				((Buffer) pendingBytes).clear();
+				decoder.reset();
+			}
+			return prompt;
+		}
+		
+		/**
+		 * Adds the current line to the output, unless it is the terminal echo of the batch marker command
+		 */
+		private void addLine() throws Exception{
+			if(markerCommand == null || line.indexOf(markerCommand) == -1){
+				addOutputLine(command, lines, line);
+			}
+		}
+		
+		/**
+		 * This function ends a successful reading
+		 * @return the command output
+		 * @throws Exception
+		 */
+		public String complete() throws Exception{
+			command.setOutput(lines);
+			command.setOutputComplete(true);
+			if(batchMarker != null){
+				//the chars we have read already belong to the next commands of the batch
+				return commandResult(command);
+			}
+			
+			//we stop reading once the end prompt is found, in some cases more characters arrived after it...
+			//those characters stay in the read buffer (and the input stream) and are the start of the next command output 
+			junkChars = byteMode ? byteReadLimit - byteReadPosition : readLimit - readPosition;
+			if(discardTrailingOutput){
+				junkChars += discardAvailableInput();
+			}
+			return commandResult(command);
+		}
+		
+		/**
+		 * This function ends a failed reading
+		 * @param e - the failure
+		 * @return the output read so far (if the command ignores errors)
+		 * @throws Exception if the command does not ignore errors
+		 */
+		public String fail(Exception e) throws Exception{
+			failed = true;
+			if(byteMode && !skippingMarkerLine){
+				decodePendingBytes();
+			}
+			if(batchMarker == null){
+				//the unread characters belong to an output we no longer wait for
+				resetReadBuffers();
+			}
+			if(line.length() > 0 && !skippingMarkerLine){
+				addLine();
+				line.setLength(0);
+			}
+			command.setOutput(lines);
 			if(!command.ignoreErrors){
 				String exceptionString = "Unable to excecute command \"" + command.getCommand() + "\", " + e.getMessage();
 				if(command.getCommand().equals("")){
 					exceptionString = "Unable to connect to: " + ip;
 				}
 				throw new Exception(exceptionString);
-					
 			}
-		}  
-        return lines.toString();
+			return commandResult(command);
+		}
+		
+		/**
+		 * This method ends the reading (after complete or fail): notifies the output listener and reports the metrics
+		 */
+		public void close() throws Exception{
+			if(command.getOutputParser() != null){
+				command.getOutputParser().outputEnded(command);
+			}
+			if(command.getOutputListener() != null){
+				command.getOutputListener().outputEnded(command);
+			}
+			if(metricsListener != null){
+				long bytesRead = inputBuffer != null ? inputBuffer.getBytesRead() - bytesReadBefore : -1;
+				commandFinished(new CommandMetrics(command, System.nanoTime() - startNanos, firstByteNanos, charsRead, bytesRead, junkChars, timedOut, failed));
+			}
+		}
+	}
+	
+	/**
+	 * @param command - the CLI command that is been used
+	 * @return the command output, or an empty string if the output was moved to a file (read it from the command)
+	 */
+	protected static String commandResult(CliCommand command){
+		return command.isOutputSpilled() ? "" : command.getCommandOutput();
+	}
+	
+	/**
+	 * This function answers a cacheable command from the result cache, extender classes call it before running the command
+	 * @param command - the command to run
+	 * @return true if the command was answered from the cache (the command holds the cached result)
+	 */
+	protected boolean loadCachedResult(CliCommand command){
+		if(resultCache == null){
+			return false;
+		}
+		CachedResult result = resultCache.get(this, command);
+		if(result == null){
+			return false;
+		}
+		result.applyTo(command);
+		if(!command.isSilent()){
+			log.info("[cache] " + command.getCommand());
+		}
+		return true;
+	}
+	
+	/**
+	 * This function keeps the result of a cacheable command in the result cache, extender classes call it after the command ran
+	 * @param command - the command that ran
+	 */
+	protected void cacheResult(CliCommand command){
+		if(resultCache != null){
+			resultCache.put(this, command);
+		}
+	}
+	
+	/**
+	 * This function drops the characters (and bytes) that were read from the terminal and were not added to our line container yet
+	 */
+	protected void resetReadBuffers(){
+		readPosition = readLimit = 0;
+		byteReadPosition = byteReadLimit = 0;
+		charReadPending.setLength(0);
+	}
+	
+	/**
+	 * This function drops the characters that were not read yet: the rest of the read buffer and whatever is ready in the data-in stream
+	 * @return the number of characters dropped from the data-in stream
+	 * @throws IOException
+	 */
+	protected int discardAvailableInput() throws IOException{
+		resetReadBuffers();
+		int discarded = 0;
+		if(isBytePromptMatching()){
+			//the data-in reader is not used, the bytes are dropped without decoding them
+			InputStream in = inputBuffer.getInputStream();
+			while(in.available() > 0){
+				int count = in.read(byteReadBuffer, 0, byteReadBuffer.length);
+				if(count < 0){
+					break;
+				}
+				discarded += count;
+			}
+			return discarded;
+		}
+		while(dataIn.ready()){
+			int count = dataIn.read(readBuffer, 0, readBuffer.length);
+			if(count < 0){
+				break;
+			}
+			discarded += count;
+		}
+		return discarded;
+	}
+	
+	/**
+	 * This function adds a line to the command output: keep it (unless the command does not retain its output), 
+	 * send it to the command output listener and output parser and show it in the terminal log
+	 * @param command - the CLI command that is been used
+	 * @param lines - the output container
+	 * @param line - the line to add
+	 * @throws Exception
+	 */
+	private void addOutputLine(CliCommand command, CommandOutput lines, StringBuilder line) throws Exception{
+		if(command.isRetainOutput()){
+			lines.append(line);
+		}
+		if(command.getOutputListener() != null){
+			command.getOutputListener().outputLine(command, line.toString());
+		}
+		if(command.getOutputParser() != null && line.length() > 0 && line.charAt(line.length() - 1) == '\n'){
+			//the end of output prompt line is not parsed
+			command.getOutputParser().parseLine(command, line);
+		}
+		if(!command.isSilent()){
+			log.info("[terminal] " + line);
+		}
 	}
 	
 	/**
 	 * This function reads a char from the remove machine terminal and add it to our line container 
+	 * 
+	 * Note:
+	 * The output is read a buffer at a time (see readOutputAndAddLine(BufferedReader, char[])), this function is called only when an extender class overrides it,
+	 * in this case the chars are read one at a time and the line container holds only the chars of the current read (not the whole line)
+	 * 
 	 * @param dataIn - the remote terminal reader 
 	 * @param line - the line container
 	 * @throws Exception
+	 * @deprecated override readOutputAndAddLine(BufferedReader, char[]) instead, reading one char at a time is slow
 	 */
+	@Deprecated
 	protected void readOutputAndAddLine(BufferedReader dataIn, StringBuilder line) throws Exception{
-		line.append((char)dataIn.read());
+		if(escapeFilter == null){
+			line.append((char)dataIn.read());
+			return;
+		}
+		int character = dataIn.read();
+		if(character >= 0 && escapeFilter.accept((char)character)){
+			line.append((char)character);
+		}
+	}
+	
+	/**
+	 * This function reads all the chars that are ready on the remove machine terminal into the read buffer,
+	 * the chars will be added to our line container while looking for prompts
+	 * 
+	 * Note:
+	 * If filtering escape sequences is on (see setFilterEscapeSequences) the escape sequences are removed from the buffer
+	 * Extender classes can filter the buffer as well and return the number of chars left 
+	 *  
+	 * @param dataIn - the remote terminal reader 
+	 * @param buffer - the read buffer
+	 * @return the number of chars to add to our line container (from the start of the buffer), or -1 if the terminal was closed
+	 * @throws Exception
+	 */
+	protected int readOutputAndAddLine(BufferedReader dataIn, char[] buffer) throws Exception{
+		if(isCharReadOverridden()){
+			return readOutputCharByChar(dataIn, buffer);
+		}
+		int count = dataIn.read(buffer, 0, buffer.length);
+		if(count > 0 && escapeFilter != null){
+			count = escapeFilter.filter(buffer, 0, count);
+		}
+		return count;
+	}
+	
+	/**
+	 * This function reads the chars that are ready using the single char readOutputAndAddLine of an extender class
+	 * @param dataIn - the remote terminal reader 
+	 * @param buffer - the read buffer
+	 * @return the number of chars to add to our line container (from the start of the buffer), or -1 if the terminal was closed
+	 * @throws Exception
+	 */
+	@SuppressWarnings("deprecation")
+	private int readOutputCharByChar(BufferedReader dataIn, char[] buffer) throws Exception{
+		boolean closed = false;
+		if(charReadPending.length() == 0){
+			//blocks until the first char arrives, like the buffer read does
+			do {
+				readOutputAndAddLine(dataIn, charReadPending);
+				closed = charReadPending.length() > 0 && charReadPending.charAt(charReadPending.length() - 1) == END_OF_STREAM_CHAR;
+			} while(!closed && charReadPending.length() < buffer.length && dataIn.ready());
+			if(closed){
+				//the single char read appends (char) -1 at the end of the stream
+				charReadPending.setLength(charReadPending.length() - 1);
+			}
+		}
+		if(closed && charReadPending.length() == 0){
+			return -1;
+		}
+		//the extender class may add more chars than the buffer can hold, the rest are returned by the next read
+		int count = Math.min(buffer.length, charReadPending.length());
+		charReadPending.getChars(0, count, buffer, 0);
+		charReadPending.delete(0, count);
+		return count;
+	}
+	
+	/**
+	 * @return true if an extender class overrides the single char readOutputAndAddLine
+	 */
+	private boolean isCharReadOverridden(){
+		if(charReadOverridden == null){
+			boolean overridden = false;
+			for(Class<?> type = getClass(); type != CliConnection.class && !overridden; type = type.getSuperclass()){
+				try {
+					type.getDeclaredMethod("readOutputAndAddLine", BufferedReader.class, StringBuilder.class);
+					overridden = true;
+				} catch (NoSuchMethodException e) {
+					//not overridden by this class
+				}
+			}
+			charReadOverridden = overridden;
+		}
+		return charReadOverridden;
+	}
+	
+	/**
+	 * This function reads all the bytes that are ready on the remote machine terminal into the byte read buffer
+	 * (used instead of readOutputAndAddLine when the prompts are matched on the raw bytes)
+	 * 
+	 * Note:
+	 * If filtering escape sequences is on (see setFilterEscapeSequences) the escape sequences are removed from the buffer
+	 * Extender classes can filter the buffer as well and return the number of bytes left 
+	 * 
+	 * @param in - the raw terminal input (the inputBuffer input stream)
+	 * @param buffer - the byte read buffer
+	 * @return the number of bytes to match (from the start of the buffer), or -1 if the terminal was closed
+	 * @throws Exception
+	 */
+	protected int readOutputBytes(InputStream in, byte[] buffer) throws Exception{
+		int count = in.read(buffer, 0, buffer.length);
+		if(count > 0 && escapeFilter != null){
+			count = escapeFilter.filter(buffer, 0, count);
+		}
+		return count;
+	}
+	
+	/**
+	 * This method writes text to the remote terminal, encoded using the connection charset
+	 * @param text - the text to write
+	 * @throws IOException
+	 */
+	protected void writeToTerminal(String text) throws IOException{
+		dataOut.write(text.getBytes(charset));
+		dataOut.flush();
+	}
+	
+	/**
+	 * This function reports the metrics of a command to the metrics listener (errors of the listener are logged and ignored)
+	 * @param metrics - the command metrics
+	 */
+	protected void commandFinished(CommandMetrics metrics){
+		if(metricsListener == null){
+			return;
+		}
+		try {
+			metricsListener.commandFinished(this, metrics);
+		} catch (Exception e) {
+			log.error("Metrics listener failed", e);
+		}
 	}
 	
 	/**
 	 * used for checking if the data-in stream is ready for read
+	 * 
+	 * Note:
+	 * If the inputBuffer is set we wait for its signal, otherwise we poll the data-in stream with a growing pause between polls  
+	 * 
 	 * @param command - the CLI command that is been used (used for extracting the command timeout) 
 	 * @return true if we can read from the data-in stream
 	 * @throws Exception
 	 */
 	protected boolean isTerminalReadyForReading(CliCommand command, long elapsTime) throws Exception{
-		long startTime = System.currentTimeMillis() - elapsTime;
-		while(!dataIn.ready() && startTime + (command.getTimeout()*1000) > System.currentTimeMillis()){}
+		long deadline = System.currentTimeMillis() - elapsTime + (command.getTimeout()*1000);
+		long pollInterval = TimeUnit.MICROSECONDS.toNanos(50);
+		long remaining = deadline - System.currentTimeMillis();
+		while(!dataIn.ready() && remaining > 0){
+			if(inputBuffer != null){
+				if(!inputBuffer.awaitData(remaining) && inputBuffer.isEndOfStream()){
+					break;
+				}
+			}else{
+				LockSupport.parkNanos(Math.min(pollInterval, TimeUnit.MILLISECONDS.toNanos(remaining)));
+				pollInterval = Math.min(pollInterval * 2, MAX_POLL_INTERVAL_NANOS);
+			}
+			remaining = deadline - System.currentTimeMillis();
+		}
 		
 		return dataIn.ready();
 	}
 	
+	/**
+	 * This function handles a prompt found in the terminal output (mark the end of the output or send the prompt response)
+	 * @param prompt - the prompt found
+	 * @param command - the CLI command that is been used
+	 * @param line - the current line
+	 * @param lines - the output container
+	 * @param batchMarker - the marker that ends the output of a batch command (null for a single command)
+	 * @throws Exception
+	 */
+	private void handlePrompt(Prompt prompt, CliCommand command, StringBuilder line, CommandOutput lines, Prompt batchMarker) throws Exception{
+		if(metricsListener != null && prompt != batchMarker){
+			try {
+				metricsListener.promptFound(this, command, prompt);
+			} catch (Exception e) {
+				log.error("Metrics listener failed", e);
+			}
+		}
+		if(prompt == batchMarker){
+			//the marker is not part of the output, we keep reading the rest of its line (the exit status)
+			line.setLength(line.length() - batchMarker.getPrompt().length());
+			if(line.length() > 0){
+				addOutputLine(command, lines, line);
+			}
+			line.setLength(0);
+			skippingMarkerLine = true;
+			return;
+		}
+		if(prompt.isMarkEndOfOutput()){
+			addOutputLine(command, lines, line);
+			keepReadingOutput = false; //once we know the output is ended we stop processing prompts and reading outputs
+			return;
+		}
+		if(prompt.isSendResponseString()){
+			writeToTerminal(prompt.getResponseString());
+		}
+		if(prompt.isAddEnter()){
+			writeToTerminal(LINUX_CRLF);
+		}
+	}
+	
+	/**
+	 * @param markerLineRest - the rest of the batch marker line (the exit status followed by the marker end)
+	 * @return the exit status, or -1 if the marker line has no exit status
+	 */
+	private static int parseExitStatus(StringBuilder markerLineRest){
+		int exitStatus = 0;
+		int digits = 0;
+		while(digits < markerLineRest.length() && digits < 9 && Character.isDigit(markerLineRest.charAt(digits))){
+			exitStatus = exitStatus * 10 + (markerLineRest.charAt(digits++) - '0');
+		}
+		return digits == 0 ? -1 : exitStatus;
+	}
+	
+	/**
+	 * This function returns the matcher for the literal prompts of this connection (compiled again only if the prompts list has changed)
+	 * @return the literal prompts matcher
+	 */
+	protected PromptMatcher getPromptMatcher(){
+		if(promptMatcher == null || !promptMatcher.getPrompts().equals(prompts)){
+			promptMatcher = new PromptMatcher(prompts);
+		}
+		return promptMatcher;
+	}
+	
+	/**
+	 * This function returns the matcher for prompts encoded to bytes using the connection charset
+	 * (the matcher of the connection prompts is compiled again only if the prompts list or the charset has changed)
+	 * @param prompts - the prompts to match
+	 * @return the literal prompts bytes matcher
+	 */
+	protected BytePromptMatcher getBytePromptMatcher(List<Prompt> prompts){
+		if(!prompts.equals(this.prompts)){
+			return new BytePromptMatcher(prompts, charset);
+		}
+		if(bytePromptMatcher == null || !bytePromptMatcher.getPrompts().equals(prompts) || !bytePromptMatcher.getCharset().equals(charset)){
+			bytePromptMatcher = new BytePromptMatcher(prompts, charset);
+		}
+		return bytePromptMatcher;
+	}
+	
+	/**
+	 * This function returns the matcher for the regular expression prompts of this connection (compiled again only if the prompts list has changed)
+	 * @return the regular expression prompts matcher
+	 * @throws Exception
+	 */
+	protected RegexPromptMatcher getRegexPromptMatcher() throws Exception{
+		if(regexPromptMatcher == null || !regexPromptMatcher.getPrompts().equals(prompts)){
+			regexPromptMatcher = new RegexPromptMatcher(prompts, regexPromptWindow);
+		}
+		return regexPromptMatcher;
+	}
+	
+	/**
+	 * This function searches the regular expression prompts in the chars added to the line since the last search
+	 * 
+	 * Note:
+	 * If the prompt found marks the end of the output, the chars after it are returned to the read buffer 
+	 * 
+	 * @param regexMatcher - the regular expression prompts matcher
+	 * @param line - the current line
+	 * @return the prompt found, or null if no prompt was found
+	 */
+	private Prompt findRegexPrompt(RegexPromptMatcher regexMatcher, StringBuilder line){
+		if(!regexMatcher.hasPrompts()){
+			return null;
+		}
+		Prompt prompt = regexMatcher.findPrompt(line);
+		if(prompt != null && prompt.isMarkEndOfOutput()){
+			int extraChars = Math.min(line.length() - regexMatcher.getMatchEnd(), readPosition);
+			readPosition -= extraChars;
+			line.setLength(line.length() - extraChars);
+		}
+		return prompt;
+	}
+	
 	/**
 	 * This function checks if a specific prompt is found in the desired line
+	 * 
+	 * Note:
+	 * The terminal output is no longer searched using this function, all the prompts are matched at once while the chars are read
+	 * (see PromptMatcher and RegexPromptMatcher), so overriding it has no effect on reading the command output
+	 * 
 	 * @param prompt - the prompt to look for
 	 * @param line - the line to seek the prompt in
 	 * @return true if the prompt is found in the line
 	 * @throws Exception
+	 * @deprecated the prompts are matched by PromptMatcher and RegexPromptMatcher
 	 */
+	@Deprecated
 	protected boolean isPromptFound(Prompt prompt, StringBuilder line) throws Exception{
 		boolean found = false;
 		if(prompt.isRegularExpression()){
@@ -345,6 +1465,135 @@ public abstract class CliConnection {
 		return found;
 	}
 
+	/**
+	 * @return the cache that answers cacheable commands without running them (null if there is no cache)
+	 */
+	public CommandResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * This function returns the key the result cache keeps the results of this connection under,
+	 * connections with the same key share their cached results
+	 * @return the result cache key (user@ip:port)
+	 */
+	public String getResultCacheKey() {
+		return username + "@" + ip + ":" + port;
+	}
+
+	/**
+	 * @param resultCache - the cache that answers cacheable commands (see CliCommand.setCacheTtl) without running them, 
+	 * 						can be shared by many connections (null for no cache)
+	 */
+	public void setResultCache(CommandResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	/**
+	 * @return the charset of the remote terminal
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Note:
+	 * The charset should be set before connecting (the data-in reader of the connection is created with it)
+	 * 
+	 * @param charset - the charset of the remote terminal, used for encoding the commands and the prompts and for decoding the output
+	 * 					(the default is UTF-8, regardless of the JVM default charset)
+	 */
+	public void setCharset(Charset charset) {
+		this.charset = charset;
+	}
+
+	/**
+	 * @return true if the prompts are matched on the raw bytes: byte prompt matching is on, the connection feeds dataIn through the inputBuffer,
+	 * 		   and the charset encodes the line feed as a single byte (UTF-8 and the single byte charsets do, UTF-16 does not)
+	 * 		   (the prompts are not matched on the raw bytes when an extender class overrides the single char readOutputAndAddLine)
+	 */
+	public boolean isBytePromptMatching() {
+		return bytePromptMatching && inputBuffer != null && Arrays.equals("\n".getBytes(charset), new byte[]{'\n'}) && !isCharReadOverridden();
+	}
+
+	/**
+	 * When matching the prompts on the raw bytes the output bytes are not pushed through the data-in reader one char at a time,
+	 * the prompts are encoded once and each line is decoded in bulk when it is over (or not at all if nobody reads it), 
+	 * this saves CPU on large outputs
+	 * 
+	 * Note:
+	 * Must be set before connecting, the data-in reader is not used once the prompts are matched on the raw bytes
+	 * Regular expression prompts are still searched in the decoded line
+	 * 
+	 * @param bytePromptMatching - set to true for matching the prompts on the raw bytes
+	 */
+	public void setBytePromptMatching(boolean bytePromptMatching) {
+		this.bytePromptMatching = bytePromptMatching;
+	}
+
+	/**
+	 * @return the max time (in seconds) we wait for the terminal prompt that follows the last command of a batch
+	 */
+	public int getBatchEndTimeout() {
+		return batchEndTimeout;
+	}
+
+	/**
+	 * @param batchEndTimeout - the max time (in seconds) we wait for the terminal prompt that follows the last command of a batch
+	 */
+	public void setBatchEndTimeout(int batchEndTimeout) {
+		this.batchEndTimeout = batchEndTimeout;
+	}
+
+	/**
+	 * @return true if the characters that arrive after the end prompt are dropped
+	 */
+	public boolean isDiscardTrailingOutput() {
+		return discardTrailingOutput;
+	}
+
+	/**
+	 * By default the characters that arrive after the end prompt are kept and become the start of the next command output,
+	 * terminals that print extra characters after the prompt (for example a second prompt) can drop them instead
+	 * @param discardTrailingOutput - set to true for dropping the characters that arrive after the end prompt
+	 */
+	public void setDiscardTrailingOutput(boolean discardTrailingOutput) {
+		this.discardTrailingOutput = discardTrailingOutput;
+	}
+
+	/**
+	 * @return true if the terminal escape sequences (colors, cursor movements etc.) are removed from the output
+	 */
+	public boolean isFilterEscapeSequences() {
+		return escapeFilter != null;
+	}
+
+	/**
+	 * @param filterEscapeSequences - set to true for removing the terminal escape sequences (colors, cursor movements etc.) from the output,
+	 * 								  useful when the terminal type is not "dumb"
+	 */
+	public void setFilterEscapeSequences(boolean filterEscapeSequences) {
+		if(!filterEscapeSequences){
+			escapeFilter = null;
+		}else if(escapeFilter == null){
+			escapeFilter = new AnsiEscapeFilter();
+		}
+	}
+
+	/**
+	 * @return the listener that gets the connect and commands metrics of this connection
+	 */
+	public CliMetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	/**
+	 * @param metricsListener - the listener that gets the connect and commands metrics of this connection (for example CliMetricsRegistry)
+	 */
+	public void setMetricsListener(CliMetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
 	/**
 	 * @return the user name used for this connection
 	 */
@@ -422,4 +1671,34 @@ public abstract class CliConnection {
 		this.numberOfRetries = numberOfRetries;
 	}
 
+	/**
+	 * @return the number of already searched chars we search again for regular expression prompts when new chars arrive
+	 */
+	public int getRegexPromptWindow() {
+		return regexPromptWindow;
+	}
+
+	/**
+	 * @param regexPromptWindow - the number of already searched chars to search again for regular expression prompts when new chars arrive
+	 * (0 means search the whole line, this is slow on long lines)
+	 */
+	public void setRegexPromptWindow(int regexPromptWindow) {
+		this.regexPromptWindow = regexPromptWindow;
+		regexPromptMatcher = null;
+	}
+
+	/**
+	 * @return the executor that runs the background commands of this connection (null means the default executor)
+	 */
+	public Executor getCommandExecutor() {
+		return commandExecutor;
+	}
+
+	/**
+	 * @param commandExecutor - the executor to run the background commands of this connection (null means the default executor)
+	 */
+	public void setCommandExecutor(Executor commandExecutor) {
+		this.commandExecutor = commandExecutor;
+	}
+
 }
@@ -0,0 +1,104 @@
+package com.qualiycode.remote_cli_connection;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class creates the executors used for running CLI commands in the background
+ * 
+ * On JDK 21 and later commands run on virtual threads, so thousands of commands waiting for remote terminals do not
+ * need thousands of platform threads. On older JDKs a cached pool of daemon threads is used.
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public final class CliExecutors {
+
+	private final static Logger log = LoggerFactory.getLogger(CliExecutors.class);
+	
+	private static volatile ExecutorService defaultExecutor = null;
+	
+	private static volatile ScheduledExecutorService monitorScheduler = null;
+	
+	private CliExecutors(){
+	}
+	
+	/**
+	 * @return the executor shared by all the connections that were not given their own executor
+	 */
+	public static ExecutorService getDefaultExecutor(){
+		if(defaultExecutor == null){
+			synchronized (CliExecutors.class) {
+				if(defaultExecutor == null){
+					defaultExecutor = newCommandExecutor("cli-command");
+				}
+			}
+		}
+		return defaultExecutor;
+	}
+	
+	/**
+	 * Note:
+	 * The scheduled tasks must be short (long work should be handed to another executor), since all the connections share a single thread
+	 * 
+	 * @return the scheduler shared by all the connections for their periodic checks (for example the connection monitor)
+	 */
+	public static ScheduledExecutorService getMonitorScheduler(){
+		if(monitorScheduler == null){
+			synchronized (CliExecutors.class) {
+				if(monitorScheduler == null){
+					monitorScheduler = Executors.newSingleThreadScheduledExecutor(newDaemonThreadFactory("cli-monitor"));
+				}
+			}
+		}
+		return monitorScheduler;
+	}
+	
+	/**
+	 * @param threadNamePrefix - the name prefix of the threads (used only when virtual threads are not available)
+	 * @return a new executor that runs each task on a virtual thread if the JDK supports it, otherwise on a cached pool of daemon threads
+	 */
+	public static ExecutorService newCommandExecutor(String threadNamePrefix){
+		ExecutorService executor = newVirtualThreadExecutor();
+		if(executor == null){
+			executor = Executors.newCachedThreadPool(newDaemonThreadFactory(threadNamePrefix));
+		}
+		return executor;
+	}
+	
+	/**
+	 * @return a new executor that runs each task on a virtual thread, or null if the JDK does not support virtual threads
+	 */
+	public static ExecutorService newVirtualThreadExecutor(){
+		try {
+			//we use reflection because we are compiled for older JDKs
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (Exception e) {
+			log.debug("Unable to create virtual threads executor", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * @param threadNamePrefix - the name prefix of the threads
+	 * @return a thread factory that creates daemon threads
+	 */
+	public static ThreadFactory newDaemonThreadFactory(final String threadNamePrefix){
+		final AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, threadNamePrefix + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
@@ -0,0 +1,32 @@
+package com.qualiycode.remote_cli_connection;
+
+/**
+ * Listener for the output of a CLI command, gets the output while it is read from the remote terminal
+ * 
+ * Note:
+ * The listener is called by the thread reading the command output, so it should not block for long
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public interface CliOutputListener {
+
+	/**
+	 * Called for each line of the output as soon as the line is read
+	 * 
+	 * Note:
+	 * The line includes its line terminator, the last line (the one with the end of output prompt) has no line terminator
+	 * 
+	 * @param command - the command the output belongs to
+	 * @param line - the output line
+	 * @throws Exception
+	 */
+	void outputLine(CliCommand command, String line) throws Exception;
+	
+	/**
+	 * Called once the command output is over (successfully or not)
+	 * @param command - the command the output belongs to
+	 */
+	default void outputEnded(CliCommand command){
+	}
+}
@@ -0,0 +1,330 @@
+package com.qualiycode.remote_cli_connection;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class holds a command output while it is read
+ *
+ * Small outputs are kept in memory, once the output grows above the spill threshold it is moved to a temporary file
+ * and the rest of the output is written to the file sequentially.
+ * A spilled output is read back from the file through memory mapping, so the heap usage does not depend on the output size.
+ *
+ * Note:
+ * The file holds the chars as UTF-16 (2 bytes per char) so it can be mapped as a CharSequence
+ * The output is written by the thread reading the command and should be read only after the command is over
+ * toString() builds a String of the whole output, use the CharSequence methods or getReader() for large outputs
+ * The file is deleted by release(), a spilled output that is not released keeps its file
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public class CommandOutput implements CharSequence {
+
+	protected final static Logger log = LoggerFactory.getLogger(CommandOutput.class);
+
+	/**
+	 * The size (in bytes) of the buffer used for writing to the file
+	 */
+	protected static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Each mapped segment of the file holds 2^DEFAULT_SEGMENT_SHIFT chars (a mapping is limited to 2GB)
+	 */
+	private static final int DEFAULT_SEGMENT_SHIFT = 28;
+
+	/**
+	 * The output size (in chars) above which the output is moved to a file, 0 means the output is always kept in memory
+	 */
+	private final int spillThreshold;
+
+	private final int segmentShift;
+
+	/**
+	 * Holds the output while it is kept in memory (null once the output was moved to a file)
+	 */
+	private StringBuilder memory = new StringBuilder();
+
+	/**
+	 * The total number of chars in the output
+	 */
+	private long length = 0;
+
+	private File file = null;
+	private FileChannel channel = null;
+	private ByteBuffer writeBuffer = null;
+	private CharBuffer writeChars = null;
+
+	/**
+	 * The mapped segments of the file and the output length when they were mapped
+	 */
+	private CharBuffer[] segments = null;
+	private long mappedLength = -1;
+
+	/**
+	 * Creates an output that is always kept in memory
+	 */
+	public CommandOutput(){
+		this(0);
+	}
+
+	/**
+	 * @param spillThreshold - the output size (in chars) above which the output is moved to a temporary file (0 means the output is always kept in memory)
+	 */
+	public CommandOutput(int spillThreshold){
+		this(spillThreshold, DEFAULT_SEGMENT_SHIFT);
+	}
+
+	/**
+	 * @param spillThreshold - the output size (in chars) above which the output is moved to a temporary file (0 means the output is always kept in memory)
+	 * @param segmentShift - each mapped segment of the file holds 2^segmentShift chars
+	 */
+	CommandOutput(int spillThreshold, int segmentShift){
+		this.spillThreshold = spillThreshold;
+		this.segmentShift = segmentShift;
+	}
+
+	/**
+	 * This method adds chars to the end of the output
+	 * @param chars - the chars to add
+	 * @return this output
+	 * @throws IOException if the output could not be written to the file
+	 */
+	public CommandOutput append(CharSequence chars) throws IOException{
+		if(file == null){
+			if(spillThreshold <= 0 || length + chars.length() <= spillThreshold){
+				memory.append(chars);
+				length += chars.length();
+				return this;
+			}
+			spill();
+		}
+		write(chars);
+		length += chars.length();
+		return this;
+	}
+
+	/**
+	 * @return the total number of chars in the output
+	 */
+	public long getLength(){
+		return length;
+	}
+
+	/**
+	 * @return true if the output was moved to a file
+	 */
+	public boolean isSpilled(){
+		return file != null;
+	}
+
+	/**
+	 * @return the file holding the output (UTF-16 chars), or null if the output is kept in memory
+	 */
+	public File getFile(){
+		return file;
+	}
+
+	/**
+	 * Note:
+	 * Outputs longer than Integer.MAX_VALUE chars return Integer.MAX_VALUE (use getLength())
+	 */
+	@Override
+	public int length() {
+		return (int)Math.min(length, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public char charAt(int index) {
+		if(memory != null){
+			return memory.charAt(index);
+		}
+		if(index < 0 || index >= length){
+			throw new IndexOutOfBoundsException("index: " + index + ", length: " + length);
+		}
+		mapFile();
+		return segments[index >> segmentShift].get(index & segmentMask());
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if(memory != null){
+			return memory.subSequence(start, end);
+		}
+		if(start < 0 || end > length || start > end){
+			throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+		}
+		mapFile();
+		int segment = start >> segmentShift;
+		if(end == start || (end - 1) >> segmentShift == segment){
+			//a view of the mapped file, no chars are copied
+			int offset = start & segmentMask();
+			return segments[segment].subSequence(offset, offset + end - start);
+		}
+		StringBuilder chars = new StringBuilder(end - start);
+		for(int i=start; i<end; i++){
+			chars.append(charAt(i));
+		}
+		return chars;
+	}
+
+	/**
+	 * Note:
+	 * The String holds the whole output in memory, use the CharSequence methods or getReader() for large outputs
+	 */
+	@Override
+	public String toString() {
+		if(memory != null){
+			return memory.toString();
+		}
+		StringBuilder chars = new StringBuilder(length());
+		try (Reader reader = getReader()) {
+			char[] buffer = new char[8192];
+			int count;
+			while((count = reader.read(buffer, 0, buffer.length)) != -1){
+				chars.append(buffer, 0, count);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return chars.toString();
+	}
+
+	/**
+	 * @return a reader of the whole output (reads the file of a spilled output without loading it to memory)
+	 */
+	public Reader getReader(){
+		return new Reader() {
+			private long position = 0;
+
+			@Override
+			public int read(char[] buffer, int offset, int count) throws IOException {
+				if(position >= length){
+					return -1;
+				}
+				if(count == 0){
+					return 0;
+				}
+				if(memory != null){
+					count = (int)Math.min(count, length - position);
+					memory.getChars((int)position, (int)position + count, buffer, offset);
+				}else{
+					mapFile();
+					CharBuffer segment = segments[(int)(position >> segmentShift)].duplicate();
+					((Buffer)segment).position((int)(position & segmentMask()));
+					count = Math.min(count, segment.remaining());
+					segment.get(buffer, offset, count);
+				}
+				position += count;
+				return count;
+			}
+
+			@Override
+			public void close() throws IOException {
+			}
+		};
+	}
+
+	/**
+	 * This method deletes the file of a spilled output, the output can not be read after it was released
+	 */
+	public void release(){
+		segments = null;
+		writeBuffer = null;
+		writeChars = null;
+		if(channel != null){
+			try {
+				channel.close();
+			} catch (IOException e) {
+				//nothing to do, the file is deleted anyway
+			}
+			channel = null;
+		}
+		if(file != null && file.exists() && !file.delete()){
+			//mapped files can not be deleted on some platforms until the mapping is collected
+			log.warn("Unable to delete the command output file " + file);
+		}
+	}
+
+	/**
+	 * Moves the output from memory to a new temporary file
+	 */
+	private void spill() throws IOException{
+		file = File.createTempFile("cli-output-", ".txt");
+		try {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			file.delete();
+			file = null;
+			throw e;
+		}
+		writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+		writeChars = writeBuffer.asCharBuffer();
+		write(memory);
+		memory = null;
+	}
+
+	private void write(CharSequence chars) throws IOException{
+		int start = 0;
+		int end = chars.length();
+		while(start < end){
+			int count = Math.min(end - start, writeChars.remaining());
+			writeChars.append(chars, start, start + count);
+			start += count;
+			if(!writeChars.hasRemaining()){
+				flushWriteBuffer();
+			}
+		}
+	}
+
+	private void flushWriteBuffer() throws IOException{
+		//the Buffer casts keep the byte code compatible with Java 8 (newer versions return ByteBuffer)
+		((Buffer)writeBuffer).position(0);
+		((Buffer)writeBuffer).limit(writeChars.position() * 2);
+		while(writeBuffer.hasRemaining()){
+			channel.write(writeBuffer);
+		}
+		((Buffer)writeBuffer).clear();
+		((Buffer)writeChars).clear();
+	}
+
+	/**
+	 * Maps the file (again if chars were added since it was last mapped)
+	 */
+	private void mapFile(){
+		if(mappedLength == length){
+			return;
+		}
+		try {
+			if(writeChars.position() > 0){
+				flushWriteBuffer();
+			}
+			long segmentChars = 1L << segmentShift;
+			int count = (int)((length + segmentChars - 1) >> segmentShift);
+			CharBuffer[] mapped = new CharBuffer[count];
+			for(int i=0; i<count; i++){
+				long start = (long)i << segmentShift;
+				long chars = Math.min(segmentChars, length - start);
+				mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start * 2, chars * 2).asCharBuffer();
+			}
+			segments = mapped;
+			mappedLength = length;
+		} catch (IOException e) {
+			throw new UncheckedIOException("Unable to read the command output file " + file, e);
+		}
+	}
+
+	private int segmentMask(){
+		return (1 << segmentShift) - 1;
+	}
+}
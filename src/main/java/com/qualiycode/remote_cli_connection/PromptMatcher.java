@@ -0,0 +1,207 @@
+package com.qualiycode.remote_cli_connection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * This class finds the literal (non regular expression) prompts in the terminal output while it is read
+ *
+ * The prompts are compiled once into an automaton (Aho-Corasick) that is advanced one char at a time,
+ * each char costs a single table lookup and no objects are created while matching.
+ *
+ * Note:
+ * Regular expression prompts are ignored by this class
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public class PromptMatcher {
+
+	/**
+	 * Holds the prompts list this matcher was compiled from
+	 */
+	private final List<Prompt> prompts;
+
+	/**
+	 * Maps an ASCII char to its column in the transitions table (0 means the char is not part of any prompt)
+	 */
+	private final int[] asciiColumns = new int[128];
+
+	/**
+	 * The non ASCII chars that are part of the prompts (sorted) and their columns in the transitions table
+	 */
+	private final char[] otherChars;
+	private final int[] otherColumns;
+
+	/**
+	 * The number of columns in the transitions table
+	 */
+	private final int columns;
+
+	/**
+	 * The transitions table, the next state is transitions[state * columns + column]
+	 */
+	private final int[] transitions;
+
+	/**
+	 * Holds for each state the index (in the prompts list) of the first prompt that ends in this state, or -1
+	 */
+	private final int[] matches;
+
+	/**
+	 * The current state
+	 */
+	private int state = 0;
+
+	/**
+	 * @param prompts - the prompts to look for, when several prompts end at the same char the first one in the list is reported
+	 */
+	public PromptMatcher(List<Prompt> prompts){
+		this.prompts = new ArrayList<>(prompts);
+
+		//collecting the alphabet of the prompts
+		TreeSet<Character> alphabet = new TreeSet<>();
+		for(Prompt prompt : this.prompts){
+			if(isLiteral(prompt)){
+				for(char c : prompt.getPrompt().toCharArray()){
+					alphabet.add(c);
+				}
+			}
+		}
+		int column = 1;
+		List<Character> other = new ArrayList<>();
+		for(char c : alphabet){
+			if(c < asciiColumns.length){
+				asciiColumns[c] = column++;
+			}else{
+				other.add(c);
+			}
+		}
+		otherChars = new char[other.size()];
+		otherColumns = new int[other.size()];
+		for(int i=0; i<other.size(); i++){
+			otherChars[i] = other.get(i);
+			otherColumns[i] = column++;
+		}
+		columns = column;
+
+		//building the trie
+		List<Map<Integer, Integer>> children = new ArrayList<>();
+		List<Integer> stateMatches = new ArrayList<>();
+		children.add(new HashMap<Integer, Integer>());
+		stateMatches.add(-1);
+		for(int promptIndex=0; promptIndex<this.prompts.size(); promptIndex++){
+			Prompt prompt = this.prompts.get(promptIndex);
+			if(!isLiteral(prompt)){
+				continue;
+			}
+			int current = 0;
+			for(char c : prompt.getPrompt().toCharArray()){
+				int charColumn = getColumn(c);
+				Integer next = children.get(current).get(charColumn);
+				if(next == null){
+					next = children.size();
+					children.add(new HashMap<Integer, Integer>());
+					stateMatches.add(-1);
+					children.get(current).put(charColumn, next);
+				}
+				current = next;
+			}
+			if(stateMatches.get(current) == -1){
+				stateMatches.set(current, promptIndex);
+			}
+		}
+
+		//turning the trie into a full transitions table using the failure links (breadth first)
+		int states = children.size();
+		transitions = new int[states * columns];
+		matches = new int[states];
+		int[] failure = new int[states];
+		for(int i=0; i<states; i++){
+			matches[i] = stateMatches.get(i);
+		}
+		int[] queue = new int[states];
+		int head = 0;
+		int tail = 0;
+		for(int c=1; c<columns; c++){
+			Integer next = children.get(0).get(c);
+			if(next != null){
+				transitions[c] = next;
+				failure[next] = 0;
+				queue[tail++] = next;
+			}
+		}
+		while(head < tail){
+			int current = queue[head++];
+			int fallback = failure[current];
+			//a prompt that ends in the failure state also ends in this state
+			if(matches[fallback] != -1 && (matches[current] == -1 || matches[fallback] < matches[current])){
+				matches[current] = matches[fallback];
+			}
+			for(int c=1; c<columns; c++){
+				Integer next = children.get(current).get(c);
+				if(next != null){
+					failure[next] = transitions[fallback * columns + c];
+					transitions[current * columns + c] = next;
+					queue[tail++] = next;
+				}else{
+					transitions[current * columns + c] = transitions[fallback * columns + c];
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param prompt - the prompt to check
+	 * @return true if the prompt is handled by this matcher
+	 */
+	public static boolean isLiteral(Prompt prompt){
+		return !prompt.isRegularExpression() && prompt.getPrompt() != null && prompt.getPrompt().length() > 0;
+	}
+
+	private int getColumn(char c){
+		if(c < asciiColumns.length){
+			return asciiColumns[c];
+		}
+		int index = Arrays.binarySearch(otherChars, c);
+		return index < 0 ? 0 : otherColumns[index];
+	}
+
+	/**
+	 * This function advances the matcher with the next char of the output
+	 * @param c - the next char of the output
+	 * @return the index (in the prompts list) of the prompt that ends with this char, or -1 if no prompt was found
+	 */
+	public int next(char c){
+		state = transitions[state * columns + getColumn(c)];
+		return matches[state];
+	}
+
+	/**
+	 * This function advances the matcher with the next char of the output
+	 * @param c - the next char of the output
+	 * @return the prompt that ends with this char, or null if no prompt was found
+	 */
+	public Prompt nextPrompt(char c){
+		int index = next(c);
+		return index < 0 ? null : prompts.get(index);
+	}
+
+	/**
+	 * Forget the chars that were matched so far (used when a new line starts)
+	 */
+	public void reset(){
+		state = 0;
+	}
+
+	/**
+	 * @return the prompts list this matcher was compiled from
+	 */
+	public List<Prompt> getPrompts(){
+		return prompts;
+	}
+}
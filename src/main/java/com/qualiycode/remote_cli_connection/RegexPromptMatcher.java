@@ -0,0 +1,184 @@
+package com.qualiycode.remote_cli_connection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class finds the regular expression prompts in the terminal output while it is read
+ *
+ * All the regular expression prompts are merged into one compiled alternation, each prompt in its own group.
+ * The line is searched only when new chars were added to it, and only the tail of the line is searched:
+ * the new chars plus a window of already searched chars before them (so prompts that started in the previous chars are found too).
+ *
+ * Note:
+ * Literal prompts are ignored by this class
+ * Because the prompts are merged, a prompt can not use numbered back references (use named groups instead)
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public class RegexPromptMatcher {
+
+	/**
+	 * The default number of already searched chars we search again together with the new chars
+	 */
+	public static final int DEFAULT_WINDOW = 1024;
+
+	/**
+	 * Holds the prompts list this matcher was compiled from
+	 */
+	private final List<Prompt> prompts;
+
+	/**
+	 * Holds for each group of the merged pattern the index (in the prompts list) of its prompt, or -1 if the group belongs to the prompt itself
+	 */
+	private final int[] groupPrompts;
+
+	/**
+	 * The first group number of each alternative
+	 */
+	private final int[] alternativeGroups;
+
+	/**
+	 * The matcher of the merged pattern (null if there are no regular expression prompts), reused for all searches
+	 */
+	private final Matcher matcher;
+
+	/**
+	 * The number of already searched chars we search again together with the new chars (0 means search the whole line)
+	 */
+	private final int window;
+
+	/**
+	 * The line length when the line was last searched
+	 */
+	private int searchedLength = 0;
+
+	/**
+	 * The end (in the line) of the last prompt found
+	 */
+	private int matchEnd = -1;
+
+	/**
+	 * @param prompts - the prompts to look for
+	 * @param window - the number of already searched chars to search again together with the new chars (0 means search the whole line)
+	 */
+	public RegexPromptMatcher(List<Prompt> prompts, int window) throws Exception{
+		this.prompts = new ArrayList<>(prompts);
+		this.window = window;
+
+		StringBuilder merged = new StringBuilder();
+		List<Integer> groups = new ArrayList<>();
+		List<Integer> alternatives = new ArrayList<>();
+		groups.add(-1); //group 0 is the whole match
+		for(int i=0; i<this.prompts.size(); i++){
+			Prompt prompt = this.prompts.get(i);
+			if(!prompt.isRegularExpression()){
+				continue;
+			}
+			if(merged.length() > 0){
+				merged.append('|');
+			}
+			merged.append("(").append(prompt.isRegexCaseInsensitive() ? "(?si:" : "(?s:").append(prompt.getPrompt()).append("))");
+			alternatives.add(groups.size());
+			groups.add(i);
+			//the groups of the prompt itself come after its alternative group
+			int promptGroups = prompt.getPattern().matcher("").groupCount();
+			for(int g=0; g<promptGroups; g++){
+				groups.add(-1);
+			}
+		}
+		groupPrompts = new int[groups.size()];
+		for(int i=0; i<groups.size(); i++){
+			groupPrompts[i] = groups.get(i);
+		}
+		alternativeGroups = new int[alternatives.size()];
+		for(int i=0; i<alternatives.size(); i++){
+			alternativeGroups[i] = alternatives.get(i);
+		}
+
+		if(alternatives.isEmpty()){
+			matcher = null;
+		}else{
+			matcher = Pattern.compile(merged.toString()).matcher("");
+			//the search region is only the tail of the line, but prompts may look behind it
+			matcher.useTransparentBounds(true);
+			matcher.useAnchoringBounds(false);
+		}
+	}
+
+	/**
+	 * @return true if there are regular expression prompts to look for
+	 */
+	public boolean hasPrompts(){
+		return matcher != null;
+	}
+
+	/**
+	 * This function searches the chars added to the line since the last search
+	 * @param line - the current line
+	 * @return the index (in the prompts list) of the prompt found, or -1 if no prompt was found
+	 */
+	public int find(StringBuilder line){
+		int length = line.length();
+		if(matcher == null || length <= searchedLength){
+			searchedLength = length;
+			return -1;
+		}
+		int from = window > 0 ? Math.max(0, searchedLength - window) : 0;
+		int searchedUpTo = searchedLength;
+		searchedLength = length;
+
+		matcher.reset(line);
+		matcher.region(from, length);
+		while(matcher.find()){
+			//a prompt that ends in the chars we already searched was already reported
+			if(matcher.end() > searchedUpTo){
+				matchEnd = matcher.end();
+				for(int group : alternativeGroups){
+					if(matcher.start(group) != -1){
+						return groupPrompts[group];
+					}
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * This function searches the chars added to the line since the last search
+	 * @param line - the current line
+	 * @return the prompt found, or null if no prompt was found
+	 */
+	public Prompt findPrompt(StringBuilder line){
+		int index = find(line);
+		return index < 0 ? null : prompts.get(index);
+	}
+
+	/**
+	 * @return the end (in the line) of the last prompt found
+	 */
+	public int getMatchEnd(){
+		return matchEnd;
+	}
+
+	/**
+	 * Forget the line searched so far (used when a new line starts)
+	 */
+	public void reset(){
+		searchedLength = 0;
+		matchEnd = -1;
+		if(matcher != null){
+			matcher.reset("");
+		}
+	}
+
+	/**
+	 * @return the prompts list this matcher was compiled from
+	 */
+	public List<Prompt> getPrompts(){
+		return prompts;
+	}
+}
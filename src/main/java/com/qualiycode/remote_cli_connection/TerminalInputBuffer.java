@@ -0,0 +1,367 @@
+package com.qualiycode.remote_cli_connection;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class holds the bytes arriving from the remote connection until they are read by the connection
+ *
+ * The transport (for example the JSCH session thread) writes into the sink stream, the connection reads from the source stream.
+ * Readers waiting for data are signaled when data arrives, so waiting for the terminal does not consume CPU.
+ *
+ * Note:
+ * The buffer grows when needed up to its max capacity, once it is full the writing side is blocked until the reader makes room,
+ * so a slow reader stops the transport from reading more data (for SSH the flow control window is not refilled) and the memory stays bounded
+ * Waiting is done with a lock (and not a monitor), so virtual threads waiting for data do not pin their carrier thread
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public class TerminalInputBuffer {
+
+	/**
+	 * The initial buffer size (in bytes)
+	 */
+	protected static final int DEFAULT_BUFFER_SIZE = 32 * 1024;
+
+	/**
+	 * The default max buffer size (in bytes), the size of the JSCH channel window
+	 */
+	protected static final int DEFAULT_MAX_CAPACITY = 1024 * 1024;
+
+	/**
+	 * Holds the buffered bytes (used as a circular buffer)
+	 */
+	private byte[] buffer;
+
+	/**
+	 * The max buffer size (in bytes), the writing side waits while the buffer is full
+	 */
+	private final int maxCapacity;
+
+	/**
+	 * The position of the next byte to read
+	 */
+	private int readPosition = 0;
+
+	/**
+	 * The number of bytes available for reading
+	 */
+	private int count = 0;
+
+	/**
+	 * The total number of bytes read from the buffer
+	 */
+	private long bytesRead = 0;
+	
+	/**
+	 * Set to true once the writing side has closed the sink (no more data will arrive)
+	 */
+	private boolean eof = false;
+
+	/**
+	 * Set to true once the reading side has closed the source
+	 */
+	private boolean closed = false;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition dataAvailable = lock.newCondition();
+	private final Condition spaceAvailable = lock.newCondition();
+
+	/**
+	 * Holds the listener to call when data arrives or the stream ends (optional)
+	 */
+	private volatile DataListener dataListener = null;
+
+	private final InputStream source = new SourceStream();
+	private final OutputStream sink = new SinkStream();
+
+	public TerminalInputBuffer(){
+		this(DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param initialSize - the initial buffer size (in bytes)
+	 */
+	public TerminalInputBuffer(int initialSize){
+		this(initialSize, Math.max(initialSize, DEFAULT_MAX_CAPACITY));
+	}
+
+	/**
+	 * @param initialSize - the initial buffer size (in bytes)
+	 * @param maxCapacity - the max buffer size (in bytes), the writing side is blocked while the buffer is full
+	 */
+	public TerminalInputBuffer(int initialSize, int maxCapacity){
+		this.maxCapacity = Math.max(maxCapacity, 16);
+		buffer = new byte[Math.min(Math.max(initialSize, 16), this.maxCapacity)];
+	}
+
+	/**
+	 * @return the max buffer size (in bytes)
+	 */
+	public int getMaxCapacity(){
+		return maxCapacity;
+	}
+
+	/**
+	 * @return the stream the connection reads the arrived data from
+	 */
+	public InputStream getInputStream(){
+		return source;
+	}
+
+	/**
+	 * @return the stream the transport writes the arriving data to
+	 */
+	public OutputStream getOutputStream(){
+		return sink;
+	}
+
+	/**
+	 * @param dataListener - the listener to call when data arrives or the stream ends (called by the writing thread, must not block)
+	 */
+	public void setDataListener(DataListener dataListener){
+		this.dataListener = dataListener;
+	}
+
+	/**
+	 * @return the number of bytes that can be read without blocking
+	 */
+	public int available(){
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the total number of bytes read from the buffer
+	 */
+	public long getBytesRead(){
+		lock.lock();
+		try {
+			return bytesRead;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return true if no more data can be read (the writing side has closed and all the data was read, or the reading side has closed)
+	 */
+	public boolean isEndOfStream(){
+		lock.lock();
+		try {
+			return (eof || closed) && count == 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * This function waits until data is available for reading, the stream ended or the timeout expired
+	 * @param timeoutMillis - the max time (in milliseconds) to wait
+	 * @return true if data is available for reading
+	 * @throws InterruptedException
+	 */
+	public boolean awaitData(long timeoutMillis) throws InterruptedException{
+		long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		lock.lock();
+		try {
+			while(count == 0 && !eof && !closed && remaining > 0){
+				remaining = dataAvailable.awaitNanos(remaining);
+			}
+			return count > 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void write(byte[] data, int offset, int length) throws IOException{
+		lock.lock();
+		try {
+			while(length > 0){
+				while(count == maxCapacity && !closed && !eof){
+					//the buffer is full, we wait for the reader to make room
+					spaceAvailable.await();
+				}
+				if(closed){
+					//nobody is going to read the data anymore
+					return;
+				}
+				if(eof){
+					throw new IOException("Terminal input buffer is closed");
+				}
+				int chunk = Math.min(length, maxCapacity - count);
+				ensureCapacity(count + chunk);
+				int writePosition = (readPosition + count) % buffer.length;
+				int firstPart = Math.min(chunk, buffer.length - writePosition);
+				System.arraycopy(data, offset, buffer, writePosition, firstPart);
+				System.arraycopy(data, offset + firstPart, buffer, 0, chunk - firstPart);
+				count += chunk;
+				offset += chunk;
+				length -= chunk;
+				dataAvailable.signalAll();
+				if(length > 0){
+					//the reader may be waiting for the listener signal rather than for the lock condition
+					lock.unlock();
+					try {
+						notifyListener();
+					} finally {
+						lock.lock();
+					}
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for room in the terminal input buffer");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void ensureCapacity(int capacity){
+		if(capacity <= buffer.length){
+			return;
+		}
+		byte[] newBuffer = new byte[Math.min(Math.max(capacity, buffer.length * 2), maxCapacity)];
+		int firstPart = Math.min(count, buffer.length - readPosition);
+		System.arraycopy(buffer, readPosition, newBuffer, 0, firstPart);
+		System.arraycopy(buffer, 0, newBuffer, firstPart, count - firstPart);
+		buffer = newBuffer;
+		readPosition = 0;
+	}
+
+	private int read(byte[] data, int offset, int length) throws IOException{
+		if(length == 0){
+			return 0;
+		}
+		lock.lock();
+		try {
+			while(count == 0 && !eof && !closed){
+				dataAvailable.await();
+			}
+			if(count == 0){
+				return -1;
+			}
+			int toRead = Math.min(length, count);
+			int firstPart = Math.min(toRead, buffer.length - readPosition);
+			System.arraycopy(buffer, readPosition, data, offset, firstPart);
+			System.arraycopy(buffer, 0, data, offset + firstPart, toRead - firstPart);
+			readPosition = (readPosition + toRead) % buffer.length;
+			count -= toRead;
+			bytesRead += toRead;
+			spaceAvailable.signalAll();
+			return toRead;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for terminal data");
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void closeSink(){
+		lock.lock();
+		try {
+			eof = true;
+			dataAvailable.signalAll();
+			spaceAvailable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void closeSource(){
+		lock.lock();
+		try {
+			closed = true;
+			count = 0;
+			dataAvailable.signalAll();
+			spaceAvailable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void notifyListener(){
+		DataListener listener = dataListener;
+		if(listener != null){
+			listener.dataArrived(this);
+		}
+	}
+
+	/**
+	 * Listener for data arriving to the buffer
+	 */
+	public interface DataListener{
+
+		/**
+		 * Called when data arrives to the buffer or when the writing side closes it
+		 * @param buffer - the buffer the data arrived to
+		 */
+		void dataArrived(TerminalInputBuffer buffer);
+	}
+
+	/**
+	 * The reading side of the buffer
+	 */
+	private class SourceStream extends InputStream{
+
+		//the buffer has a single reader, so a single byte read can reuse the same array
+		private final byte[] single = new byte[1];
+
+		@Override
+		public int read() throws IOException {
+			return TerminalInputBuffer.this.read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return TerminalInputBuffer.this.read(b, off, len);
+		}
+
+		@Override
+		public int available() throws IOException {
+			return TerminalInputBuffer.this.available();
+		}
+
+		@Override
+		public void close() throws IOException {
+			closeSource();
+		}
+	}
+
+	/**
+	 * The writing side of the buffer
+	 */
+	private class SinkStream extends OutputStream{
+
+		//the buffer has a single writer, so a single byte write can reuse the same array
+		private final byte[] single = new byte[1];
+
+		@Override
+		public void write(int b) throws IOException {
+			single[0] = (byte)b;
+			write(single, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			TerminalInputBuffer.this.write(b, off, len);
+			notifyListener();
+		}
+
+		@Override
+		public void close() throws IOException {
+			closeSink();
+			notifyListener();
+		}
+	}
+}
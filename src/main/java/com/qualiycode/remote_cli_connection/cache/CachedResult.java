@@ -0,0 +1,70 @@
+package com.qualiycode.remote_cli_connection.cache;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+
+/**
+ * This class holds the result of a command kept in the result cache (see CommandResultCache)
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public class CachedResult {
+
+	private final String output;
+	private final String errorOutput;
+	private final int exitStatus;
+	private final long expiresAtNanos;
+
+	/**
+	 * @param output - the command output
+	 * @param errorOutput - the command error output (null if the connection does not separate it from the output)
+	 * @param exitStatus - the command exit status (-1 if the connection does not know it)
+	 * @param expiresAtNanos - the time (System.nanoTime) the result expires at
+	 */
+	public CachedResult(String output, String errorOutput, int exitStatus, long expiresAtNanos){
+		this.output = output;
+		this.errorOutput = errorOutput;
+		this.exitStatus = exitStatus;
+		this.expiresAtNanos = expiresAtNanos;
+	}
+
+	/**
+	 * This method sets the cached result as the result of a command
+	 * @param command - the command to set the result to
+	 */
+	public void applyTo(CliCommand command){
+		command.setCommandOutput(output);
+		command.setErrorOutput(errorOutput);
+		command.setExitStatus(exitStatus);
+		command.setOutputComplete(true);
+	}
+
+	/**
+	 * @param nowNanos - the current time (System.nanoTime)
+	 * @return true if the result has expired
+	 */
+	public boolean isExpired(long nowNanos){
+		return nowNanos - expiresAtNanos >= 0;
+	}
+
+	/**
+	 * @return the command output
+	 */
+	public String getOutput() {
+		return output;
+	}
+
+	/**
+	 * @return the command error output (null if the connection does not separate it from the output)
+	 */
+	public String getErrorOutput() {
+		return errorOutput;
+	}
+
+	/**
+	 * @return the command exit status (-1 if the connection does not know it)
+	 */
+	public int getExitStatus() {
+		return exitStatus;
+	}
+}
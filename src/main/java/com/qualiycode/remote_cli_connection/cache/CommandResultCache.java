@@ -0,0 +1,282 @@
+package com.qualiycode.remote_cli_connection.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.CliConnection;
+
+/**
+ * This class keeps the results of read only commands (for example "uname -a" or "df -h") per host,
+ * so running the same command again on the same host within the command TTL does not go to the host
+ *
+ * One cache can be shared by many connections (set it on each connection using setResultCache),
+ * only commands with a cache TTL are cached (see CliCommand.setCacheTtl).
+ * Each host keeps up to maxEntriesPerHost results, when the host is full the least recently used result is evicted.
+ *
+ * Note:
+ * Only complete and successful results are cached: the whole output was read (see CliCommand.isOutputComplete) and the exit status is 0,
+ * or unknown on connections that do not report it (outputs of commands that timed out or failed are not cached, even when the command ignores errors)
+ * The results are kept per user, host and shell type (see CliConnection.getResultCacheKey), so users with different permissions do not share results
+ * Commands with an output listener or an output parser, commands that do not retain their output and outputs that were moved to a file are not cached
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public class CommandResultCache {
+
+	/**
+	 * The max number of results kept per host
+	 */
+	protected int maxEntriesPerHost = 100;
+
+	private final ConcurrentHashMap<String, HostCache> hosts = new ConcurrentHashMap<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * This function returns the host key of a connection, connections with the same key share their cached results
+	 * @param connection - the connection
+	 * @return the host key (see CliConnection.getResultCacheKey, for example user@ip:port)
+	 */
+	protected String getHostKey(CliConnection connection){
+		return connection.getResultCacheKey();
+	}
+
+	/**
+	 * @param command - the command
+	 * @return true if the command can be answered from the cache and its result can be cached
+	 */
+	protected boolean isCacheable(CliCommand command){
+		return command.getCacheTtl() > 0 && command.getOutputListener() == null && command.getOutputParser() == null && command.isRetainOutput();
+	}
+
+	/**
+	 * This function looks for a result of the command that has not expired
+	 * @param connection - the connection the command runs on
+	 * @param command - the command
+	 * @return the cached result, or null if there is no such result (or the command is not cacheable)
+	 */
+	public CachedResult get(CliConnection connection, CliCommand command){
+		if(!isCacheable(command)){
+			return null;
+		}
+		HostCache host = hosts.get(getHostKey(connection));
+		CachedResult result = host == null ? null : host.get(command.getCommand(), System.nanoTime());
+		if(result == null){
+			misses.increment();
+			if(host != null){
+				host.misses.increment();
+			}
+		}else{
+			hits.increment();
+			host.hits.increment();
+		}
+		return result;
+	}
+
+	/**
+	 * This method keeps the result of a command that just ran (does nothing if the command or its result can not be cached)
+	 * @param connection - the connection the command ran on
+	 * @param command - the command that ran
+	 */
+	public void put(CliConnection connection, CliCommand command){
+		if(!isCacheable(command) || !command.isOutputComplete() || command.isOutputSpilled() || command.getCommandOutput() == null
+				|| (command.getExitStatus() != 0 && command.getExitStatus() != -1)){
+			return;
+		}
+		CachedResult result = new CachedResult(command.getCommandOutput(), command.getErrorOutput(), command.getExitStatus(),
+				System.nanoTime() + command.getCacheTtl() * 1000000L);
+		String key = getHostKey(connection);
+		HostCache host = hosts.get(key);
+		if(host == null){
+			host = hosts.computeIfAbsent(key, k -> new HostCache());
+		}
+		host.put(command.getCommand(), result);
+	}
+
+	/**
+	 * Forget all the cached results of a host
+	 * @param host - the host key (see getHostKey)
+	 */
+	public void invalidate(String host){
+		HostCache cache = hosts.get(host);
+		if(cache != null){
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Forget the cached result of a command on a host
+	 * @param host - the host key (see getHostKey)
+	 * @param command - the command string
+	 */
+	public void invalidate(String host, String command){
+		HostCache cache = hosts.get(host);
+		if(cache != null){
+			cache.remove(command);
+		}
+	}
+
+	/**
+	 * Forget all the cached results of the host of a connection
+	 * @param connection - the connection
+	 */
+	public void invalidate(CliConnection connection){
+		invalidate(getHostKey(connection));
+	}
+
+	/**
+	 * Forget all the cached results (the hit and miss counts are kept)
+	 */
+	public void invalidateAll(){
+		hosts.clear();
+	}
+
+	/**
+	 * @return the number of commands answered from the cache
+	 */
+	public long getHitCount(){
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of cacheable commands that were not found in the cache
+	 */
+	public long getMissCount(){
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of results removed because the host cache was full or the result expired
+	 */
+	public long getEvictionCount(){
+		return evictions.sum();
+	}
+
+	/**
+	 * @param host - the host key (see getHostKey)
+	 * @return the number of commands of the host answered from the cache
+	 */
+	public long getHitCount(String host){
+		HostCache cache = hosts.get(host);
+		return cache == null ? 0 : cache.hits.sum();
+	}
+
+	/**
+	 * @param host - the host key (see getHostKey)
+	 * @return the number of cacheable commands of the host that were not found in the cache
+	 * 		   (misses before the first result of the host was cached are counted only in getMissCount())
+	 */
+	public long getMissCount(String host){
+		HostCache cache = hosts.get(host);
+		return cache == null ? 0 : cache.misses.sum();
+	}
+
+	/**
+	 * @return the number of results currently cached (including expired results that were not removed yet)
+	 */
+	public int size(){
+		int size = 0;
+		for(HostCache cache : hosts.values()){
+			size += cache.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return the max number of results kept per host
+	 */
+	public int getMaxEntriesPerHost() {
+		return maxEntriesPerHost;
+	}
+
+	/**
+	 * @param maxEntriesPerHost - the max number of results kept per host
+	 */
+	public void setMaxEntriesPerHost(int maxEntriesPerHost) {
+		this.maxEntriesPerHost = maxEntriesPerHost;
+	}
+
+	/**
+	 * @return the cache counters and the number of results of each host, one host per line
+	 */
+	@Override
+	public String toString() {
+		StringBuilder report = new StringBuilder();
+		report.append("hits=").append(getHitCount()).append(", misses=").append(getMissCount())
+			.append(", evictions=").append(getEvictionCount()).append('\n');
+		List<String> keys = new ArrayList<>(hosts.keySet());
+		Collections.sort(keys);
+		for(String key : keys){
+			HostCache cache = hosts.get(key);
+			if(cache != null){
+				report.append(key).append(": results=").append(cache.size()).append(", hits=").append(cache.hits.sum())
+					.append(", misses=").append(cache.misses.sum()).append('\n');
+			}
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Holds the results of a single host, ordered from the least recently used
+	 */
+	private class HostCache{
+
+		private final LinkedHashMap<String, CachedResult> results = new LinkedHashMap<>(16, 0.75f, true);
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+
+		synchronized CachedResult get(String command, long nowNanos){
+			CachedResult result = results.get(command);
+			if(result != null && result.isExpired(nowNanos)){
+				results.remove(command);
+				evictions.increment();
+				return null;
+			}
+			return result;
+		}
+
+		synchronized void put(String command, CachedResult result){
+			results.put(command, result);
+			if(results.size() <= maxEntriesPerHost){
+				return;
+			}
+			//expired results go first, then the least recently used
+			long now = System.nanoTime();
+			Iterator<Map.Entry<String, CachedResult>> entries = results.entrySet().iterator();
+			while(entries.hasNext()){
+				if(entries.next().getValue().isExpired(now)){
+					entries.remove();
+					evictions.increment();
+				}
+			}
+			entries = results.entrySet().iterator();
+			while(results.size() > maxEntriesPerHost && entries.hasNext()){
+				entries.next();
+				entries.remove();
+				evictions.increment();
+			}
+		}
+
+		synchronized void remove(String command){
+			results.remove(command);
+		}
+
+		synchronized void clear(){
+			results.clear();
+		}
+
+		synchronized int size(){
+			return results.size();
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package com.qualiycode.remote_cli_connection.fleet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.qualiycode.remote_cli_connection.CliConnection;
+
+/**
+ * This class holds the state of a bulk connect that runs in the background (see BulkConnector)
+ * 
+ * The application can wait until a fraction of the hosts is connected (awaitReady) and start working with them,
+ * while the rest of the hosts keep connecting in the background.
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class BulkConnect {
+
+	private final int total;
+	private final double readyFraction;
+	private final long startTime = System.currentTimeMillis();
+	
+	private final Map<String, CliConnection> connections = new LinkedHashMap<>();
+	private final List<String> failedHosts = new ArrayList<>();
+	private long readyTime = -1;
+	private long doneTime = -1;
+	private volatile boolean cancelled = false;
+	
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition progress = lock.newCondition();
+	
+	/**
+	 * @param total - the number of hosts to connect
+	 * @param readyFraction - the fraction (between 0 and 1) of the hosts that must be connected for the bulk to be ready
+	 */
+	public BulkConnect(int total, double readyFraction){
+		this.total = total;
+		this.readyFraction = readyFraction;
+		if(total == 0){
+			readyTime = doneTime = 0;
+		}
+	}
+	
+	/**
+	 * Reports a host that finished connecting
+	 * @param host - the host
+	 * @param connection - the connected connection, or null if the host failed to connect
+	 */
+	void hostFinished(String host, CliConnection connection){
+		lock.lock();
+		try {
+			long elapsed = System.currentTimeMillis() - startTime;
+			if(connection != null){
+				connections.put(host, connection);
+				if(readyTime < 0 && isFractionConnected(readyFraction)){
+					readyTime = elapsed;
+				}
+			}else{
+				failedHosts.add(host);
+			}
+			if(connections.size() + failedHosts.size() == total){
+				doneTime = elapsed;
+			}
+			progress.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	private boolean isFractionConnected(double fraction){
+		return connections.size() >= Math.ceil(Math.min(1, Math.max(0, fraction)) * total);
+	}
+	
+	/**
+	 * This method waits until the ready fraction of the hosts is connected
+	 * @param timeoutMillis - the max time (in milliseconds) to wait
+	 * @return true if the ready fraction of the hosts is connected, false if the timeout expired or too many hosts failed
+	 * @throws InterruptedException
+	 */
+	public boolean awaitReady(long timeoutMillis) throws InterruptedException{
+		return awaitReady(readyFraction, timeoutMillis);
+	}
+	
+	/**
+	 * This method waits until a fraction of the hosts is connected
+	 * @param fraction - the fraction (between 0 and 1) of the hosts to wait for
+	 * @param timeoutMillis - the max time (in milliseconds) to wait
+	 * @return true if the fraction of the hosts is connected, false if the timeout expired or too many hosts failed
+	 * @throws InterruptedException
+	 */
+	public boolean awaitReady(double fraction, long timeoutMillis) throws InterruptedException{
+		long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		lock.lock();
+		try {
+			while(!isFractionConnected(fraction) && doneTime < 0 && !cancelled && remaining > 0){
+				remaining = progress.awaitNanos(remaining);
+			}
+			return isFractionConnected(fraction);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * This method waits until all the hosts finished connecting (successfully or not)
+	 * @param timeoutMillis - the max time (in milliseconds) to wait
+	 * @return true if all the hosts finished connecting
+	 * @throws InterruptedException
+	 */
+	public boolean awaitDone(long timeoutMillis) throws InterruptedException{
+		long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		lock.lock();
+		try {
+			while(doneTime < 0 && !cancelled && remaining > 0){
+				remaining = progress.awaitNanos(remaining);
+			}
+			return doneTime >= 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Stops connecting the hosts that did not start connecting yet (hosts that are connecting now are not interrupted)
+	 */
+	public void cancel(){
+		lock.lock();
+		try {
+			cancelled = true;
+			progress.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return true if the bulk connect was cancelled
+	 */
+	public boolean isCancelled(){
+		return cancelled;
+	}
+	
+	/**
+	 * @return the connected connections by host (a copy)
+	 */
+	public Map<String, CliConnection> getConnections(){
+		lock.lock();
+		try {
+			return new LinkedHashMap<>(connections);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return the hosts that failed to connect (a copy)
+	 */
+	public List<String> getFailedHosts(){
+		lock.lock();
+		try {
+			return new ArrayList<>(failedHosts);
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return the number of hosts to connect
+	 */
+	public int getTotal(){
+		return total;
+	}
+	
+	/**
+	 * @return the number of hosts connected so far
+	 */
+	public int getConnectedCount(){
+		lock.lock();
+		try {
+			return connections.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return the number of hosts that failed to connect so far
+	 */
+	public int getFailedCount(){
+		lock.lock();
+		try {
+			return failedHosts.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return the number of hosts that finished connecting (successfully or not)
+	 */
+	public int getDoneCount(){
+		lock.lock();
+		try {
+			return connections.size() + failedHosts.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return the time (in milliseconds) it took to connect the ready fraction of the hosts, or -1 if it was not connected yet
+	 */
+	public long getTimeToReadyMillis(){
+		lock.lock();
+		try {
+			return readyTime;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return the time (in milliseconds) it took for all the hosts to finish connecting, or -1 if they did not finish yet
+	 */
+	public long getTimeToDoneMillis(){
+		lock.lock();
+		try {
+			return doneTime;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * @return the time (in milliseconds) since the bulk connect started
+	 */
+	public long getElapsedMillis(){
+		return System.currentTimeMillis() - startTime;
+	}
+	
+	@Override
+	public String toString() {
+		lock.lock();
+		try {
+			return "connected=" + connections.size() + ", failed=" + failedHosts.size() + ", total=" + total 
+					+ ", timeToReady=" + readyTime + "ms, timeToDone=" + doneTime + "ms";
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.qualiycode.remote_cli_connection.fleet;
+
+import com.qualiycode.remote_cli_connection.CliConnection;
+
+/**
+ * Listener for the progress of a bulk connect (see BulkConnector)
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public interface BulkConnectListener {
+
+	/**
+	 * Called as soon as a host connected or failed to connect (called by the connecting threads, so it must be thread safe)
+	 * @param host - the host
+	 * @param connection - the connected connection, or null if the host failed to connect
+	 * @param durationMillis - the time (in milliseconds) the connect took
+	 * @param progress - the bulk connect the host belongs to (for reading the overall progress)
+	 */
+	void hostFinished(String host, CliConnection connection, long durationMillis, BulkConnect progress);
+}
@@ -0,0 +1,161 @@
+package com.qualiycode.remote_cli_connection.fleet;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.qualiycode.remote_cli_connection.CliConnection;
+import com.qualiycode.remote_cli_connection.CliExecutors;
+
+/**
+ * This class connects many hosts in parallel in the background (for example when the application starts)
+ * 
+ * - The number of hosts connecting at the same time is limited
+ * - Each host is reported to the listener as soon as it connected (or failed to connect) and the progress is logged
+ * - The application can wait until a fraction of the hosts is connected and start working while the rest keep connecting (see BulkConnect)
+ * 
+ * Extender classes create the connection to each host (see SshBulkConnector)
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public abstract class BulkConnector {
+
+	protected final static Logger log = LoggerFactory.getLogger(BulkConnector.class);
+	
+	/**
+	 * The max number of hosts connecting at the same time
+	 */
+	protected int maxConcurrency = 200;
+	
+	/**
+	 * The fraction (between 0 and 1) of the hosts that must be connected for the bulk to be ready
+	 */
+	protected double readyFraction = 0.9;
+	
+	/**
+	 * The progress is logged each time this percent of the hosts finished connecting
+	 */
+	protected int progressLogPercent = 10;
+	
+	/**
+	 * This method creates a (not connected) connection to a host
+	 * @param host - the host to connect to
+	 * @return the connection
+	 * @throws Exception
+	 */
+	protected abstract CliConnection createConnection(String host) throws Exception;
+	
+	/**
+	 * This method starts connecting the hosts in the background
+	 * @param hosts - the hosts to connect (a host that appears more than once is connected once)
+	 * @return the bulk connect (for waiting until the hosts are connected and getting the connections)
+	 */
+	public BulkConnect connect(List<String> hosts){
+		return connect(hosts, null);
+	}
+	
+	/**
+	 * This method starts connecting the hosts in the background
+	 * @param hosts - the hosts to connect (a host that appears more than once is connected once)
+	 * @param listener - called as soon as each host connected or failed to connect (can be null)
+	 * @return the bulk connect (for waiting until the hosts are connected and getting the connections)
+	 */
+	public BulkConnect connect(List<String> hosts, final BulkConnectListener listener){
+		final ConcurrentLinkedQueue<String> pending = new ConcurrentLinkedQueue<>(new LinkedHashSet<>(hosts));
+		final BulkConnect bulk = new BulkConnect(pending.size(), readyFraction);
+		log.info("Connecting " + pending.size() + " hosts, up to " + maxConcurrency + " at the same time");
+		
+		//each worker connects the pending hosts one after the other
+		ExecutorService executor = CliExecutors.newCommandExecutor("bulk-connect");
+		int workers = Math.min(maxConcurrency, pending.size());
+		for(int i=0; i<workers; i++){
+			executor.execute(() -> {
+				String host;
+				while(!bulk.isCancelled() && (host = pending.poll()) != null){
+					connectHost(host, bulk, listener);
+				}
+			});
+		}
+		executor.shutdown();
+		return bulk;
+	}
+	
+	private void connectHost(String host, BulkConnect bulk, BulkConnectListener listener){
+		long startTime = System.currentTimeMillis();
+		CliConnection connection = null;
+		try {
+			connection = createConnection(host);
+			if(!connection.connect()){
+				connection.disconnect();
+				connection = null;
+			}
+		} catch (Exception e) {
+			log.error("Unable to connect to: " + host, e);
+			if(connection != null){
+				connection.disconnect();
+			}
+			connection = null;
+		}
+		bulk.hostFinished(host, connection);
+		
+		int done = bulk.getDoneCount();
+		int step = Math.max(1, bulk.getTotal() * progressLogPercent / 100);
+		if(done % step == 0 || done == bulk.getTotal()){
+			log.info("Bulk connect progress: " + bulk + ", elapsed=" + bulk.getElapsedMillis() + "ms");
+		}
+		if(listener != null){
+			try {
+				listener.hostFinished(host, connection, System.currentTimeMillis() - startTime, bulk);
+			} catch (Exception e) {
+				log.error("Bulk connect listener failed", e);
+			}
+		}
+	}
+
+	/**
+	 * @return the max number of hosts connecting at the same time
+	 */
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	/**
+	 * @param maxConcurrency - the max number of hosts connecting at the same time
+	 */
+	public void setMaxConcurrency(int maxConcurrency) {
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	/**
+	 * @return the fraction (between 0 and 1) of the hosts that must be connected for the bulk to be ready
+	 */
+	public double getReadyFraction() {
+		return readyFraction;
+	}
+
+	/**
+	 * @param readyFraction - the fraction (between 0 and 1) of the hosts that must be connected for the bulk to be ready
+	 */
+	public void setReadyFraction(double readyFraction) {
+		this.readyFraction = readyFraction;
+	}
+
+	/**
+	 * @return the progress is logged each time this percent of the hosts finished connecting
+	 */
+	public int getProgressLogPercent() {
+		return progressLogPercent;
+	}
+
+	/**
+	 * @param progressLogPercent - the progress is logged each time this percent of the hosts finished connecting
+	 */
+	public void setProgressLogPercent(int progressLogPercent) {
+		this.progressLogPercent = progressLogPercent;
+	}
+}
@@ -0,0 +1,320 @@
+package com.qualiycode.remote_cli_connection.fleet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.CliConnection;
+import com.qualiycode.remote_cli_connection.CliExecutors;
+
+/**
+ * This class runs a CLI command on many hosts in parallel and collects the results
+ *
+ * - The number of hosts handled at the same time is limited globally and per subnet
+ * - Each host result is reported to the listener as soon as the host finishes
+ * - The run ends when all the hosts finished or when the deadline passed, hosts that did not finish by then are reported as stragglers
+ *
+ * Extender classes create the connection to each host (see SshFleetCommandExecutor)
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public abstract class FleetCommandExecutor {
+
+	protected final static Logger log = LoggerFactory.getLogger(FleetCommandExecutor.class);
+
+	/**
+	 * The max number of hosts handled at the same time
+	 */
+	protected int maxConcurrency = 100;
+
+	/**
+	 * The max number of hosts of the same subnet handled at the same time
+	 */
+	protected int maxConcurrencyPerSubnet = 20;
+
+	/**
+	 * The prefix length (in bits) used for grouping IPv4 hosts into subnets
+	 */
+	protected int subnetPrefixLength = 24;
+
+	/**
+	 * This method creates a (not connected) connection to a host
+	 * @param host - the host to connect to
+	 * @return the connection
+	 * @throws Exception
+	 */
+	protected abstract CliConnection createConnection(String host) throws Exception;
+
+	/**
+	 * This method runs the command on all the hosts
+	 * @param hosts - the hosts to run the command on (a host that appears more than once is run once)
+	 * @param command - the command to run (each host gets its own copy of the command), 
+	 * 				   the command must not have an output listener or an output parser since they would be shared by all the hosts
+	 * @param deadlineMillis - the max time (in milliseconds) for the whole run
+	 * @param listener - called as soon as each host finishes (can be null)
+	 * @return the results of all the hosts
+	 * @throws InterruptedException
+	 */
+	public FleetResult run(List<String> hosts, CliCommand command, long deadlineMillis, FleetResultListener listener) throws InterruptedException{
+		if(command.getOutputListener() != null || command.getOutputParser() != null){
+			throw new IllegalArgumentException("Unable to run command \"" + command.getCommand() + "\" on a fleet, an output listener or parser can not be shared by the hosts");
+		}
+		return new FleetRun(hosts, command, deadlineMillis, listener).run();
+	}
+
+	/**
+	 * This method runs the command on all the hosts
+	 * @param hosts - the hosts to run the command on (a host that appears more than once is run once)
+	 * @param command - the command to run (each host gets its own copy of the command, see the listener version)
+	 * @param deadlineMillis - the max time (in milliseconds) for the whole run
+	 * @return the results of all the hosts
+	 * @throws InterruptedException
+	 */
+	public FleetResult run(List<String> hosts, CliCommand command, long deadlineMillis) throws InterruptedException{
+		return run(hosts, command, deadlineMillis, null);
+	}
+
+	/**
+	 * This method returns the subnet of a host, hosts of the same subnet share the per subnet concurrency limit
+	 *
+	 * Note:
+	 * Only IPv4 addresses are grouped, any other host is a subnet of its own
+	 *
+	 * @param host - the host
+	 * @return the subnet of the host
+	 */
+	protected String getSubnet(String host){
+		String[] parts = host.split("\\.");
+		if(parts.length != 4){
+			return host;
+		}
+		long address = 0;
+		for(String part : parts){
+			int value;
+			try {
+				value = Integer.parseInt(part);
+			} catch (NumberFormatException e) {
+				return host;
+			}
+			if(value < 0 || value > 255){
+				return host;
+			}
+			address = (address << 8) | value;
+		}
+		long mask = subnetPrefixLength <= 0 ? 0 : (0xFFFFFFFFL << (32 - Math.min(subnetPrefixLength, 32))) & 0xFFFFFFFFL;
+		long subnet = address & mask;
+		return ((subnet >> 24) & 0xFF) + "." + ((subnet >> 16) & 0xFF) + "." + ((subnet >> 8) & 0xFF) + "." + (subnet & 0xFF) + "/" + subnetPrefixLength;
+	}
+
+	/**
+	 * Runs the command on a single host
+	 */
+	private FleetHostResult runOnHost(String host, CliCommand command, Map<String, CliConnection> connections){
+		long startTime = System.currentTimeMillis();
+		CliConnection connection = null;
+		try {
+			connection = createConnection(host);
+			synchronized (connections) {
+				connections.put(host, connection);
+			}
+			if(!connection.connect()){
+				throw new Exception("Unable to connect to: " + host);
+			}
+			connection.handleCliCommand(command);
+			return new FleetHostResult(host, FleetHostResult.Status.SUCCEEDED, command, null, true, System.currentTimeMillis() - startTime);
+		} catch (Exception e) {
+			return new FleetHostResult(host, FleetHostResult.Status.FAILED, command, e, true, System.currentTimeMillis() - startTime);
+		} finally {
+			synchronized (connections) {
+				connections.remove(host);
+			}
+			if(connection != null){
+				connection.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Holds the state of a single fleet run
+	 */
+	private class FleetRun{
+
+		private final CliCommand command;
+		private final long deadlineMillis;
+		private final FleetResultListener listener;
+
+		private final LinkedList<String> pending;
+		private final Map<String, Integer> runningPerSubnet = new HashMap<>();
+		private final Map<String, Boolean> running = new LinkedHashMap<>();
+		private final Map<String, CliConnection> connections = new HashMap<>();
+		private final FleetResult result = new FleetResult();
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Condition hostFinished = lock.newCondition();
+
+		FleetRun(List<String> hosts, CliCommand command, long deadlineMillis, FleetResultListener listener){
+			//the running hosts and their connections are kept by host, so each host is run once
+			this.pending = new LinkedList<>(new LinkedHashSet<>(hosts));
+			this.command = command;
+			this.deadlineMillis = deadlineMillis;
+			this.listener = listener;
+		}
+
+		FleetResult run() throws InterruptedException{
+			long startTime = System.currentTimeMillis();
+			long deadline = startTime + deadlineMillis;
+			ExecutorService executor = CliExecutors.newCommandExecutor("fleet");
+			List<String> stragglers = new ArrayList<>();
+			try {
+				lock.lock();
+				try {
+					while(!pending.isEmpty() || !running.isEmpty()){
+						startHosts(executor);
+						long remaining = TimeUnit.MILLISECONDS.toNanos(deadline - System.currentTimeMillis());
+						if(remaining <= 0){
+							break;
+						}
+						hostFinished.awaitNanos(remaining);
+					}
+					//whatever did not finish by now is a straggler, results that arrive later are ignored
+					for(String host : running.keySet()){
+						result.add(new FleetHostResult(host, FleetHostResult.Status.STRAGGLER, null, null, true, System.currentTimeMillis() - startTime));
+						stragglers.add(host);
+					}
+					for(String host : pending){
+						result.add(new FleetHostResult(host, FleetHostResult.Status.STRAGGLER, null, null, false, 0));
+					}
+					running.clear();
+					pending.clear();
+					result.setElapsedMillis(System.currentTimeMillis() - startTime);
+				} finally {
+					lock.unlock();
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+
+			//closing the stragglers connections releases the threads waiting for them
+			if(!stragglers.isEmpty()){
+				log.info(stragglers.size() + " hosts did not finish before the deadline, disconnecting them");
+				List<CliConnection> toClose = new ArrayList<>();
+				synchronized (connections) {
+					for(String host : stragglers){
+						CliConnection connection = connections.get(host);
+						if(connection != null){
+							toClose.add(connection);
+						}
+					}
+				}
+				for(CliConnection connection : toClose){
+					connection.disconnect();
+				}
+			}
+			log.info("Fleet run is over, " + result);
+			return result;
+		}
+
+		/**
+		 * Starts the pending hosts that have a free slot (must be called while holding the lock)
+		 */
+		private void startHosts(ExecutorService executor){
+			Iterator<String> hosts = pending.iterator();
+			while(hosts.hasNext() && running.size() < maxConcurrency){
+				final String host = hosts.next();
+				final String subnet = getSubnet(host);
+				Integer subnetCount = runningPerSubnet.get(subnet);
+				if(subnetCount != null && subnetCount >= maxConcurrencyPerSubnet){
+					continue;
+				}
+				hosts.remove();
+				runningPerSubnet.put(subnet, subnetCount == null ? 1 : subnetCount + 1);
+				running.put(host, Boolean.TRUE);
+				final CliCommand hostCommand = new CliCommand(command);
+				executor.execute(() -> finished(host, subnet, runOnHost(host, hostCommand, connections)));
+			}
+		}
+
+		private void finished(String host, String subnet, FleetHostResult hostResult){
+			lock.lock();
+			try {
+				if(running.remove(host) == null){
+					//the host was already reported as a straggler
+					return;
+				}
+				int subnetCount = runningPerSubnet.get(subnet) - 1;
+				if(subnetCount == 0){
+					runningPerSubnet.remove(subnet);
+				}else{
+					runningPerSubnet.put(subnet, subnetCount);
+				}
+				result.add(hostResult);
+				hostFinished.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			if(listener != null){
+				try {
+					listener.hostFinished(hostResult);
+				} catch (Exception e) {
+					log.error("Fleet result listener failed", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the max number of hosts handled at the same time
+	 */
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	/**
+	 * @param maxConcurrency - the max number of hosts handled at the same time
+	 */
+	public void setMaxConcurrency(int maxConcurrency) {
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	/**
+	 * @return the max number of hosts of the same subnet handled at the same time
+	 */
+	public int getMaxConcurrencyPerSubnet() {
+		return maxConcurrencyPerSubnet;
+	}
+
+	/**
+	 * @param maxConcurrencyPerSubnet - the max number of hosts of the same subnet handled at the same time
+	 */
+	public void setMaxConcurrencyPerSubnet(int maxConcurrencyPerSubnet) {
+		this.maxConcurrencyPerSubnet = maxConcurrencyPerSubnet;
+	}
+
+	/**
+	 * @return the prefix length (in bits) used for grouping IPv4 hosts into subnets
+	 */
+	public int getSubnetPrefixLength() {
+		return subnetPrefixLength;
+	}
+
+	/**
+	 * @param subnetPrefixLength - the prefix length (in bits) used for grouping IPv4 hosts into subnets
+	 */
+	public void setSubnetPrefixLength(int subnetPrefixLength) {
+		this.subnetPrefixLength = subnetPrefixLength;
+	}
+}
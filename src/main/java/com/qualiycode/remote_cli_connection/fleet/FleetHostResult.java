@@ -0,0 +1,104 @@
+package com.qualiycode.remote_cli_connection.fleet;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+
+/**
+ * This class holds the result of running a command on a single host of the fleet
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class FleetHostResult {
+
+	/**
+	 * The state of the host when the result was reported
+	 */
+	public enum Status{
+		/**
+		 * The command ran successfully on the host
+		 */
+		SUCCEEDED,
+		
+		/**
+		 * Unable to connect to the host or the command failed
+		 */
+		FAILED,
+		
+		/**
+		 * The host did not finish (or did not start) before the fleet deadline
+		 */
+		STRAGGLER
+	}
+	
+	private final String host;
+	private final Status status;
+	private final CliCommand command;
+	private final Exception error;
+	private final boolean started;
+	private final long durationMillis;
+	
+	/**
+	 * @param host - the host
+	 * @param status - the host status
+	 * @param command - the command that ran on the host (holds the output), null if the command did not start
+	 * @param error - the failure reason, null if the command succeeded
+	 * @param started - true if we started working on the host
+	 * @param durationMillis - the time (in milliseconds) from connecting to the host until the result
+	 */
+	public FleetHostResult(String host, Status status, CliCommand command, Exception error, boolean started, long durationMillis){
+		this.host = host;
+		this.status = status;
+		this.command = command;
+		this.error = error;
+		this.started = started;
+		this.durationMillis = durationMillis;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the command that ran on the host (holds the output), null if the command did not start
+	 */
+	public CliCommand getCommand() {
+		return command;
+	}
+
+	/**
+	 * @return the command output on the host, null if there is no output
+	 */
+	public String getOutput() {
+		return command == null ? null : command.getCommandOutput();
+	}
+
+	/**
+	 * @return the failure reason, null if the command succeeded
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	/**
+	 * @return true if we started working on the host (false for stragglers that never got a free slot)
+	 */
+	public boolean isStarted() {
+		return started;
+	}
+
+	/**
+	 * @return the time (in milliseconds) from connecting to the host until the result
+	 */
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+	
+	@Override
+	public String toString() {
+		return host + ": " + status + (error == null ? "" : " (" + error.getMessage() + ")");
+	}
+}
@@ -0,0 +1,70 @@
+package com.qualiycode.remote_cli_connection.fleet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds the results of running a command on a fleet of hosts
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class FleetResult {
+
+	private final List<FleetHostResult> succeeded = new ArrayList<>();
+	private final List<FleetHostResult> failed = new ArrayList<>();
+	private final List<FleetHostResult> stragglers = new ArrayList<>();
+	private long elapsedMillis;
+	
+	void add(FleetHostResult result){
+		switch (result.getStatus()) {
+		case SUCCEEDED:
+			succeeded.add(result);
+			break;
+		case FAILED:
+			failed.add(result);
+			break;
+		default:
+			stragglers.add(result);
+			break;
+		}
+	}
+	
+	void setElapsedMillis(long elapsedMillis){
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * @return the hosts the command ran on successfully
+	 */
+	public List<FleetHostResult> getSucceeded() {
+		return Collections.unmodifiableList(succeeded);
+	}
+
+	/**
+	 * @return the hosts we were unable to connect to or the command failed on
+	 */
+	public List<FleetHostResult> getFailed() {
+		return Collections.unmodifiableList(failed);
+	}
+
+	/**
+	 * @return the hosts that did not finish (or did not start) before the deadline
+	 */
+	public List<FleetHostResult> getStragglers() {
+		return Collections.unmodifiableList(stragglers);
+	}
+
+	/**
+	 * @return the time (in milliseconds) the fleet run took
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+	
+	@Override
+	public String toString() {
+		return "succeeded: " + succeeded.size() + ", failed: " + failed.size() + ", stragglers: " + stragglers.size() + ", elapsed: " + elapsedMillis + " ms";
+	}
+}
@@ -0,0 +1,18 @@
+package com.qualiycode.remote_cli_connection.fleet;
+
+/**
+ * Listener for the results of a fleet run, called as soon as each host finishes
+ * 
+ * Note:
+ * The listener is called from several threads at the same time, so it must be thread safe
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public interface FleetResultListener {
+
+	/**
+	 * @param result - the result of a single host
+	 */
+	void hostFinished(FleetHostResult result);
+}
@@ -0,0 +1,45 @@
+package com.qualiycode.remote_cli_connection.metrics;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.CliConnection;
+import com.qualiycode.remote_cli_connection.Prompt;
+
+/**
+ * Listener for the metrics of a CLI connection (connect and command latencies, amount of data read, prompts found etc.)
+ * 
+ * Note:
+ * The listener is called by the threads using the connection, so it should be fast and thread safe (see CliMetricsRegistry)
+ * Errors thrown by the listener are logged and ignored
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public interface CliMetricsListener {
+
+	/**
+	 * Called once connect() is over
+	 * @param connection - the connection
+	 * @param durationNanos - the time (in nanoseconds) connect() took, including all the tries
+	 * @param tries - the number of tries done
+	 * @param connected - true if the connection is connected
+	 */
+	default void connectFinished(CliConnection connection, long durationNanos, int tries, boolean connected){
+	}
+	
+	/**
+	 * Called once a command output was read (successfully or not)
+	 * @param connection - the connection
+	 * @param metrics - the command metrics
+	 */
+	default void commandFinished(CliConnection connection, CommandMetrics metrics){
+	}
+	
+	/**
+	 * Called when a prompt of the connection was found in a command output
+	 * @param connection - the connection
+	 * @param command - the command the output belongs to
+	 * @param prompt - the prompt found
+	 */
+	default void promptFound(CliConnection connection, CliCommand command, Prompt prompt){
+	}
+}
@@ -0,0 +1,94 @@
+package com.qualiycode.remote_cli_connection.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.CliConnection;
+import com.qualiycode.remote_cli_connection.Prompt;
+
+/**
+ * This class is the default metrics listener, it collects the metrics of all the connections it listens to per host
+ * 
+ * One registry can be shared by many connections (set it on each connection using setMetricsListener),
+ * recording is lock free so it adds very little to each connect and command.
+ * The metrics can be read at any time (scraped) using getHostMetrics() or as text using toString()
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class CliMetricsRegistry implements CliMetricsListener {
+
+	private final ConcurrentHashMap<String, HostMetrics> hosts = new ConcurrentHashMap<>();
+	
+	@Override
+	public void connectFinished(CliConnection connection, long durationNanos, int tries, boolean connected) {
+		getOrCreate(connection).connectFinished(durationNanos, tries, connected);
+	}
+	
+	@Override
+	public void commandFinished(CliConnection connection, CommandMetrics metrics) {
+		getOrCreate(connection).commandFinished(metrics);
+	}
+	
+	@Override
+	public void promptFound(CliConnection connection, CliCommand command, Prompt prompt) {
+		getOrCreate(connection).promptFound(prompt.getPrompt());
+	}
+	
+	/**
+	 * This function returns the host key of a connection, connections with the same key share their metrics
+	 * @param connection - the connection
+	 * @return the host key (ip:port)
+	 */
+	protected String getHostKey(CliConnection connection){
+		return connection.getIp() + ":" + connection.getPort();
+	}
+	
+	private HostMetrics getOrCreate(CliConnection connection){
+		String host = getHostKey(connection);
+		HostMetrics metrics = hosts.get(host);
+		if(metrics == null){
+			metrics = hosts.computeIfAbsent(host, HostMetrics::new);
+		}
+		return metrics;
+	}
+	
+	/**
+	 * @param host - the host key (ip:port)
+	 * @return the metrics of the host, or null if nothing was recorded for this host
+	 */
+	public HostMetrics getHostMetrics(String host){
+		return hosts.get(host);
+	}
+	
+	/**
+	 * @return the metrics of all the hosts (sorted by host)
+	 */
+	public List<HostMetrics> getHostMetrics(){
+		List<HostMetrics> metrics = new ArrayList<>(hosts.values());
+		Collections.sort(metrics, (first, second) -> first.getHost().compareTo(second.getHost()));
+		return metrics;
+	}
+	
+	/**
+	 * Forget all the metrics collected so far
+	 */
+	public void clear(){
+		hosts.clear();
+	}
+	
+	/**
+	 * @return the metrics of all the hosts, one host per line
+	 */
+	@Override
+	public String toString() {
+		StringBuilder report = new StringBuilder();
+		for(HostMetrics metrics : getHostMetrics()){
+			report.append(metrics).append('\n');
+		}
+		return report.toString();
+	}
+}
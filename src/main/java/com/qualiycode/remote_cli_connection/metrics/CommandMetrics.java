@@ -0,0 +1,104 @@
+package com.qualiycode.remote_cli_connection.metrics;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+
+/**
+ * This class holds the metrics of a single command
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class CommandMetrics {
+
+	private final CliCommand command;
+	private final long durationNanos;
+	private final long firstByteNanos;
+	private final long charsRead;
+	private final long bytesRead;
+	private final long junkChars;
+	private final boolean timedOut;
+	private final boolean failed;
+	
+	/**
+	 * @param command - the command
+	 * @param durationNanos - the time (in nanoseconds) from the start of the reading until the output was over 
+	 * @param firstByteNanos - the time (in nanoseconds) from the start of the reading until the first output arrived (-1 if no output arrived)
+	 * @param charsRead - the number of chars read
+	 * @param bytesRead - the number of bytes read (-1 if unknown)
+	 * @param junkChars - the number of chars found after the end of the output (kept for the next command, unless the connection discards them)
+	 * @param timedOut - true if the command timed out
+	 * @param failed - true if the command failed (including timeouts)
+	 */
+	public CommandMetrics(CliCommand command, long durationNanos, long firstByteNanos, long charsRead, long bytesRead, long junkChars, boolean timedOut, boolean failed){
+		this.command = command;
+		this.durationNanos = durationNanos;
+		this.firstByteNanos = firstByteNanos;
+		this.charsRead = charsRead;
+		this.bytesRead = bytesRead;
+		this.junkChars = junkChars;
+		this.timedOut = timedOut;
+		this.failed = failed;
+	}
+
+	/**
+	 * @return the command
+	 */
+	public CliCommand getCommand() {
+		return command;
+	}
+
+	/**
+	 * @return the time (in nanoseconds) from the start of the reading until the output was over (the time to prompt)
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	/**
+	 * @return the time (in nanoseconds) from the start of the reading until the first output arrived (-1 if no output arrived)
+	 */
+	public long getFirstByteNanos() {
+		return firstByteNanos;
+	}
+
+	/**
+	 * @return the number of chars read
+	 */
+	public long getCharsRead() {
+		return charsRead;
+	}
+
+	/**
+	 * @return the number of bytes read (-1 if unknown)
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return the number of chars found after the end of the output (kept for the next command, unless the connection discards them)
+	 */
+	public long getJunkChars() {
+		return junkChars;
+	}
+
+	/**
+	 * @return true if the command timed out
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	/**
+	 * @return true if the command failed (including timeouts)
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+	
+	@Override
+	public String toString() {
+		return "duration=" + durationNanos / 1000 + "us, firstByte=" + (firstByteNanos < 0 ? -1 : firstByteNanos / 1000) + "us, chars=" + charsRead 
+				+ ", bytes=" + bytesRead + ", junk=" + junkChars + ", timedOut=" + timedOut + ", failed=" + failed;
+	}
+}
@@ -0,0 +1,189 @@
+package com.qualiycode.remote_cli_connection.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class holds the metrics collected for a single host (see CliMetricsRegistry)
+ * 
+ * All the latencies are in nanoseconds
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class HostMetrics {
+
+	private final String host;
+	
+	private final LatencyHistogram connectLatency = new LatencyHistogram();
+	private final LongAdder connects = new LongAdder();
+	private final LongAdder connectRetries = new LongAdder();
+	private final LongAdder connectFailures = new LongAdder();
+	
+	private final LatencyHistogram firstByteLatency = new LatencyHistogram();
+	private final LatencyHistogram commandLatency = new LatencyHistogram();
+	private final LongAdder commands = new LongAdder();
+	private final LongAdder commandFailures = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder charsRead = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder junkChars = new LongAdder();
+	
+	private final ConcurrentHashMap<String, LongAdder> promptMatches = new ConcurrentHashMap<>();
+	
+	/**
+	 * @param host - the host the metrics belong to
+	 */
+	public HostMetrics(String host){
+		this.host = host;
+	}
+	
+	void connectFinished(long durationNanos, int tries, boolean connected){
+		connectLatency.record(durationNanos);
+		connects.increment();
+		connectRetries.add(Math.max(0, tries - 1));
+		if(!connected){
+			connectFailures.increment();
+		}
+	}
+	
+	void commandFinished(CommandMetrics metrics){
+		commands.increment();
+		commandLatency.record(metrics.getDurationNanos());
+		if(metrics.getFirstByteNanos() >= 0){
+			firstByteLatency.record(metrics.getFirstByteNanos());
+		}
+		if(metrics.isFailed()){
+			commandFailures.increment();
+		}
+		if(metrics.isTimedOut()){
+			timeouts.increment();
+		}
+		charsRead.add(metrics.getCharsRead());
+		if(metrics.getBytesRead() > 0){
+			bytesRead.add(metrics.getBytesRead());
+		}
+		junkChars.add(metrics.getJunkChars());
+	}
+	
+	void promptFound(String prompt){
+		LongAdder matches = promptMatches.get(prompt);
+		if(matches == null){
+			matches = promptMatches.computeIfAbsent(prompt, p -> new LongAdder());
+		}
+		matches.increment();
+	}
+
+	/**
+	 * @return the host the metrics belong to
+	 */
+	public String getHost() {
+		return host;
+	}
+
+	/**
+	 * @return the connect latencies (including all the tries of each connect)
+	 */
+	public LatencyHistogram getConnectLatency() {
+		return connectLatency;
+	}
+
+	/**
+	 * @return the number of connects
+	 */
+	public long getConnects() {
+		return connects.sum();
+	}
+
+	/**
+	 * @return the number of connect tries that were retries (not the first try of a connect)
+	 */
+	public long getConnectRetries() {
+		return connectRetries.sum();
+	}
+
+	/**
+	 * @return the number of connects that failed
+	 */
+	public long getConnectFailures() {
+		return connectFailures.sum();
+	}
+
+	/**
+	 * @return the latencies from the start of reading a command output until its first output arrived
+	 */
+	public LatencyHistogram getFirstByteLatency() {
+		return firstByteLatency;
+	}
+
+	/**
+	 * @return the latencies from the start of reading a command output until the end of output prompt
+	 */
+	public LatencyHistogram getCommandLatency() {
+		return commandLatency;
+	}
+
+	/**
+	 * @return the number of commands
+	 */
+	public long getCommands() {
+		return commands.sum();
+	}
+
+	/**
+	 * @return the number of commands that failed (including timeouts)
+	 */
+	public long getCommandFailures() {
+		return commandFailures.sum();
+	}
+
+	/**
+	 * @return the number of commands that timed out
+	 */
+	public long getTimeouts() {
+		return timeouts.sum();
+	}
+
+	/**
+	 * @return the number of chars read
+	 */
+	public long getCharsRead() {
+		return charsRead.sum();
+	}
+
+	/**
+	 * @return the number of bytes read (only for connections that know it)
+	 */
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	/**
+	 * @return the number of chars found after the end of the outputs (kept for the next commands, unless the connection discards them)
+	 */
+	public long getJunkChars() {
+		return junkChars.sum();
+	}
+
+	/**
+	 * @return the number of times each prompt was found (by the prompt string)
+	 */
+	public Map<String, Long> getPromptMatches() {
+		Map<String, Long> matches = new TreeMap<>();
+		for(Map.Entry<String, LongAdder> entry : promptMatches.entrySet()){
+			matches.put(entry.getKey(), entry.getValue().sum());
+		}
+		return matches;
+	}
+	
+	@Override
+	public String toString() {
+		return host + ": connects=" + getConnects() + ", connectRetries=" + getConnectRetries() + ", connectFailures=" + getConnectFailures()
+				+ ", connectLatency=[" + connectLatency + "], commands=" + getCommands() + ", commandFailures=" + getCommandFailures()
+				+ ", timeouts=" + getTimeouts() + ", firstByteLatency=[" + firstByteLatency + "], commandLatency=[" + commandLatency 
+				+ "], charsRead=" + getCharsRead() + ", bytesRead=" + getBytesRead() + ", junkChars=" + getJunkChars() 
+				+ ", promptMatches=" + getPromptMatches();
+	}
+}
@@ -0,0 +1,118 @@
+package com.qualiycode.remote_cli_connection.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a lock free histogram of latencies (or any other non negative values)
+ * 
+ * The values are counted in buckets: each power of 2 is split into 8 buckets, so a value is reported with up to 12.5% error,
+ * recording a value costs a few atomic increments and no objects are created.
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * @param value - the value to record (negative values are recorded as 0)
+	 */
+	public void record(long value){
+		if(value < 0){
+			value = 0;
+		}
+		counts.incrementAndGet(bucketOf(value));
+		count.increment();
+		sum.add(value);
+		long currentMax = max.get();
+		while(value > currentMax && !max.compareAndSet(currentMax, value)){
+			currentMax = max.get();
+		}
+	}
+	
+	private static int bucketOf(long value){
+		if(value < SUB_BUCKETS){
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+	
+	private static long highestValueOf(int bucket){
+		if(bucket < SUB_BUCKETS){
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+		return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+	}
+	
+	/**
+	 * @return the number of values recorded
+	 */
+	public long getCount(){
+		return count.sum();
+	}
+	
+	/**
+	 * @return the biggest value recorded
+	 */
+	public long getMax(){
+		return max.get();
+	}
+	
+	/**
+	 * @return the mean of the values recorded (0 if no value was recorded)
+	 */
+	public double getMean(){
+		long values = count.sum();
+		return values == 0 ? 0 : (double) sum.sum() / values;
+	}
+	
+	/**
+	 * This function returns a percentile of the values recorded
+	 * 
+	 * Note:
+	 * Values recorded while the percentile is calculated may or may not be included
+	 * 
+	 * @param percentile - the percentile (between 0 and 100)
+	 * @return the value (up to the bucket resolution) that this percent of the values are lower or equal to (0 if no value was recorded)
+	 */
+	public long getPercentile(double percentile){
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for(int i=0; i<BUCKETS; i++){
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if(total == 0){
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * total));
+		long seen = 0;
+		for(int i=0; i<BUCKETS; i++){
+			seen += snapshot[i];
+			if(seen >= rank){
+				return Math.min(highestValueOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+	
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", mean=" + (long) getMean() + ", p50=" + getPercentile(50) + ", p90=" + getPercentile(90) 
+				+ ", p99=" + getPercentile(99) + ", max=" + getMax();
+	}
+}
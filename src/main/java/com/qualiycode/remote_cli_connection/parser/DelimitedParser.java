@@ -0,0 +1,85 @@
+package com.qualiycode.remote_cli_connection.parser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * This class parses lines of fields separated by a delimiter char (for example /etc/passwd, or a tab separated query format),
+ * each line is a record of column name to value
+ *
+ * The column names are taken from the header line, or given to the parser.
+ *
+ * Note:
+ * Quoting is not supported (a delimiter inside a field splits the field)
+ * Fields beyond the known columns are ignored, empty lines are skipped
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public class DelimitedParser extends OutputParser<Map<String, String>> {
+
+	protected final char delimiter;
+
+	protected String[] columns;
+
+	private final boolean columnsFromHeader;
+
+	/**
+	 * Creates a parser that takes the column names from the first line of the output (after the command echo)
+	 * @param delimiter - the fields delimiter
+	 */
+	public DelimitedParser(char delimiter){
+		this.delimiter = delimiter;
+		this.columns = null;
+		this.columnsFromHeader = true;
+	}
+
+	/**
+	 * Creates a parser with known column names
+	 * @param delimiter - the fields delimiter
+	 * @param columns - the column names
+	 */
+	public DelimitedParser(char delimiter, String... columns){
+		this.delimiter = delimiter;
+		this.columns = columns.length == 0 ? null : columns;
+		this.columnsFromHeader = this.columns == null;
+	}
+
+	@Override
+	protected void parseRecord(CharSequence line, int end) throws Exception {
+		if(end == 0){
+			return;
+		}
+		if(columns == null){
+			columns = line.subSequence(0, end).toString().split(Pattern.quote(String.valueOf(delimiter)), -1);
+			return;
+		}
+		Map<String, String> record = new LinkedHashMap<>();
+		int start = 0;
+		for(int i=0; i<columns.length && start <= end; i++){
+			int fieldEnd = start;
+			while(fieldEnd < end && line.charAt(fieldEnd) != delimiter){
+				fieldEnd++;
+			}
+			record.put(columns[i], line.subSequence(start, fieldEnd).toString());
+			start = fieldEnd + 1;
+		}
+		addRecord(record);
+	}
+
+	/**
+	 * @return the column names (null if the header line was not read yet)
+	 */
+	public String[] getColumns() {
+		return columns;
+	}
+
+	@Override
+	public synchronized void reset() {
+		super.reset();
+		if(columnsFromHeader){
+			columns = null;
+		}
+	}
+}
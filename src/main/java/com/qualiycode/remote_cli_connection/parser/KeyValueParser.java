@@ -0,0 +1,92 @@
+package com.qualiycode.remote_cli_connection.parser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class parses "key separator value" lines (for example /proc/meminfo or /etc/os-release) into a record of key to value
+ *
+ * The lines up to an empty line (or up to the end of the output) are a single record,
+ * so outputs of several blocks separated by empty lines give a record per block.
+ *
+ * Note:
+ * The keys and values are trimmed, lines without the separator are skipped
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public class KeyValueParser extends OutputParser<Map<String, String>> {
+
+	protected final String separator;
+
+	/**
+	 * if set to true the quotes around the values are removed (for example NAME="CentOS Linux")
+	 */
+	protected boolean stripQuotes = false;
+
+	private Map<String, String> record = null;
+
+	/**
+	 * @param separator - the separator between the key and the value (the first one in the line is used)
+	 */
+	public KeyValueParser(String separator){
+		this.separator = separator;
+	}
+
+	@Override
+	protected void parseRecord(CharSequence line, int end) throws Exception {
+		String text = line.subSequence(0, end).toString();
+		if(text.trim().isEmpty()){
+			addBlock();
+			return;
+		}
+		int index = text.indexOf(separator);
+		if(index <= 0){
+			return;
+		}
+		String value = text.substring(index + separator.length()).trim();
+		if(stripQuotes && value.length() >= 2){
+			char first = value.charAt(0);
+			if((first == '"' || first == '\'') && value.charAt(value.length() - 1) == first){
+				value = value.substring(1, value.length() - 1);
+			}
+		}
+		if(record == null){
+			record = new LinkedHashMap<>();
+		}
+		record.put(text.substring(0, index).trim(), value);
+	}
+
+	@Override
+	protected void endOfOutput() throws Exception {
+		addBlock();
+	}
+
+	private void addBlock() throws Exception{
+		if(record != null){
+			Map<String, String> block = record;
+			record = null;
+			addRecord(block);
+		}
+	}
+
+	@Override
+	public synchronized void reset() {
+		super.reset();
+		record = null;
+	}
+
+	/**
+	 * @return true if the quotes around the values are removed
+	 */
+	public boolean isStripQuotes() {
+		return stripQuotes;
+	}
+
+	/**
+	 * @param stripQuotes - if set to true the quotes around the values are removed
+	 */
+	public void setStripQuotes(boolean stripQuotes) {
+		this.stripQuotes = stripQuotes;
+	}
+}
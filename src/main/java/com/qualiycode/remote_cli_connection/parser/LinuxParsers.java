@@ -0,0 +1,139 @@
+package com.qualiycode.remote_cli_connection.parser;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+
+/**
+ * This class creates output parsers for common Linux commands
+ *
+ * Each parser expects the output of a specific command line (the matching constant), for example:
+ *
+ *     CliCommand command = LinuxParsers.command(LinuxParsers.DF_COMMAND, LinuxParsers.df());
+ *     connection.handleCliCommand(command);
+ *     List<Map<String, String>> filesystems = ((TableParser) command.getOutputParser()).getRecords();
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public final class LinuxParsers {
+
+	/**
+	 * The df command line matching the df() parser (POSIX format, a line per filesystem)
+	 */
+	public static final String DF_COMMAND = "df -P";
+
+	/**
+	 * A ps command line matching the ps() parser (any ps -o columns list works, the command line column must be the last one)
+	 */
+	public static final String PS_COMMAND = "ps -eo pid,ppid,user,etime,args";
+
+	/**
+	 * The rpm command line matching the rpmPackages() parser
+	 */
+	public static final String RPM_COMMAND = "rpm -qa --queryformat '%{NAME}\\t%{VERSION}\\t%{RELEASE}\\t%{ARCH}\\n'";
+
+	/**
+	 * The ip command line matching the ipAddresses() parser (a line per address)
+	 */
+	public static final String IP_ADDR_COMMAND = "ip -o addr show";
+
+	/**
+	 * The command line matching the memInfo() parser
+	 */
+	public static final String MEMINFO_COMMAND = "cat /proc/meminfo";
+
+	/**
+	 * The command line matching the osRelease() parser
+	 */
+	public static final String OS_RELEASE_COMMAND = "cat /etc/os-release";
+
+	private LinuxParsers(){
+	}
+
+	/**
+	 * @param command - the command line
+	 * @param parser - the parser of the command output
+	 * @return a new command with the parser set
+	 */
+	public static CliCommand command(String command, OutputParser<?> parser){
+		CliCommand cliCommand = new CliCommand(command);
+		cliCommand.setOutputParser(parser);
+		return cliCommand;
+	}
+
+	/**
+	 * @return a parser for DF_COMMAND, a record per filesystem with the columns:
+	 * 		   Filesystem, Blocks, Used, Available, Capacity, Mounted on
+	 */
+	public static TableParser df(){
+		//the header is skipped since "Mounted on" has a space in it
+		TableParser parser = new TableParser("Filesystem", "Blocks", "Used", "Available", "Capacity", "Mounted on");
+		parser.setSkipLines(1);
+		return parser;
+	}
+
+	/**
+	 * @return a parser for PS_COMMAND (or any ps -o output), a record per process with the header columns (for example PID, PPID, USER, ELAPSED, COMMAND)
+	 */
+	public static TableParser ps(){
+		return new TableParser();
+	}
+
+	/**
+	 * @return a parser for RPM_COMMAND, a record per package with the columns: name, version, release, arch
+	 * 		   (the output of a plain "rpm -qa" gives records with the name column only)
+	 */
+	public static DelimitedParser rpmPackages(){
+		return new DelimitedParser('\t', "name", "version", "release", "arch");
+	}
+
+	/**
+	 * @return a parser for IP_ADDR_COMMAND, a record per address with the columns: index, interface, family, address, prefix
+	 */
+	public static OutputParser<Map<String, String>> ipAddresses(){
+		return new IpAddressParser();
+	}
+
+	/**
+	 * @return a parser for MEMINFO_COMMAND, a single record of field to value (for example MemTotal=16314764 kB)
+	 */
+	public static KeyValueParser memInfo(){
+		return new KeyValueParser(":");
+	}
+
+	/**
+	 * @return a parser for OS_RELEASE_COMMAND, a single record of field to value (for example ID=centos)
+	 */
+	public static KeyValueParser osRelease(){
+		KeyValueParser parser = new KeyValueParser("=");
+		parser.setStripQuotes(true);
+		return parser;
+	}
+
+	/**
+	 * Parses the one line format of "ip -o addr", for example:
+	 * 2: eth0    inet 10.0.0.5/24 brd 10.0.0.255 scope global eth0\       valid_lft forever preferred_lft forever
+	 */
+	private static class IpAddressParser extends OutputParser<Map<String, String>>{
+
+		@Override
+		protected void parseRecord(CharSequence line, int end) throws Exception {
+			List<String> fields = splitFields(line, end, 5);
+			if(fields.size() < 4 || !fields.get(0).endsWith(":")){
+				return;
+			}
+			Map<String, String> record = new LinkedHashMap<>();
+			record.put("index", fields.get(0).substring(0, fields.get(0).length() - 1));
+			record.put("interface", fields.get(1));
+			record.put("family", fields.get(2));
+			String address = fields.get(3);
+			int prefix = address.indexOf('/');
+			record.put("address", prefix == -1 ? address : address.substring(0, prefix));
+			record.put("prefix", prefix == -1 ? "" : address.substring(prefix + 1));
+			addRecord(record);
+		}
+	}
+}
@@ -0,0 +1,332 @@
+package com.qualiycode.remote_cli_connection.parser;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+
+/**
+ * This class turns a command output into records while the output is read from the remote terminal,
+ * so the output does not need to be split and parsed again once the command ended
+ *
+ * Set the parser on the command (see CliCommand.setOutputParser), the connection feeds the parser with each output line.
+ * The records can be read using getRecords() once the command ended, using a record listener,
+ * or using stream() while the command runs (for example with handleCliCommandAsync).
+ *
+ * Note:
+ * The terminal echo of the command (the first line) is skipped, and so is the end of output prompt line
+ * If only the records are needed, turn off retaining the command output (see CliCommand.setRetainOutput) to save the memory
+ * A parser holds the records of a single command, use reset() before running another command with the same parser
+ *
+ * Extender classes parse a single line in parseRecord and call addRecord for each record found
+ *
+ * @author Eli Rozenfeld
+ *
+ * @param <T> - the record type
+ */
+public abstract class OutputParser<T> {
+
+	private static final Object END_OF_RECORDS = new Object();
+
+	/**
+	 * if set to true the first line is skipped when it is the terminal echo of the command
+	 */
+	protected boolean skipCommandEcho = true;
+
+	/**
+	 * The number of lines to skip at the start of the output (after the command echo), for example a table header
+	 */
+	protected int skipLines = 0;
+
+	/**
+	 * if set to false the records are only sent to the record listener (and the stream) and not kept in memory
+	 */
+	protected boolean retainRecords = true;
+
+	/**
+	 * Holds the listener that gets the records while they are parsed (optional)
+	 */
+	protected RecordListener<T> recordListener = null;
+
+	private final List<T> records = new ArrayList<>();
+	private BlockingQueue<Object> queue = null;
+	private boolean echoChecked = false;
+	private int linesRead = 0;
+	private boolean ended = false;
+
+	/**
+	 * This method parses a single output line (called by the connection for each line of the output)
+	 * @param command - the command the output belongs to
+	 * @param line - the output line (including its line terminator)
+	 * @throws Exception
+	 */
+	public void parseLine(CliCommand command, CharSequence line) throws Exception{
+		int end = line.length();
+		while(end > 0 && (line.charAt(end - 1) == '\n' || line.charAt(end - 1) == '\r')){
+			end--;
+		}
+		if(!echoChecked){
+			echoChecked = true;
+			if(skipCommandEcho && isCommandEcho(command, line, end)){
+				return;
+			}
+		}
+		if(linesRead++ < skipLines){
+			return;
+		}
+		parseRecord(line, end);
+	}
+
+	/**
+	 * This method ends the parsing (called by the connection once the command output is over, successfully or not)
+	 * @param command - the command the output belongs to
+	 * @throws Exception
+	 */
+	public void outputEnded(CliCommand command) throws Exception{
+		try {
+			endOfOutput();
+		} finally {
+			synchronized (this) {
+				ended = true;
+				if(queue != null){
+					queue.add(END_OF_RECORDS);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This function parses a single line of the output, and adds the records found using addRecord
+	 * @param line - the output line
+	 * @param end - the line length without its line terminator
+	 * @throws Exception
+	 */
+	protected abstract void parseRecord(CharSequence line, int end) throws Exception;
+
+	/**
+	 * This method is called once the output is over, extender classes that build a record from several lines add their last record here
+	 * @throws Exception
+	 */
+	protected void endOfOutput() throws Exception{
+	}
+
+	/**
+	 * This method hands a parsed record to the records list, the record listener and the stream
+	 * @param record - the record
+	 * @throws Exception
+	 */
+	protected void addRecord(T record) throws Exception{
+		synchronized (this) {
+			if(retainRecords){
+				records.add(record);
+			}
+			if(queue != null){
+				queue.add(record);
+			}
+		}
+		if(recordListener != null){
+			recordListener.recordParsed(record);
+		}
+	}
+
+	/**
+	 * @return the records parsed so far (all the records once the command ended)
+	 */
+	public synchronized List<T> getRecords(){
+		return new ArrayList<>(records);
+	}
+
+	/**
+	 * This function returns the records as a stream, the stream blocks until the next record is parsed and ends once the output is over
+	 *
+	 * Note:
+	 * The stream should be taken before the command runs (or while it runs on another thread),
+	 * records parsed before the stream was taken are in the stream only if the records are retained
+	 * A parser has a single stream
+	 *
+	 * @return the records stream
+	 */
+	public Stream<T> stream(){
+		final BlockingQueue<Object> stream = new LinkedBlockingQueue<>();
+		synchronized (this) {
+			if(queue != null){
+				throw new IllegalStateException("The records stream was already taken");
+			}
+			stream.addAll(records);
+			if(ended){
+				stream.add(END_OF_RECORDS);
+			}
+			queue = stream;
+		}
+		Iterator<T> iterator = new Iterator<T>() {
+
+			private Object next = null;
+
+			@Override
+			public boolean hasNext() {
+				if(next == null){
+					try {
+						next = stream.take();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new IllegalStateException("Interrupted while waiting for the next record", e);
+					}
+				}
+				if(next == END_OF_RECORDS){
+					//more calls must also end the stream
+					stream.add(END_OF_RECORDS);
+					return false;
+				}
+				return true;
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public T next() {
+				if(!hasNext()){
+					throw new NoSuchElementException();
+				}
+				T record = (T) next;
+				next = null;
+				return record;
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * This method clears the parser state (the records and the stream), so it can parse the output of another command
+	 */
+	public synchronized void reset(){
+		records.clear();
+		queue = null;
+		echoChecked = false;
+		linesRead = 0;
+		ended = false;
+	}
+
+	/**
+	 * @param command - the command the output belongs to
+	 * @param line - the output line
+	 * @param end - the line length without its line terminator
+	 * @return true if the line is the terminal echo of the command
+	 */
+	protected boolean isCommandEcho(CliCommand command, CharSequence line, int end){
+		String commandString = command.getCommand().trim();
+		int start = 0;
+		while(start < end && Character.isWhitespace(line.charAt(start))){
+			start++;
+		}
+		while(end > start && Character.isWhitespace(line.charAt(end - 1))){
+			end--;
+		}
+		if(end - start != commandString.length()){
+			return false;
+		}
+		for(int i=0; i<commandString.length(); i++){
+			if(line.charAt(start + i) != commandString.charAt(i)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * This function splits a line into whitespace separated fields without using regular expressions
+	 * @param line - the line
+	 * @param end - the line length without its line terminator
+	 * @param maxFields - the max number of fields, the last field holds the rest of the line (0 means no limit)
+	 * @return the fields
+	 */
+	protected static List<String> splitFields(CharSequence line, int end, int maxFields){
+		List<String> fields = new ArrayList<>();
+		int position = 0;
+		while(position < end){
+			while(position < end && Character.isWhitespace(line.charAt(position))){
+				position++;
+			}
+			if(position == end){
+				break;
+			}
+			int fieldEnd = position;
+			if(maxFields > 0 && fields.size() == maxFields - 1){
+				//the last field holds the rest of the line
+				fieldEnd = end;
+				while(Character.isWhitespace(line.charAt(fieldEnd - 1))){
+					fieldEnd--;
+				}
+			}else{
+				while(fieldEnd < end && !Character.isWhitespace(line.charAt(fieldEnd))){
+					fieldEnd++;
+				}
+			}
+			fields.add(line.subSequence(position, fieldEnd).toString());
+			position = fieldEnd;
+		}
+		return fields;
+	}
+
+	/**
+	 * @return true if the first line is skipped when it is the terminal echo of the command
+	 */
+	public boolean isSkipCommandEcho() {
+		return skipCommandEcho;
+	}
+
+	/**
+	 * @param skipCommandEcho - if set to true the first line is skipped when it is the terminal echo of the command
+	 */
+	public void setSkipCommandEcho(boolean skipCommandEcho) {
+		this.skipCommandEcho = skipCommandEcho;
+	}
+
+	/**
+	 * @return the number of lines skipped at the start of the output (after the command echo)
+	 */
+	public int getSkipLines() {
+		return skipLines;
+	}
+
+	/**
+	 * @param skipLines - the number of lines to skip at the start of the output (after the command echo)
+	 */
+	public void setSkipLines(int skipLines) {
+		this.skipLines = skipLines;
+	}
+
+	/**
+	 * @return true if the records are kept in memory
+	 */
+	public boolean isRetainRecords() {
+		return retainRecords;
+	}
+
+	/**
+	 * @param retainRecords - if set to false the records are only sent to the record listener (and the stream) and not kept in memory
+	 */
+	public void setRetainRecords(boolean retainRecords) {
+		this.retainRecords = retainRecords;
+	}
+
+	/**
+	 * @return the listener that gets the records while they are parsed
+	 */
+	public RecordListener<T> getRecordListener() {
+		return recordListener;
+	}
+
+	/**
+	 * @param recordListener - the listener that gets the records while they are parsed
+	 */
+	public void setRecordListener(RecordListener<T> recordListener) {
+		this.recordListener = recordListener;
+	}
+}
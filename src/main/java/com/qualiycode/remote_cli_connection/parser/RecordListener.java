@@ -0,0 +1,21 @@
+package com.qualiycode.remote_cli_connection.parser;
+
+/**
+ * Listener for the records of an output parser, gets each record as soon as its lines were read from the remote terminal
+ *
+ * Note:
+ * The listener is called by the thread reading the command output, so it should not block for long
+ *
+ * @author Eli Rozenfeld
+ *
+ * @param <T> - the record type
+ */
+public interface RecordListener<T> {
+
+	/**
+	 * Called for each record parsed from the command output
+	 * @param record - the record
+	 * @throws Exception
+	 */
+	void recordParsed(T record) throws Exception;
+}
@@ -0,0 +1,76 @@
+package com.qualiycode.remote_cli_connection.parser;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class parses a whitespace separated table (for example the output of ps or df), each row is a record of column name to value
+ *
+ * The column names are taken from the header line, or given to the parser (then use setSkipLines to skip the header).
+ * The last column holds the rest of the row, so a last column with spaces (for example the ps command line) is kept whole.
+ *
+ * Note:
+ * Rows with fewer fields than columns only have the first columns, empty lines are skipped
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public class TableParser extends OutputParser<Map<String, String>> {
+
+	protected String[] columns;
+
+	private final boolean columnsFromHeader;
+
+	/**
+	 * Creates a parser that takes the column names from the first line of the output (after the command echo)
+	 */
+	public TableParser(){
+		this.columns = null;
+		this.columnsFromHeader = true;
+	}
+
+	/**
+	 * Creates a parser with known column names
+	 * @param columns - the column names
+	 */
+	public TableParser(String... columns){
+		this.columns = columns.length == 0 ? null : columns;
+		this.columnsFromHeader = this.columns == null;
+	}
+
+	@Override
+	protected void parseRecord(CharSequence line, int end) throws Exception {
+		if(columns == null){
+			List<String> header = splitFields(line, end, 0);
+			if(!header.isEmpty()){
+				columns = header.toArray(new String[header.size()]);
+			}
+			return;
+		}
+		List<String> fields = splitFields(line, end, columns.length);
+		if(fields.isEmpty()){
+			return;
+		}
+		Map<String, String> record = new LinkedHashMap<>();
+		for(int i=0; i<fields.size(); i++){
+			record.put(columns[i], fields.get(i));
+		}
+		addRecord(record);
+	}
+
+	/**
+	 * @return the column names (null if the header line was not read yet)
+	 */
+	public String[] getColumns() {
+		return columns;
+	}
+
+	@Override
+	public synchronized void reset() {
+		super.reset();
+		if(columnsFromHeader){
+			columns = null;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.qualiycode.remote_cli_connection.ssh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import com.qualiycode.remote_cli_connection.CliConnection;
+import com.qualiycode.remote_cli_connection.Prompt;
+import com.qualiycode.remote_cli_connection.fleet.BulkConnector;
+
+/**
+ * This class connects many hosts in parallel using SSH CLI connections
+ * 
+ * All the hosts are connected with the same user, password, port, shell type and prompts.
+ * Besides the number of hosts connecting at the same time, the number of SSH handshakes (key exchange and authentication)
+ * running at the same time is limited as well, since the key exchange is CPU heavy.
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class SshBulkConnector extends BulkConnector {
+
+	protected String username;
+	protected String password;
+	protected int port;
+	protected ShellType shellType;
+	protected String endLineStr;
+	
+	/**
+	 * Holds additional prompts to add to each connection 
+	 */
+	protected List<Prompt> prompts = new ArrayList<>();
+	
+	/**
+	 * Limits the number of SSH handshakes running at the same time for all the connections of this connector 
+	 */
+	protected Semaphore handshakePermits = new Semaphore(Runtime.getRuntime().availableProcessors() * 2);
+	
+	/**
+	 * The max time (in milliseconds) we allow for opening each SSH session
+	 */
+	protected int connectTimeout = 30000;
+	
+	/**
+	 * The number of tries for connecting each host
+	 */
+	protected int numberOfRetries = 3;
+	
+	/**
+	 * @param username - connection user name
+	 * @param password - connection password
+	 * @param port - connection port
+	 * @param shellType - server shell type
+	 * @param endLineStr - end line marker (usually #)
+	 */
+	public SshBulkConnector(String username, String password, int port, ShellType shellType, String endLineStr){
+		this.username = username;
+		this.password = password;
+		this.port = port;
+		this.shellType = shellType;
+		this.endLineStr = endLineStr;
+	}
+	
+	/**
+	 * @param username - connection user name
+	 * @param password - connection password
+	 * @param endLineStr - end line marker (usually #)
+	 */
+	public SshBulkConnector(String username, String password, String endLineStr){
+		this(username, password, 22, SshCliConnection.DEFAULT_SHELL_TYPE, endLineStr);
+	}
+	
+	/**
+	 * This function adds prompts to be used by each connection
+	 * @param prompt - the prompt to add
+	 */
+	public void addPrompt(Prompt prompt){
+		prompts.add(prompt);
+	}
+
+	@Override
+	protected CliConnection createConnection(String host) throws Exception {
+		SshCliConnection connection = new SshCliConnection(username, password, host, port, shellType, endLineStr);
+		for(Prompt prompt : prompts){
+			connection.addPrompt(prompt);
+		}
+		connection.setConnectTimeout(connectTimeout);
+		connection.setNumberOfRetries(numberOfRetries);
+		connection.setHandshakePermits(handshakePermits);
+		return connection;
+	}
+
+	/**
+	 * @param maxConcurrentHandshakes - the max number of SSH handshakes running at the same time (default is twice the number of processors)
+	 */
+	public void setMaxConcurrentHandshakes(int maxConcurrentHandshakes) {
+		this.handshakePermits = new Semaphore(maxConcurrentHandshakes);
+	}
+
+	/**
+	 * @return the max time (in milliseconds) we allow for opening each SSH session
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * @param connectTimeout - the max time (in milliseconds) we allow for opening each SSH session
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * @return the number of tries for connecting each host
+	 */
+	public int getNumberOfRetries() {
+		return numberOfRetries;
+	}
+
+	/**
+	 * @param numberOfRetries - the number of tries for connecting each host
+	 */
+	public void setNumberOfRetries(int numberOfRetries) {
+		this.numberOfRetries = numberOfRetries;
+	}
+}
@@ -1,15 +1,35 @@
 package com.qualiycode.remote_cli_connection.ssh;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.InputStreamReader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Collections;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.jcraft.jsch.Channel;
+import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.ChannelShell;
-import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.Session;
 import com.qualiycode.remote_cli_connection.CliCommand;
 import com.qualiycode.remote_cli_connection.CliConnection;
+import com.qualiycode.remote_cli_connection.CliExecutors;
+import com.qualiycode.remote_cli_connection.CommandOutput;
+import com.qualiycode.remote_cli_connection.TerminalInputBuffer;
+import com.qualiycode.remote_cli_connection.metrics.CommandMetrics;
+import com.qualiycode.remote_cli_connection.ssh.sftp.SftpTransfer;
 
 /**
  * This class implements a remote CLI connection using SSH
@@ -39,11 +59,61 @@ public class SshCliConnection extends CliConnection{
 	 */
 	protected Channel channel;
 	
+	/**
+	 * Holds the SSH session this connection opens its channel on (our own session, or a session shared with other connections)
+	 */
+	protected SshCliSession sshSession;
+	
+	/**
+	 * If true the SSH session is shared with other connections, so we do not open or close it
+	 */
+	protected boolean sharedSession = false;
+	
 	/**
 	 * Hold the connect timeout which is the max time we allow for connect function 
 	 */
 	protected int connectTimeout = 30000;
 	
+	/**
+	 * Limits the number of SSH handshakes running at the same time (optional, see SshCliSession.setHandshakePermits)
+	 */
+	protected Semaphore handshakePermits = null;
+	
+	/**
+	 * The interval (in milliseconds) between SSH keepalive messages, 0 means no keepalive messages are sent
+	 */
+	protected int serverAliveInterval = 0;
+	
+	/**
+	 * The number of keepalive messages that can be left unanswered before the session is considered dead
+	 */
+	protected int serverAliveCountMax = 3;
+	
+	/**
+	 * The algorithms (key exchange, cipher, MAC and compression) profile used when opening our own SSH session
+	 */
+	protected SshConnectionProfile profile = SshConnectionProfile.DEFAULT;
+	
+	/**
+	 * If true - a lost connection is reconnected (in the background and before running a command) and idempotent commands 
+	 * that failed because the connection was lost run again once
+	 */
+	protected boolean autoReconnect = false;
+	
+	/**
+	 * The interval (in milliseconds) between the background checks of the connection (used when auto reconnect is on), 0 means no background checks
+	 */
+	protected long connectionCheckInterval = 10000;
+	
+	/**
+	 * Set to true once the connection was disconnected on purpose, so it is not reconnected
+	 */
+	protected volatile boolean disconnectRequested = false;
+	
+	private ScheduledFuture<?> connectionMonitor = null;
+	
+	private final AtomicBoolean reconnecting = new AtomicBoolean(false);
+	
 	/**
 	 * Holds the SSH Terminal type
 	 * 
@@ -56,6 +126,12 @@ public class SshCliConnection extends CliConnection{
 	 */
 	protected String lastKnownOutput = "";
 	
+	/**
+	 * If true - the end of each command output is detected by a unique sentinel echoed after the command (together with its exit status),
+	 * instead of by the end of line prompt
+	 */
+	protected boolean useEndOfOutputSentinel = false;
+	
 	/**
 	 * @param username - connection user name
 	 * @param password - connection password
@@ -79,6 +155,18 @@ public class SshCliConnection extends CliConnection{
 		this(username, password, ip, 22, DEFAULT_SHELL_TYPE, endLineStr);
 	}
 	
+	/**
+	 * Creates a connection that opens its channel on a session shared with other connections
+	 * @param sshSession - the shared SSH session (must be connected before connecting this connection)
+	 * @param shellType = server shell type
+	 * @param endLineStr = end line marker (usually #)
+	 */
+	public SshCliConnection(SshCliSession sshSession, ShellType shellType, String endLineStr){
+		this(sshSession.getUsername(), sshSession.getPassword(), sshSession.getIp(), sshSession.getPort(), shellType, endLineStr);
+		this.sshSession = sshSession;
+		this.sharedSession = true;
+	}
+	
 	/**
 	 * This method opens a SSH connection to a host
 	 * @param connectionHandelr
@@ -86,28 +174,59 @@ public class SshCliConnection extends CliConnection{
 	 */
 	@Override
 	protected boolean doConnect(){
-		JSch shell = new JSch();
 		boolean result = false;
 		try {
-			session = shell.getSession(username, ip, port);
-			session.setUserInfo(new SshUserInfo(password));
-			//we set the retry to 1 because retries are managed by the CliConnection object we extends
-			session.setConfig("MaxAuthTries","1");
-			session.connect(connectTimeout);  
-			channel = session.openChannel(shellType.toString());  
-			if(shellType.equals(ShellType.SHELL)){
-				setTerminalType();
-			}
-			channel.connect();  
-			dataIn = new BufferedReader(new InputStreamReader(channel.getInputStream()));  
-			dataOut = new DataOutputStream(channel.getOutputStream());
+			if(channel != null){
+				channel.disconnect();
+			}
+			if(sharedSession){
+				if(!sshSession.isConnected()){
+					throw new Exception("The shared SSH session is not connected");
+				}
+			}else{
+				if(sshSession == null){
+					sshSession = new SshCliSession(username, password, ip, port);
+				}
+				sshSession.setConnectTimeout(connectTimeout);
+				sshSession.setHandshakePermits(handshakePermits);
+				sshSession.setServerAliveInterval(serverAliveInterval);
+				sshSession.setServerAliveCountMax(serverAliveCountMax);
+				sshSession.setProfile(profile);
+				if(!sshSession.doConnect()){
+					return false;
+				}
+			}
+			session = sshSession.getSession();
+			//exec (and SFTP) connections open a channel for each command
+			if(!usesExecChannels()){
+				openChannel();
+			}
 			result = true;
+			disconnectRequested = false;
+			startConnectionMonitor();
 		} catch (Exception e) {
 			log.error("unable to open SSH connection to " + ip, e);
 		}
 		return result;
 	}
 	
+	/**
+	 * This method opens our channel on the SSH session
+	 * @throws Exception
+	 */
+	protected void openChannel() throws Exception{
+		channel = session.openChannel(shellType.toString());  
+		if(shellType.equals(ShellType.SHELL)){
+			setTerminalType();
+		}
+		//JSCH writes the arriving data directly to our buffer, which signals us when data is ready for reading
+		inputBuffer = new TerminalInputBuffer();
+		channel.setOutputStream(inputBuffer.getOutputStream());
+		channel.connect();  
+		dataIn = new BufferedReader(new InputStreamReader(inputBuffer.getInputStream(), charset));  
+		dataOut = new DataOutputStream(channel.getOutputStream());
+	}
+	
 	/**
 	 * Sets the terminal type 
 	 */
@@ -122,11 +241,14 @@ public class SshCliConnection extends CliConnection{
 	 */
 	@Override
 	public boolean doDisconnect(){
+		disconnectRequested = true;
+		stopConnectionMonitor();
 		if(channel != null){
 			channel.disconnect();  
 		}
 
-		if(session != null){
+		//a shared session is closed by its owner
+		if(session != null && !sharedSession){
 			session.disconnect();
 		}
 		return true;
@@ -149,24 +271,646 @@ public class SshCliConnection extends CliConnection{
 	 */
 	@Override
 	public String handleCliCommand(CliCommand command) throws Exception{
-		String output = "";
+		if(loadCachedResult(command)){
+			return command.getCommandOutput();
+		}
+		String output = runCliCommand(command);
+		cacheResult(command);
+		return output;
+	}
+	
+	/**
+	 * This method run command on the remote machine (on the shell channel or on its own exec channel)
+	 * @param command - the command to run
+	 * @return the command output
+	 */
+	private String runCliCommand(CliCommand command) throws Exception{
+		if(usesExecChannels()){
+			//each command has its own channel, so commands can run in parallel
+			ensureConnected();
+			try {
+				return handleExecCommand(command);
+			} catch (Exception e) {
+				if(!reconnectForRetry(command)){
+					throw e;
+				}
+				return handleExecCommand(command);
+			}
+		}
+		commandLock.lock();
+		try {
+			ensureConnected();
+			try {
+				return handleShellCommand(command);
+			} catch (Exception e) {
+				if(!reconnectForRetry(command)){
+					throw e;
+				}
+				return handleShellCommand(command);
+			}
+		} finally {
+			commandLock.unlock();
+		}
+	}
+	
+	/**
+	 * This method run command on our shell channel (must be called while holding the command lock)
+	 * @param command - the command to execute
+	 * @return the command output
+	 */
+	protected String handleShellCommand(CliCommand command) throws Exception{
 		try {
-			dataOut.writeBytes(command.getCommand() + LINUX_CRLF);  
-			dataOut.flush();
-			output = waitForTerminal(command);
+			if(useEndOfOutputSentinel){
+				//a batch of one command ends with a sentinel that holds the exit status, 
+				//the sentinel marks the end of the output so we do not wait for the end of line prompt after it
+				return handleCliCommands(Collections.singletonList(command), false).get(0);
+			}
+			writeToTerminal(command.getCommand() + LINUX_CRLF);
+			return waitForTerminal(command);
 		} catch (Exception e) {
-			lastKnownOutput = command.getCommandOutput();
+			//an output that was moved to a file stays in the command
+			lastKnownOutput = command.isOutputSpilled() ? "" : command.getCommandOutput();
 			log.error("unable to excecute command");
 			throw e;
-		}  
-        return output;
+		}
+	}
+	
+	/**
+	 * If auto reconnect is on and the connection was lost, we reconnect before running the command
+	 * @throws Exception if the connection was lost and we were unable to reconnect
+	 */
+	private void ensureConnected() throws Exception{
+		if(autoReconnect && !disconnectRequested && !isConnected()){
+			if(!reconnect()){
+				throw new Exception("Connection to " + ip + " was lost and reconnecting failed");
+			}
+		}
+	}
+	
+	/**
+	 * This function is called after a command failed, if the failure was caused by losing the connection and the command can run again we reconnect
+	 * @param command - the command that failed
+	 * @return true if the command should run again (we reconnected)
+	 */
+	private boolean reconnectForRetry(CliCommand command){
+		try {
+			if(!autoReconnect || !command.isIdempotent() || disconnectRequested || isConnected()){
+				return false;
+			}
+		} catch (Exception e) {
+			return false;
+		}
+		log.info("Connection to " + ip + " was lost while running \"" + command.getCommand() + "\", reconnecting and running the command again");
+		return reconnect();
+	}
+	
+	/**
+	 * This method drops the terminal output that was not read yet, for example the output that arrived after the end prompt of the last command
+	 * (used before the connection is handed to a new user, see SshCliConnectionPool)
+	 * @return the number of characters dropped from the terminal
+	 * @throws Exception
+	 */
+	public int discardPendingOutput() throws Exception{
+		commandLock.lock();
+		try {
+			if(!isTerminalConnection() || dataIn == null){
+				return 0;
+			}
+			return discardAvailableInput();
+		} finally {
+			commandLock.unlock();
+		}
+	}
+	
+	/**
+	 * This method opens the connection again after it was lost (does nothing if the connection is alive)
+	 * @return true if the connection is connected
+	 */
+	public boolean reconnect(){
+		commandLock.lock();
+		try {
+			if(isConnected()){
+				return true;
+			}
+			log.info("Reconnecting to: " + ip + ":" + port);
+			//the unread characters (and bytes) belong to the lost channel
+			resetReadBuffers();
+			return connect();
+		} catch (Exception e) {
+			log.error("Unable to reconnect to: " + ip, e);
+			return false;
+		} finally {
+			commandLock.unlock();
+		}
+	}
+	
+	/**
+	 * Starts checking the connection in the background (if auto reconnect is on), a lost connection is reconnected
+	 */
+	protected void startConnectionMonitor(){
+		synchronized (this) {
+			if(!autoReconnect || connectionCheckInterval <= 0 || connectionMonitor != null){
+				return;
+			}
+			connectionMonitor = CliExecutors.getMonitorScheduler().scheduleWithFixedDelay(this::checkConnection, 
+					connectionCheckInterval, connectionCheckInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Stops checking the connection in the background
+	 */
+	protected void stopConnectionMonitor(){
+		synchronized (this) {
+			if(connectionMonitor != null){
+				connectionMonitor.cancel(false);
+				connectionMonitor = null;
+			}
+		}
+	}
+	
+	private void checkConnection(){
+		try {
+			if(disconnectRequested || isConnected() || !reconnecting.compareAndSet(false, true)){
+				return;
+			}
+			//the monitor thread is shared by all the connections, so the reconnect runs on another thread
+			CliExecutors.getDefaultExecutor().execute(() -> {
+				try {
+					reconnect();
+				} finally {
+					reconnecting.set(false);
+				}
+			});
+		} catch (Exception e) {
+			reconnecting.set(false);
+			log.error("Error while checking the connection to " + ip, e);
+		}
+	}
+
+	/**
+	 * This method run command on its own SSH exec channel and read its output until the command ends
+	 * 
+	 * Note:
+	 * No prompts are used, the output and error output are kept separately and the exit status is set on the command
+	 * The output lines are sent to the command listener and parser as they arrive
+	 * The output is kept like the output of a terminal command (moved to a file above the command spill threshold), 
+	 * nothing is kept if the command does not retain its output
+	 * 
+	 * @param command - the command to execute
+	 * @return the command output
+	 */
+	protected String handleExecCommand(CliCommand command) throws Exception{
+		long deadline = System.currentTimeMillis() + command.getTimeout()*1000;
+		long startNanos = System.nanoTime();
+		long firstByteNanos = -1;
+		boolean timedOut = false;
+		boolean failed = false;
+		long outputBytes = 0;
+		long errorBytes = 0;
+		CommandOutput output = command.isRetainOutput() ? new CommandOutput(command.getOutputSpillThreshold()) : null;
+		ByteArrayOutputStream errorOutput = command.isRetainOutput() ? new ByteArrayOutputStream() : null;
+		ExecOutputLines lines = output != null || command.getOutputListener() != null || command.getOutputParser() != null 
+				? new ExecOutputLines(command, charset, output) : null;
+		ChannelExec exec = null;
+		command.setOutputComplete(false);
+		command.setExitStatus(-1);
+		try {
+			exec = (ChannelExec) session.openChannel(ShellType.EXEC.toString());
+			exec.setCommand(command.getCommand());
+			
+			//both buffers signal the same lock, so we wait for data from any of them
+			final ReentrantLock dataLock = new ReentrantLock();
+			final Condition dataArrived = dataLock.newCondition();
+			TerminalInputBuffer.DataListener listener = buffer -> {
+				dataLock.lock();
+				try {
+					dataArrived.signalAll();
+				} finally {
+					dataLock.unlock();
+				}
+			};
+			TerminalInputBuffer outputBuffer = new TerminalInputBuffer();
+			TerminalInputBuffer errorBuffer = new TerminalInputBuffer();
+			outputBuffer.setDataListener(listener);
+			errorBuffer.setDataListener(listener);
+			exec.setOutputStream(outputBuffer.getOutputStream());
+			exec.setErrStream(errorBuffer.getOutputStream());
+			if(!command.isSilent()){
+				log.info("[exec] " + command.getCommand());
+			}
+			exec.connect((int)Math.max(1, deadline - System.currentTimeMillis()));
+			
+			byte[] buffer = new byte[READ_BUFFER_SIZE];
+			while(!outputBuffer.isEndOfStream() || !errorBuffer.isEndOfStream()){
+				dataLock.lock();
+				try {
+					long remaining = TimeUnit.MILLISECONDS.toNanos(deadline - System.currentTimeMillis());
+					while(outputBuffer.available() == 0 && errorBuffer.available() == 0 
+							&& !(outputBuffer.isEndOfStream() && errorBuffer.isEndOfStream()) && remaining > 0){
+						remaining = dataArrived.awaitNanos(remaining);
+					}
+					if(remaining <= 0){
+						timedOut = true;
+						throw new Exception("Got timeout (After " + command.getTimeout() + " seconds) while reading command output");
+					}
+				} finally {
+					dataLock.unlock();
+				}
+				outputBytes += drain(outputBuffer, null, buffer, lines);
+				errorBytes += drain(errorBuffer, errorOutput, buffer, null);
+				if(firstByteNanos < 0 && outputBytes + errorBytes > 0){
+					firstByteNanos = System.nanoTime() - startNanos;
+				}
+			}
+			
+			//JSch closes the error stream only when the channel is closed (the exit status arrives before that), 
+			//so once both streams ended the exit status is known
+			command.setExitStatus(exec.getExitStatus());
+			command.setOutputComplete(exec.getExitStatus() >= 0);
+		} catch (Exception e) {
+			failed = true;
+			if(lines != null){
+				try {
+					lines.end();
+				} catch (Exception listenerError) {
+					log.error("Command output listener failed", listenerError);
+				}
+			}
+			setExecOutput(command, output, errorOutput);
+			//an output that was moved to a file stays in the command
+			lastKnownOutput = commandResult(command);
+			if(!command.isIgnoreErrors()){
+				log.error("unable to excecute command");
+				throw new Exception("Unable to excecute command \"" + command.getCommand() + "\", " + e.getMessage());
+			}
+			return lastKnownOutput;
+		} finally {
+			if(exec != null){
+				exec.disconnect();
+			}
+			if(metricsListener != null){
+				commandFinished(new CommandMetrics(command, System.nanoTime() - startNanos, firstByteNanos, outputBytes + errorBytes, 
+						outputBytes + errorBytes, 0, timedOut, failed));
+			}
+		}
+		
+		try {
+			if(lines != null){
+				lines.end();
+			}
+		} finally {
+			setExecOutput(command, output, errorOutput);
+		}
+		if(!command.isSilent()){
+			log.info("[terminal] " + commandResult(command));
+			if(errorBytes > 0 && errorOutput != null){
+				log.info("[error] " + command.getErrorOutput());
+			}
+			log.info("[exit status] " + command.getExitStatus());
+		}
+		return commandResult(command);
+	}
+	
+	/**
+	 * Sets the output and the error output of an exec command (empty if the command does not retain its output)
+	 */
+	private void setExecOutput(CliCommand command, CommandOutput output, ByteArrayOutputStream errorOutput) throws Exception{
+		if(output != null){
+			command.setOutput(output);
+		}else{
+			command.setCommandOutput("");
+		}
+		command.setErrorOutput(errorOutput != null ? errorOutput.toString(charset.name()) : "");
+	}
+	
+	/**
+	 * Reads the bytes that are ready in the buffer
+	 * @return the number of bytes read
+	 */
+	private static int drain(TerminalInputBuffer from, ByteArrayOutputStream to, byte[] buffer, ExecOutputLines lines) throws Exception{
+		int total = 0;
+		while(from.available() > 0){
+			int count = from.getInputStream().read(buffer, 0, buffer.length);
+			if(count < 0){
+				break;
+			}
+			total += count;
+			if(to != null){
+				to.write(buffer, 0, count);
+			}
+			if(lines != null){
+				lines.write(buffer, count);
+			}
+		}
+		return total;
+	}
+	
+	/**
+	 * Decodes the exec output as it arrives, adds each complete line to the command output (if it is kept) 
+	 * and sends it to the command listener and parser
+	 */
+	static class ExecOutputLines{
+		private final CliCommand command;
+		private final CharsetDecoder decoder;
+		private final ByteBuffer bytes = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		private final CharBuffer chars = CharBuffer.allocate(READ_BUFFER_SIZE);
+		private final StringBuilder line = new StringBuilder();
+		private final CommandOutput output;
+		private boolean ended = false;
+		
+		ExecOutputLines(CliCommand command, Charset charset){
+			this(command, charset, null);
+		}
+		
+		/**
+		 * @param output - the output the lines are added to (null if the output is not kept)
+		 */
+		ExecOutputLines(CliCommand command, Charset charset, CommandOutput output){
+			this.command = command;
+			this.output = output;
+			this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+		
+		/**
+		 * Adds output bytes (a char split between two writes is decoded once all its bytes arrived)
+		 */
+		void write(byte[] data, int length) throws Exception{
+			int offset = 0;
+			while(offset < length){
+				int count = Math.min(bytes.remaining(), length - offset);
+				bytes.put(data, offset, count);
+				offset += count;
+				((Buffer) bytes).flip();
+				decode(false);
+				bytes.compact();
+			}
+		}
+		
+		/**
+		 * Sends the last line (there is no prompt line in the exec output, so it is sent even without a line terminator) 
+		 * and tells the listener and the parser that the output ended, only the first call has an effect
+		 */
+		void end() throws Exception{
+			if(ended){
+				return;
+			}
+			ended = true;
+			try {
+				((Buffer) bytes).flip();
+				decode(true);
+				CoderResult result;
+				do {
+					result = decoder.flush(chars);
+					sendLines();
+				} while(result.isOverflow());
+				if(line.length() > 0){
+					sendLine();
+				}
+			} finally {
+				try {
+					if(command.getOutputParser() != null){
+						command.getOutputParser().outputEnded(command);
+					}
+				} finally {
+					if(command.getOutputListener() != null){
+						command.getOutputListener().outputEnded(command);
+					}
+				}
+			}
+		}
+		
+		private void decode(boolean endOfInput) throws Exception{
+			CoderResult result;
+			do {
+				result = decoder.decode(bytes, chars, endOfInput);
+				sendLines();
+			} while(result.isOverflow());
+		}
+		
+		private void sendLines() throws Exception{
+			((Buffer) chars).flip();
+			while(chars.hasRemaining()){
+				char c = chars.get();
+				line.append(c);
+				if(c == '\n'){
+					sendLine();
+				}
+			}
+			((Buffer) chars).clear();
+		}
+		
+		private void sendLine() throws Exception{
+			if(output != null){
+				output.append(line);
+			}
+			if(command.getOutputListener() != null){
+				command.getOutputListener().outputLine(command, line.toString());
+			}
+			if(command.getOutputParser() != null){
+				command.getOutputParser().parseLine(command, line);
+			}
+			line.setLength(0);
+		}
 	}
 
 	@Override
 	public boolean isConnected() throws Exception {
+		if(usesExecChannels()){
+			return session != null && session.isConnected();
+		}
 		return session != null && channel != null && session.isConnected() && !channel.isClosed();
 	}
+	
+	@Override
+	protected boolean isTerminalConnection(){
+		return !usesExecChannels();
+	}
+	
+	@Override
+	protected boolean isEndOfOutputByPrompt(){
+		return !useEndOfOutputSentinel;
+	}
+	
+	/**
+	 * @return true if this connection has no terminal channel and runs each command on its own exec channel 
+	 * 		   (SFTP connections are used for file transfers, see openSftpTransfer)
+	 */
+	protected boolean usesExecChannels(){
+		return shellType.equals(ShellType.EXEC) || shellType.equals(ShellType.SFTP);
+	}
+	
+	/**
+	 * This method opens file transfers over SFTP on our SSH session (the session is already authenticated, so no new handshake is needed)
+	 * @return the SFTP transfer, close it when the transfers are over
+	 * @throws Exception if the SSH session is not connected
+	 */
+	public SftpTransfer openSftpTransfer() throws Exception{
+		return openSftpTransfer(SftpTransfer.DEFAULT_MAX_CHANNELS);
+	}
+	
+	/**
+	 * This method opens file transfers over SFTP on our SSH session (the session is already authenticated, so no new handshake is needed)
+	 * @param maxChannels - the max number of SFTP channels open at the same time (large files and directory trees are transferred in parallel)
+	 * @return the SFTP transfer, close it when the transfers are over
+	 * @throws Exception if the SSH session is not connected
+	 */
+	public SftpTransfer openSftpTransfer(int maxChannels) throws Exception{
+		if(session == null || !session.isConnected()){
+			throw new Exception("Unable to open SFTP transfer, the SSH session to " + ip + " is not connected");
+		}
+		return new SftpTransfer(session, maxChannels);
+	}
+
+	/**
+	 * @return the max time (in milliseconds) we allow for opening the SSH session
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * @param connectTimeout - the max time (in milliseconds) we allow for opening the SSH session
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * @return the interval (in milliseconds) between SSH keepalive messages (0 means no keepalive messages are sent)
+	 */
+	public int getServerAliveInterval() {
+		return serverAliveInterval;
+	}
 
+	/**
+	 * Keepalive messages keep NAT and firewalls from dropping an idle connection, and detect a dead connection 
+	 * (used when the connection opens its own SSH session)
+	 * @param serverAliveInterval - the interval (in milliseconds) between SSH keepalive messages (0 means no keepalive messages are sent)
+	 */
+	public void setServerAliveInterval(int serverAliveInterval) {
+		this.serverAliveInterval = serverAliveInterval;
+	}
+
+	/**
+	 * @return the number of keepalive messages that can be left unanswered before the connection is considered dead
+	 */
+	public int getServerAliveCountMax() {
+		return serverAliveCountMax;
+	}
+
+	/**
+	 * @param serverAliveCountMax - the number of keepalive messages that can be left unanswered before the connection is considered dead
+	 */
+	public void setServerAliveCountMax(int serverAliveCountMax) {
+		this.serverAliveCountMax = serverAliveCountMax;
+	}
+
+	/**
+	 * @return the algorithms profile used when opening our own SSH session
+	 */
+	public SshConnectionProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * Note:
+	 * A connection on a shared session uses the profile of the shared session
+	 * 
+	 * @param profile - the algorithms (key exchange, cipher, MAC and compression) profile used when opening our own SSH session
+	 */
+	public void setProfile(SshConnectionProfile profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * @return true if a lost connection is reconnected automatically
+	 */
+	public boolean isAutoReconnect() {
+		return autoReconnect;
+	}
+
+	/**
+	 * Note:
+	 * A connection on a shared session can not open the session again, so it is reconnected only while the shared session is alive 
+	 * 
+	 * @param autoReconnect - set to true for reconnecting a lost connection (in the background and before running a command) 
+	 * 						  and running idempotent commands (see CliCommand.setIdempotent) that failed because the connection was lost once again
+	 */
+	public void setAutoReconnect(boolean autoReconnect) {
+		this.autoReconnect = autoReconnect;
+		if(!autoReconnect){
+			stopConnectionMonitor();
+		}
+	}
+
+	/**
+	 * @return the interval (in milliseconds) between the background checks of the connection
+	 */
+	public long getConnectionCheckInterval() {
+		return connectionCheckInterval;
+	}
+
+	/**
+	 * @param connectionCheckInterval - the interval (in milliseconds) between the background checks of the connection (0 means no background checks),
+	 * 									takes effect on the next connect
+	 */
+	public void setConnectionCheckInterval(long connectionCheckInterval) {
+		this.connectionCheckInterval = connectionCheckInterval;
+	}
+
+	/**
+	 * @param handshakePermits - the semaphore that limits the number of SSH handshakes running at the same time (share it between the connections to limit)
+	 */
+	public void setHandshakePermits(Semaphore handshakePermits) {
+		this.handshakePermits = handshakePermits;
+	}
+	
+	/**
+	 * Commands that run on different shell types (for example a shell and a subsystem) may have different outputs, 
+	 * so each shell type has its own cached results
+	 * @return the result cache key (user@ip:port/shell type)
+	 */
+	@Override
+	public String getResultCacheKey() {
+		return super.getResultCacheKey() + "/" + shellType;
+	}
+	
+	/**
+	 * @return the shell type used for this connection
+	 */
+	public ShellType getShellType(){
+		return shellType;
+	}
+	
+	/**
+	 * @return the SSH session this connection opens its channel on
+	 */
+	public SshCliSession getSshSession(){
+		return sshSession;
+	}
+	
+	/**
+	 * @return true if the end of each command output is detected by a sentinel echoed after the command
+	 */
+	public boolean isUseEndOfOutputSentinel() {
+		return useEndOfOutputSentinel;
+	}
+
+	/**
+	 * Set to true for detecting the end of each command output by a unique sentinel echoed after the command, 
+	 * the command exit status is set on the command as well (see CliConnection.handleCliCommands)
+	 * 
+	 * Note:
+	 * The sentinel is written using echo, so the remote terminal must be a shell (sh, bash etc.)
+	 * The end of line prompt is not waited for, the terminal output that was not read (the prompt after the last sentinel) is dropped before each command
+	 * 
+	 * @param useEndOfOutputSentinel - true for using a sentinel instead of the end of line prompt
+	 */
+	public void setUseEndOfOutputSentinel(boolean useEndOfOutputSentinel) {
+		this.useEndOfOutputSentinel = useEndOfOutputSentinel;
+	}
+	
 	/**
 	 * @return the last known output a CLI command had
 	 */
@@ -0,0 +1,313 @@
+package com.qualiycode.remote_cli_connection.ssh;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.Session;
+
+/**
+ * This class holds an authenticated SSH session that can be shared by several SSH CLI connections
+ * 
+ * Each connection opened by this session runs on its own SSH channel (with its own prompts and reading state),
+ * so running commands in parallel on the same host costs a channel open instead of a full login.
+ * 
+ * Note:
+ * The number of channels per session is limited by the SSH server (OpenSSH MaxSessions, default is 10)
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class SshCliSession {
+
+	protected final static Logger log = LoggerFactory.getLogger(SshCliSession.class);
+	
+	protected String username = null;
+	protected String password = null;
+	protected String ip = null;
+	protected int port = 22;
+	
+	/**
+	 * Hold the connect timeout which is the max time we allow for connect function 
+	 */
+	protected int connectTimeout = 30000;
+	
+	/**
+	 * Hold the number of retries we do when trying to connect 
+	 */
+	protected int numberOfRetries = 3;
+	
+	/**
+	 * Limits the number of SSH handshakes (key exchange and authentication) running at the same time, 
+	 * can be shared by many sessions (optional)
+	 */
+	protected Semaphore handshakePermits = null;
+	
+	/**
+	 * The interval (in milliseconds) between SSH keepalive messages, 0 means no keepalive messages are sent
+	 */
+	protected int serverAliveInterval = 0;
+	
+	/**
+	 * The number of keepalive messages that can be left unanswered before the session is considered dead
+	 */
+	protected int serverAliveCountMax = 3;
+	
+	/**
+	 * The algorithms (key exchange, cipher, MAC and compression) profile used when opening the session
+	 */
+	protected SshConnectionProfile profile = SshConnectionProfile.DEFAULT;
+	
+	/**
+	 * Holds the SSH session object 
+	 */
+	protected Session session;
+	
+	/**
+	 * @param username - connection user name
+	 * @param password - connection password
+	 * @param ip - host IP
+	 * @param port - connection port
+	 */
+	public SshCliSession(String username, String password, String ip, int port){
+		this.username = username;
+		this.password = password;
+		this.ip = ip;
+		this.port = port;
+	}
+	
+	/**
+	 * @param username - connection user name
+	 * @param password - connection password
+	 * @param ip - host IP
+	 */
+	public SshCliSession(String username, String password, String ip){
+		this(username, password, ip, 22);
+	}
+	
+	/**
+	 * This method opens the SSH session to the host
+	 * @return true if connection successful, false otherwise
+	 */
+	public boolean connect(){
+		int retry = 1;
+		while(retry <= numberOfRetries && !isConnected()){
+			log.info("Opening SSH session to: " + ip + ":" + port + ", Try #" + retry + ", User: " + username + ", Pass: ******");
+			doConnect();
+			retry ++;
+		}
+		
+		if(isConnected()){
+			log.info("SSH session opened successfully");
+		}else{
+			log.error("Unable to open SSH session to: " + ip + ", User = " + username);
+		}
+		return isConnected();
+	}
+	
+	/**
+	 * This method makes a single attempt to open the SSH session
+	 * @return true if connection successful, false otherwise
+	 */
+	protected boolean doConnect(){
+		boolean result = false;
+		try {
+			if(session != null){
+				session.disconnect();
+			}
+			JSch shell = new JSch();
+			session = shell.getSession(username, ip, port);
+			session.setUserInfo(new SshUserInfo(password));
+			//we set the retry to 1 because retries are managed by our caller
+			session.setConfig("MaxAuthTries","1");
+			if(profile != null){
+				profile.apply(session);
+			}
+			if(serverAliveInterval > 0){
+				//keepalive messages keep NAT and firewalls from dropping an idle session, and detect a dead session
+				session.setServerAliveInterval(serverAliveInterval);
+				session.setServerAliveCountMax(serverAliveCountMax);
+			}
+			if(handshakePermits == null){
+				handshake(session, connectTimeout);
+			}else{
+				//the key exchange is CPU heavy, so we limit the number of handshakes running at the same time
+				long startTime = System.currentTimeMillis();
+				if(!handshakePermits.tryAcquire(connectTimeout, TimeUnit.MILLISECONDS)){
+					throw new Exception("Timeout while waiting for a free handshake slot");
+				}
+				try {
+					handshake(session, (int)Math.max(1, connectTimeout - (System.currentTimeMillis() - startTime)));
+				} finally {
+					handshakePermits.release();
+				}
+			}
+			result = true;
+		} catch (Exception e) {
+			log.error("unable to open SSH session to " + ip, e);
+		}
+		return result;
+	}
+	
+	/**
+	 * This method runs the SSH handshake (key exchange and authentication) of the session
+	 * @param session - the session to connect
+	 * @param timeout - the max time (in milliseconds) we allow for the handshake
+	 * @throws Exception if the handshake failed
+	 */
+	protected void handshake(Session session, int timeout) throws Exception{
+		session.connect(timeout);
+	}
+	
+	/**
+	 * This method opens a new connection (on its own channel) over this session
+	 * @param shellType - the channel shell type
+	 * @param endLineStr - end line marker (usually #)
+	 * @return the connected connection
+	 * @throws Exception if the session is not connected or the connection failed
+	 */
+	public SshCliConnection openConnection(ShellType shellType, String endLineStr) throws Exception{
+		SshCliConnection connection = new SshCliConnection(this, shellType, endLineStr);
+		if(!connection.connect()){
+			throw new Exception("Unable to open SSH channel to: " + ip);
+		}
+		return connection;
+	}
+	
+	/**
+	 * This method opens a new shell connection (on its own channel) over this session
+	 * @param endLineStr - end line marker (usually #)
+	 * @return the connected connection
+	 * @throws Exception if the session is not connected or the connection failed
+	 */
+	public SshCliConnection openConnection(String endLineStr) throws Exception{
+		return openConnection(SshCliConnection.DEFAULT_SHELL_TYPE, endLineStr);
+	}
+	
+	/**
+	 * This method closes the SSH session (and all the connections opened over it)
+	 */
+	public void disconnect(){
+		if(session != null){
+			session.disconnect();
+			log.info("SSH session disconnected");
+		}
+	}
+	
+	/**
+	 * @return true if the SSH session is connected
+	 */
+	public boolean isConnected(){
+		return session != null && session.isConnected();
+	}
+	
+	/**
+	 * @return the SSH session object
+	 */
+	public Session getSession(){
+		return session;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public String getIp() {
+		return ip;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * @return the max time (in milliseconds) we allow for opening the session
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * @param connectTimeout - the max time (in milliseconds) we allow for opening the session
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * @return the number of retries we do when trying to connect
+	 */
+	public int getNumberOfRetries() {
+		return numberOfRetries;
+	}
+
+	/**
+	 * @param numberOfRetries - the number of retries we do when trying to connect
+	 */
+	public void setNumberOfRetries(int numberOfRetries) {
+		this.numberOfRetries = numberOfRetries;
+	}
+
+	/**
+	 * @return the algorithms profile used when opening the session
+	 */
+	public SshConnectionProfile getProfile() {
+		return profile;
+	}
+
+	/**
+	 * @param profile - the algorithms (key exchange, cipher, MAC and compression) profile used when opening the session (takes effect on the next connect)
+	 */
+	public void setProfile(SshConnectionProfile profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * @return the interval (in milliseconds) between SSH keepalive messages (0 means no keepalive messages are sent)
+	 */
+	public int getServerAliveInterval() {
+		return serverAliveInterval;
+	}
+
+	/**
+	 * @param serverAliveInterval - the interval (in milliseconds) between SSH keepalive messages (0 means no keepalive messages are sent)
+	 */
+	public void setServerAliveInterval(int serverAliveInterval) {
+		this.serverAliveInterval = serverAliveInterval;
+	}
+
+	/**
+	 * @return the number of keepalive messages that can be left unanswered before the session is considered dead
+	 */
+	public int getServerAliveCountMax() {
+		return serverAliveCountMax;
+	}
+
+	/**
+	 * @param serverAliveCountMax - the number of keepalive messages that can be left unanswered before the session is considered dead
+	 */
+	public void setServerAliveCountMax(int serverAliveCountMax) {
+		this.serverAliveCountMax = serverAliveCountMax;
+	}
+
+	/**
+	 * @return the semaphore that limits the number of SSH handshakes running at the same time (null if not limited)
+	 */
+	public Semaphore getHandshakePermits() {
+		return handshakePermits;
+	}
+
+	/**
+	 * @param handshakePermits - the semaphore that limits the number of SSH handshakes running at the same time (share it between the sessions to limit)
+	 */
+	public void setHandshakePermits(Semaphore handshakePermits) {
+		this.handshakePermits = handshakePermits;
+	}
+}
@@ -0,0 +1,111 @@
+package com.qualiycode.remote_cli_connection.ssh;
+
+import com.jcraft.jsch.Session;
+
+/**
+ * Holds the SSH algorithm profiles (key exchange, cipher, MAC and compression) used when opening an SSH session
+ *
+ * Each profile only changes the order of preference (and the compression), the other algorithms supported by JSCH stay
+ * in the lists, so a server that does not support the preferred algorithm still negotiates one of the others
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public enum SshConnectionProfile {
+
+	/**
+	 * - The JSCH default algorithms (nothing is changed)
+	 */
+	DEFAULT(null, null, null, null, 0),
+
+	/**
+	 * - Elliptic curve key exchange (cheaper than the Diffie-Hellman groups and needs fewer round trips than group exchange)
+	 * - AES-128 CTR cipher and HMAC-SHA1 (the cheapest secure algorithms supported by JSCH)
+	 * - No compression (compressing adds latency and CPU to each packet)
+	 * Best for interactive sessions running many short commands, and for many sessions on the same machine where CPU is the bottleneck
+	 */
+	LOW_LATENCY(Algorithms.FAST_KEX, Algorithms.FAST_CIPHER, Algorithms.FAST_MAC, "none", 0),
+
+	/**
+	 * - Like LOW_LATENCY, with zlib compression (starts after the authentication)
+	 * Best for verbose text outputs (logs, listings) over slow or remote links, costs CPU on both sides
+	 */
+	HIGH_THROUGHPUT(Algorithms.FAST_KEX, Algorithms.FAST_CIPHER, Algorithms.FAST_MAC, "zlib@openssh.com,zlib,none", 6);
+
+	/**
+	 * The algorithm lists of the profiles (all the algorithms supported by JSCH, the fastest first)
+	 */
+	private static class Algorithms{
+		static final String FAST_KEX = "ecdh-sha2-nistp256,ecdh-sha2-nistp384,ecdh-sha2-nistp521,diffie-hellman-group14-sha1,"
+				+ "diffie-hellman-group-exchange-sha256,diffie-hellman-group-exchange-sha1,diffie-hellman-group1-sha1";
+		static final String FAST_CIPHER = "aes128-ctr,aes192-ctr,aes256-ctr,aes128-cbc,aes192-cbc,aes256-cbc,3des-ctr,3des-cbc,blowfish-cbc";
+		static final String FAST_MAC = "hmac-sha1,hmac-sha2-256,hmac-sha1-96,hmac-md5,hmac-md5-96";
+	}
+
+	private final String kex;
+	private final String cipher;
+	private final String mac;
+	private final String compression;
+	private final int compressionLevel;
+
+	private SshConnectionProfile(String kex, String cipher, String mac, String compression, int compressionLevel) {
+		this.kex = kex;
+		this.cipher = cipher;
+		this.mac = mac;
+		this.compression = compression;
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * This method sets the profile algorithms on a session (must be called before the session connects)
+	 * @param session - the SSH session
+	 */
+	public void apply(Session session){
+		if(kex != null){
+			session.setConfig("kex", kex);
+		}
+		if(cipher != null){
+			session.setConfig("cipher.s2c", cipher);
+			session.setConfig("cipher.c2s", cipher);
+		}
+		if(mac != null){
+			session.setConfig("mac.s2c", mac);
+			session.setConfig("mac.c2s", mac);
+		}
+		if(compression != null){
+			session.setConfig("compression.s2c", compression);
+			session.setConfig("compression.c2s", compression);
+			if(compressionLevel > 0){
+				session.setConfig("compression_level", String.valueOf(compressionLevel));
+			}
+		}
+	}
+
+	/**
+	 * @return the key exchange algorithms in order of preference (null means the JSCH default)
+	 */
+	public String getKex() {
+		return kex;
+	}
+
+	/**
+	 * @return the ciphers in order of preference (null means the JSCH default)
+	 */
+	public String getCipher() {
+		return cipher;
+	}
+
+	/**
+	 * @return the MAC algorithms in order of preference (null means the JSCH default)
+	 */
+	public String getMac() {
+		return mac;
+	}
+
+	/**
+	 * @return the compression algorithms in order of preference (null means the JSCH default)
+	 */
+	public String getCompression() {
+		return compression;
+	}
+}
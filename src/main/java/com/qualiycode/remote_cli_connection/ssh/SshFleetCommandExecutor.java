@@ -0,0 +1,72 @@
+package com.qualiycode.remote_cli_connection.ssh;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.qualiycode.remote_cli_connection.CliConnection;
+import com.qualiycode.remote_cli_connection.Prompt;
+import com.qualiycode.remote_cli_connection.fleet.FleetCommandExecutor;
+
+/**
+ * This class runs a CLI command on many hosts in parallel using SSH CLI connections
+ * 
+ * All the hosts are connected with the same user, password, port, shell type and prompts
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class SshFleetCommandExecutor extends FleetCommandExecutor {
+
+	protected String username;
+	protected String password;
+	protected int port;
+	protected ShellType shellType;
+	protected String endLineStr;
+	
+	/**
+	 * Holds additional prompts to add to each connection 
+	 */
+	protected List<Prompt> prompts = new ArrayList<>();
+	
+	/**
+	 * @param username - connection user name
+	 * @param password - connection password
+	 * @param port - connection port
+	 * @param shellType - server shell type
+	 * @param endLineStr - end line marker (usually #)
+	 */
+	public SshFleetCommandExecutor(String username, String password, int port, ShellType shellType, String endLineStr){
+		this.username = username;
+		this.password = password;
+		this.port = port;
+		this.shellType = shellType;
+		this.endLineStr = endLineStr;
+	}
+	
+	/**
+	 * @param username - connection user name
+	 * @param password - connection password
+	 * @param endLineStr - end line marker (usually #)
+	 */
+	public SshFleetCommandExecutor(String username, String password, String endLineStr){
+		this(username, password, 22, SshCliConnection.DEFAULT_SHELL_TYPE, endLineStr);
+	}
+	
+	/**
+	 * This function adds prompts to be used by each connection
+	 * @param prompt - the prompt to add
+	 */
+	public void addPrompt(Prompt prompt){
+		prompts.add(prompt);
+	}
+
+	@Override
+	protected CliConnection createConnection(String host) throws Exception {
+		SshCliConnection connection = new SshCliConnection(username, password, host, port, shellType, endLineStr);
+		for(Prompt prompt : prompts){
+			connection.addPrompt(prompt);
+		}
+		return connection;
+	}
+
+}
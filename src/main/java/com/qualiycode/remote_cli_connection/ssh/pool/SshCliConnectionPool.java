@@ -0,0 +1,555 @@
+package com.qualiycode.remote_cli_connection.ssh.pool;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.qualiycode.remote_cli_connection.Prompt;
+import com.qualiycode.remote_cli_connection.ssh.SshCliConnection;
+
+/**
+ * This class holds a pool of connected SSH CLI connections, so connections can be reused instead of connecting for every task
+ *
+ * Usage:
+ * - borrow() returns a connected connection for the key (an idle one if exists, otherwise a new one)
+ * - returnConnection() gives the connection back to the pool when the task is over
+ * - invalidate() closes a connection that should not be reused (for example after a command failure)
+ *
+ * Note:
+ * Connections that were idle for more than the idle timeout are disconnected and removed from the pool
+ * The terminal output a previous user did not read is dropped when an idle connection is borrowed
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public class SshCliConnectionPool {
+
+	protected final static Logger log = LoggerFactory.getLogger(SshCliConnectionPool.class);
+
+	/**
+	 * The max number of connections (idle and borrowed) to a single host (IP)
+	 */
+	protected int maxConnectionsPerHost = 8;
+
+	/**
+	 * The max number of connections (idle and borrowed) in the pool
+	 */
+	protected int maxConnections = 64;
+
+	/**
+	 * The time (in milliseconds) a connection can stay idle in the pool before it is disconnected (0 means never)
+	 */
+	protected long idleTimeout = 5 * 60 * 1000;
+
+	/**
+	 * The max time (in milliseconds) to wait for a free connection slot when the pool limits are reached
+	 */
+	protected long borrowTimeout = 30000;
+
+	/**
+	 * Holds the idle connections of each key (the most recently returned connection is first)
+	 */
+	private final Map<SshConnectionKey, Deque<IdleConnection>> idleConnections = new HashMap<>();
+
+	/**
+	 * Holds the key of each borrowed connection
+	 */
+	private final Map<SshCliConnection, SshConnectionKey> borrowedConnections = new IdentityHashMap<>();
+
+	/**
+	 * Holds the number of connections (idle, borrowed and connecting) to each host
+	 */
+	private final Map<String, Integer> hostConnections = new HashMap<>();
+
+	/**
+	 * The number of connections (idle, borrowed and connecting) in the pool
+	 */
+	private int totalConnections = 0;
+
+	private boolean closed = false;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition slotReleased = lock.newCondition();
+
+	private ScheduledExecutorService evictor = null;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong validationFailures = new AtomicLong();
+	private final AtomicLong connectFailures = new AtomicLong();
+
+	/**
+	 * This method returns a connected connection for the key, the connection must be returned to the pool once the task is over
+	 * @param key - identifies the connection
+	 * @return a connected connection
+	 * @throws Exception if unable to connect or if no connection slot was freed within the borrow timeout
+	 */
+	public SshCliConnection borrow(SshConnectionKey key) throws Exception{
+		long deadline = System.currentTimeMillis() + borrowTimeout;
+		List<SshCliConnection> toClose = new ArrayList<>();
+		SshCliConnection reused = null;
+		lock.lock();
+		try {
+			while(true){
+				if(closed){
+					throw new Exception("Connections pool is closed");
+				}
+
+				//reusing an idle connection
+				Deque<IdleConnection> idle = idleConnections.get(key);
+				while(idle != null && !idle.isEmpty()){
+					SshCliConnection connection = idle.pollFirst().connection;
+					if(isAlive(connection)){
+						borrowedConnections.put(connection, key);
+						hits.incrementAndGet();
+						reused = connection;
+						break;
+					}
+					validationFailures.incrementAndGet();
+					log.info("Dropping dead pooled connection to " + key);
+					releaseSlot(key);
+					toClose.add(connection);
+				}
+
+				if(reused != null){
+					break;
+				}
+
+				//making room by closing an idle connection of another key
+				if(totalConnections >= maxConnections && hostConnectionsCount(key.getIp()) < maxConnectionsPerHost){
+					SshCliConnection evicted = evictOldestIdleConnection();
+					if(evicted != null){
+						toClose.add(evicted);
+					}
+				}
+
+				if(totalConnections < maxConnections && hostConnectionsCount(key.getIp()) < maxConnectionsPerHost){
+					misses.incrementAndGet();
+					reserveSlot(key);
+					break;
+				}
+
+				long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0){
+					throw new Exception("Timeout while waiting for a free connection to " + key);
+				}
+				slotReleased.await(remaining, TimeUnit.MILLISECONDS);
+			}
+		} finally {
+			lock.unlock();
+			//disconnecting may block on the network, so it is done after releasing the lock
+			for(SshCliConnection connection : toClose){
+				closeConnection(connection);
+			}
+		}
+
+		if(reused != null){
+			//the output the previous user did not read must not be the start of our first command output
+			try {
+				reused.discardPendingOutput();
+			} catch (Exception e) {
+				log.error("Unable to discard the pending output of pooled connection to " + key, e);
+			}
+			return reused;
+		}
+
+		//connecting outside of the lock, the slot is already reserved for us
+		SshCliConnection connection = null;
+		try {
+			connection = createConnection(key);
+			if(!connection.connect()){
+				throw new Exception("Unable to connect to " + key);
+			}
+		} catch (Exception e) {
+			connectFailures.incrementAndGet();
+			lock.lock();
+			try {
+				releaseSlot(key);
+			} finally {
+				lock.unlock();
+			}
+			if(connection != null){
+				closeConnection(connection);
+			}
+			throw e;
+		}
+
+		boolean poolClosed;
+		lock.lock();
+		try {
+			poolClosed = closed;
+			if(poolClosed){
+				//the pool was closed while we were connecting
+				releaseSlot(key);
+			}else{
+				borrowedConnections.put(connection, key);
+			}
+		} finally {
+			lock.unlock();
+		}
+		if(poolClosed){
+			closeConnection(connection);
+			throw new Exception("Connections pool is closed");
+		}
+		return connection;
+	}
+
+	/**
+	 * This method returns a borrowed connection to the pool
+	 *
+	 * Note:
+	 * Connections that are no longer connected are not kept in the pool
+	 *
+	 * @param connection - the borrowed connection
+	 */
+	public void returnConnection(SshCliConnection connection){
+		boolean close = false;
+		lock.lock();
+		try {
+			SshConnectionKey key = borrowedConnections.remove(connection);
+			if(key == null){
+				log.error("Returned connection was not borrowed from this pool");
+				return;
+			}
+			if(closed || !isAlive(connection)){
+				releaseSlot(key);
+				close = true;
+			}else{
+				Deque<IdleConnection> idle = idleConnections.get(key);
+				if(idle == null){
+					idle = new ArrayDeque<>();
+					idleConnections.put(key, idle);
+				}
+				idle.addFirst(new IdleConnection(connection, System.currentTimeMillis()));
+				slotReleased.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+		if(close){
+			closeConnection(connection);
+		}
+	}
+
+	/**
+	 * This method disconnects a borrowed connection and removes it from the pool
+	 * @param connection - the borrowed connection
+	 */
+	public void invalidate(SshCliConnection connection){
+		lock.lock();
+		try {
+			SshConnectionKey key = borrowedConnections.remove(connection);
+			if(key != null){
+				releaseSlot(key);
+			}
+		} finally {
+			lock.unlock();
+		}
+		closeConnection(connection);
+	}
+
+	/**
+	 * This method disconnects the connections that were idle for more than the idle timeout
+	 * @return the number of connections disconnected
+	 */
+	public int evictIdleConnections(){
+		if(idleTimeout <= 0){
+			return 0;
+		}
+		long oldestAllowed = System.currentTimeMillis() - idleTimeout;
+		List<SshCliConnection> toClose = new ArrayList<>();
+		lock.lock();
+		try {
+			Iterator<Map.Entry<SshConnectionKey, Deque<IdleConnection>>> keys = idleConnections.entrySet().iterator();
+			while(keys.hasNext()){
+				Map.Entry<SshConnectionKey, Deque<IdleConnection>> entry = keys.next();
+				Deque<IdleConnection> idle = entry.getValue();
+				//the oldest connections are at the end
+				while(!idle.isEmpty() && idle.peekLast().idleSince < oldestAllowed){
+					toClose.add(idle.pollLast().connection);
+					releaseSlot(entry.getKey());
+					evictions.incrementAndGet();
+				}
+				if(idle.isEmpty()){
+					keys.remove();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		for(SshCliConnection connection : toClose){
+			closeConnection(connection);
+		}
+		if(!toClose.isEmpty()){
+			log.info("Evicted " + toClose.size() + " idle connections");
+		}
+		return toClose.size();
+	}
+
+	/**
+	 * This method starts a background thread that evicts idle connections periodically
+	 */
+	public void startEvictor(){
+		lock.lock();
+		try {
+			if(evictor != null || idleTimeout <= 0 || closed){
+				return;
+			}
+			evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "ssh-pool-evictor");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			long period = Math.max(1000, idleTimeout / 2);
+			evictor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						evictIdleConnections();
+					} catch (Exception e) {
+						log.error("Error while evicting idle connections", e);
+					}
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * This method closes the pool: idle connections are disconnected now, borrowed connections are disconnected when returned
+	 */
+	public void close(){
+		List<SshCliConnection> toClose = new ArrayList<>();
+		lock.lock();
+		try {
+			closed = true;
+			if(evictor != null){
+				evictor.shutdownNow();
+				evictor = null;
+			}
+			for(Map.Entry<SshConnectionKey, Deque<IdleConnection>> entry : idleConnections.entrySet()){
+				for(IdleConnection idle : entry.getValue()){
+					toClose.add(idle.connection);
+					releaseSlot(entry.getKey());
+				}
+			}
+			idleConnections.clear();
+			slotReleased.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		for(SshCliConnection connection : toClose){
+			closeConnection(connection);
+		}
+	}
+
+	/**
+	 * This method creates a new (not connected) connection for the key, override it to create other connection types
+	 * @param key - identifies the connection
+	 * @return the new connection
+	 * @throws Exception
+	 */
+	protected SshCliConnection createConnection(SshConnectionKey key) throws Exception{
+		SshCliConnection connection = new SshCliConnection(key.getUsername(), key.getPassword(), key.getIp(), key.getPort(), key.getShellType(), key.getEndLineStr());
+		for(Prompt prompt : key.getPrompts()){
+			connection.addPrompt(prompt);
+		}
+		return connection;
+	}
+
+	private boolean isAlive(SshCliConnection connection){
+		try {
+			return connection.isConnected();
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	private void closeConnection(SshCliConnection connection){
+		try {
+			connection.disconnect();
+		} catch (Exception e) {
+			log.error("Error while disconnecting pooled connection", e);
+		}
+	}
+
+	private int hostConnectionsCount(String ip){
+		Integer count = hostConnections.get(ip);
+		return count == null ? 0 : count;
+	}
+
+	private void reserveSlot(SshConnectionKey key){
+		totalConnections++;
+		hostConnections.put(key.getIp(), hostConnectionsCount(key.getIp()) + 1);
+	}
+
+	private void releaseSlot(SshConnectionKey key){
+		totalConnections--;
+		int count = hostConnectionsCount(key.getIp()) - 1;
+		if(count <= 0){
+			hostConnections.remove(key.getIp());
+		}else{
+			hostConnections.put(key.getIp(), count);
+		}
+		slotReleased.signalAll();
+	}
+
+	/**
+	 * Removes the connection that is idle for the longest time from the pool (must be called while holding the lock)
+	 * @return the removed connection, the caller must close it after releasing the lock (null if there are no idle connections)
+	 */
+	private SshCliConnection evictOldestIdleConnection(){
+		SshConnectionKey oldestKey = null;
+		IdleConnection oldest = null;
+		for(Map.Entry<SshConnectionKey, Deque<IdleConnection>> entry : idleConnections.entrySet()){
+			IdleConnection candidate = entry.getValue().peekLast();
+			if(candidate != null && (oldest == null || candidate.idleSince < oldest.idleSince)){
+				oldest = candidate;
+				oldestKey = entry.getKey();
+			}
+		}
+		if(oldest != null){
+			idleConnections.get(oldestKey).pollLast();
+			releaseSlot(oldestKey);
+			evictions.incrementAndGet();
+			return oldest.connection;
+		}
+		return null;
+	}
+
+	/**
+	 * @return the number of borrows that reused an idle connection
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of borrows that opened a new connection
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of idle connections that were disconnected by the pool
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return the number of idle connections that were found disconnected when borrowed
+	 */
+	public long getValidationFailures() {
+		return validationFailures.get();
+	}
+
+	/**
+	 * @return the number of new connections that failed to connect
+	 */
+	public long getConnectFailures() {
+		return connectFailures.get();
+	}
+
+	/**
+	 * @return the number of connections (idle, borrowed and connecting) in the pool
+	 */
+	public int getTotalConnections(){
+		lock.lock();
+		try {
+			return totalConnections;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of borrowed connections
+	 */
+	public int getBorrowedConnections(){
+		lock.lock();
+		try {
+			return borrowedConnections.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getMaxConnectionsPerHost() {
+		return maxConnectionsPerHost;
+	}
+
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * @return the time (in milliseconds) a connection can stay idle in the pool before it is disconnected
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * @param idleTimeout - the time (in milliseconds) a connection can stay idle in the pool before it is disconnected (0 means never)
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * @return the max time (in milliseconds) to wait for a free connection slot
+	 */
+	public long getBorrowTimeout() {
+		return borrowTimeout;
+	}
+
+	/**
+	 * @param borrowTimeout - the max time (in milliseconds) to wait for a free connection slot
+	 */
+	public void setBorrowTimeout(long borrowTimeout) {
+		this.borrowTimeout = borrowTimeout;
+	}
+
+	/**
+	 * Holds an idle connection and the time it was returned to the pool
+	 */
+	private static class IdleConnection{
+		final SshCliConnection connection;
+		final long idleSince;
+
+		IdleConnection(SshCliConnection connection, long idleSince){
+			this.connection = connection;
+			this.idleSince = idleSince;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package com.qualiycode.remote_cli_connection.ssh.pool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.qualiycode.remote_cli_connection.Prompt;
+import com.qualiycode.remote_cli_connection.ssh.ShellType;
+
+/**
+ * This class identifies the SSH CLI connections that can be reused for each other in the connections pool
+ * 
+ * Connections are interchangeable if they have the same IP, port, user name, password, shell type and prompts.
+ * 
+ * Note:
+ * The password is part of the connection identity, otherwise a caller with a wrong password could borrow
+ * a connection that was opened (and authenticated) by another caller
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class SshConnectionKey {
+
+	private final String username;
+	private final String password;
+	private final String ip;
+	private final int port;
+	private final ShellType shellType;
+	private final String endLineStr;
+	private final List<Prompt> prompts;
+	
+	/**
+	 * Holds a description of the prompts used for comparing keys 
+	 */
+	private final List<String> promptsSignature;
+	
+	/**
+	 * @param username - connection user name
+	 * @param password - connection password
+	 * @param ip - host IP
+	 * @param port - connection port
+	 * @param shellType - server shell type
+	 * @param endLineStr - end line marker (usually #)
+	 * @param prompts - additional prompts to add to the connection (can be null)
+	 */
+	public SshConnectionKey(String username, String password, String ip, int port, ShellType shellType, String endLineStr, List<Prompt> prompts){
+		this.username = username;
+		this.password = password;
+		this.ip = ip;
+		this.port = port;
+		this.shellType = shellType;
+		this.endLineStr = endLineStr;
+		this.prompts = prompts == null ? Collections.<Prompt>emptyList() : Collections.unmodifiableList(new ArrayList<>(prompts));
+		
+		List<String> signature = new ArrayList<>();
+		for(Prompt prompt : this.prompts){
+			signature.add(prompt.getPrompt() + "|" + prompt.isRegularExpression() + "|" + prompt.isMarkEndOfOutput() + "|" + prompt.getResponseString() + "|" + prompt.isAddEnter());
+		}
+		promptsSignature = signature;
+	}
+	
+	/**
+	 * @param username - connection user name
+	 * @param password - connection password
+	 * @param ip - host IP
+	 * @param endLineStr - end line marker (usually #)
+	 */
+	public SshConnectionKey(String username, String password, String ip, String endLineStr){
+		this(username, password, ip, 22, ShellType.SHELL, endLineStr, null);
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getPassword() {
+		return password;
+	}
+
+	public String getIp() {
+		return ip;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public ShellType getShellType() {
+		return shellType;
+	}
+
+	public String getEndLineStr() {
+		return endLineStr;
+	}
+
+	/**
+	 * @return the additional prompts of the connection
+	 */
+	public List<Prompt> getPrompts() {
+		return prompts;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = ip == null ? 0 : ip.hashCode();
+		result = 31 * result + port;
+		result = 31 * result + (username == null ? 0 : username.hashCode());
+		result = 31 * result + (password == null ? 0 : password.hashCode());
+		result = 31 * result + (shellType == null ? 0 : shellType.hashCode());
+		result = 31 * result + (endLineStr == null ? 0 : endLineStr.hashCode());
+		result = 31 * result + promptsSignature.hashCode();
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj){
+			return true;
+		}
+		if(!(obj instanceof SshConnectionKey)){
+			return false;
+		}
+		SshConnectionKey other = (SshConnectionKey) obj;
+		return port == other.port 
+				&& equals(ip, other.ip) 
+				&& equals(username, other.username) 
+				&& equals(password, other.password) 
+				&& shellType == other.shellType 
+				&& equals(endLineStr, other.endLineStr) 
+				&& promptsSignature.equals(other.promptsSignature);
+	}
+	
+	private static boolean equals(Object a, Object b){
+		return a == null ? b == null : a.equals(b);
+	}
+
+	@Override
+	public String toString() {
+		return username + "@" + ip + ":" + port + " (" + shellType + ")";
+	}
+}
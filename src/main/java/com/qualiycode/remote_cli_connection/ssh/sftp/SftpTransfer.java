@@ -0,0 +1,530 @@
+package com.qualiycode.remote_cli_connection.ssh.sftp;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jcraft.jsch.ChannelSftp;
+import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
+import com.jcraft.jsch.SftpProgressMonitor;
+import com.qualiycode.remote_cli_connection.CliExecutors;
+import com.qualiycode.remote_cli_connection.ssh.ShellType;
+
+/**
+ * This class transfers files and directory trees over SFTP, on an SSH session that is already connected (see SshCliConnection.openSftpTransfer)
+ *
+ * - Files are streamed between the local FileChannel and the SFTP channel, they are never loaded to memory
+ * - Large files are downloaded in parallel ranges, each range on its own SFTP channel and written to its position in the local file
+ * - The files of a directory tree are transferred in parallel
+ * - The number of SFTP channels open at the same time is limited by maxChannels, idle channels are reused
+ *
+ * Note:
+ * Uploads are not split into ranges: JSCH can not open a remote file for writing at an offset without truncating or appending to it,
+ * so each uploaded file uses a single channel (the files of a tree are still uploaded in parallel)
+ * SSH servers limit the number of channels per session (OpenSSH MaxSessions is 10 by default)
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public class SftpTransfer implements AutoCloseable {
+
+	protected final static Logger log = LoggerFactory.getLogger(SftpTransfer.class);
+
+	/**
+	 * The default max number of SFTP channels open at the same time
+	 */
+	public static final int DEFAULT_MAX_CHANNELS = 4;
+
+	/**
+	 * The size (in bytes) of the buffer used for copying a range to the local file
+	 */
+	protected static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The SSH session the SFTP channels are opened on
+	 */
+	protected final Session session;
+
+	/**
+	 * The max number of SFTP channels open at the same time
+	 */
+	protected final int maxChannels;
+
+	/**
+	 * Files smaller than this size (in bytes) are downloaded on a single channel
+	 */
+	protected long parallelThreshold = 32L * 1024 * 1024;
+
+	/**
+	 * The min size (in bytes) of a range of a file downloaded in parallel
+	 */
+	protected long minRangeSize = 8L * 1024 * 1024;
+
+	private final Semaphore channelPermits;
+	private final ConcurrentLinkedQueue<ChannelSftp> idleChannels = new ConcurrentLinkedQueue<>();
+	private volatile boolean closed = false;
+
+	/**
+	 * @param session - a connected SSH session
+	 */
+	public SftpTransfer(Session session){
+		this(session, DEFAULT_MAX_CHANNELS);
+	}
+
+	/**
+	 * @param session - a connected SSH session
+	 * @param maxChannels - the max number of SFTP channels open at the same time
+	 */
+	public SftpTransfer(Session session, int maxChannels){
+		this.session = session;
+		this.maxChannels = Math.max(1, maxChannels);
+		this.channelPermits = new Semaphore(this.maxChannels);
+	}
+
+	/**
+	 * This method uploads a file
+	 * @param localFile - the local file to upload
+	 * @param remoteFile - the remote file path (overwritten if it exists)
+	 * @return the transfer result
+	 * @throws Exception if the transfer failed
+	 */
+	public SftpTransferResult upload(Path localFile, String remoteFile) throws Exception{
+		SftpTransferResult result = new SftpTransferResult();
+		try {
+			uploadFile(localFile, remoteFile, result);
+		} finally {
+			result.finished();
+		}
+		return result;
+	}
+
+	/**
+	 * This method downloads a file, large files are downloaded in parallel ranges
+	 * @param remoteFile - the remote file to download
+	 * @param localFile - the local file path (overwritten if it exists)
+	 * @return the transfer result
+	 * @throws Exception if the transfer failed
+	 */
+	public SftpTransferResult download(String remoteFile, Path localFile) throws Exception{
+		SftpTransferResult result = new SftpTransferResult();
+		ExecutorService executor = CliExecutors.newCommandExecutor("sftp");
+		try {
+			downloadFile(remoteFile, localFile, stat(remoteFile).getSize(), result, executor);
+		} finally {
+			executor.shutdownNow();
+			result.finished();
+		}
+		return result;
+	}
+
+	/**
+	 * This method uploads a directory tree, the remote directories are created when needed
+	 *
+	 * Note:
+	 * A file that failed does not stop the transfer, the failed files are listed in the result
+	 *
+	 * @param localDirectory - the local directory to upload
+	 * @param remoteDirectory - the remote directory the tree is uploaded to
+	 * @return the transfer result
+	 * @throws Exception if the tree could not be listed or the remote directories could not be created
+	 */
+	public SftpTransferResult uploadDirectory(final Path localDirectory, final String remoteDirectory) throws Exception{
+		SftpTransferResult result = new SftpTransferResult();
+		List<Path> paths;
+		try (Stream<Path> walk = Files.walk(localDirectory)) {
+			paths = walk.sorted().collect(Collectors.toList());
+		}
+
+		List<FileJob> jobs = new ArrayList<>();
+		ChannelSftp channel = acquireChannel();
+		boolean healthy = false;
+		try {
+			for(Path path : paths){
+				String remotePath = remotePath(remoteDirectory, localDirectory.relativize(path));
+				if(Files.isDirectory(path)){
+					mkdirs(channel, remotePath);
+				}else if(Files.isRegularFile(path)){
+					jobs.add(new FileJob(remotePath, path, Files.size(path)));
+				}
+			}
+			healthy = true;
+		} finally {
+			releaseChannel(channel, healthy);
+		}
+
+		runJobs(jobs, true, result);
+		return result;
+	}
+
+	/**
+	 * This method downloads a directory tree, the local directories are created when needed
+	 *
+	 * Note:
+	 * A file that failed does not stop the transfer, the failed files are listed in the result
+	 * Only directories and regular files are downloaded (links and special files are skipped)
+	 *
+	 * @param remoteDirectory - the remote directory to download
+	 * @param localDirectory - the local directory the tree is downloaded to
+	 * @return the transfer result
+	 * @throws Exception if the tree could not be listed or the local directories could not be created
+	 */
+	public SftpTransferResult downloadDirectory(String remoteDirectory, Path localDirectory) throws Exception{
+		SftpTransferResult result = new SftpTransferResult();
+		List<FileJob> jobs = new ArrayList<>();
+		ChannelSftp channel = acquireChannel();
+		boolean healthy = false;
+		try {
+			listTree(channel, remoteDirectory, localDirectory, jobs);
+			healthy = true;
+		} finally {
+			releaseChannel(channel, healthy);
+		}
+
+		runJobs(jobs, false, result);
+		return result;
+	}
+
+	/**
+	 * This method closes the idle SFTP channels, channels in use are closed once their transfer ends (the SSH session stays open)
+	 */
+	@Override
+	public void close(){
+		closed = true;
+		ChannelSftp channel;
+		while((channel = idleChannels.poll()) != null){
+			channel.disconnect();
+		}
+	}
+
+	/**
+	 * This function returns the number of ranges a file is downloaded in
+	 * @param size - the file size (in bytes)
+	 * @return the number of ranges (1 means the file is downloaded on a single channel)
+	 */
+	protected int getRangeCount(long size){
+		if(size < parallelThreshold || maxChannels == 1){
+			return 1;
+		}
+		return (int)Math.max(1, Math.min(maxChannels, size / Math.max(1, minRangeSize)));
+	}
+
+	/**
+	 * This function returns an SFTP channel, an idle channel is reused or a new channel is opened
+	 * (waits while maxChannels channels are in use)
+	 * @return a connected SFTP channel
+	 * @throws Exception
+	 */
+	protected ChannelSftp acquireChannel() throws Exception{
+		if(closed){
+			throw new Exception("The SFTP transfer is closed");
+		}
+		channelPermits.acquire();
+		try {
+			ChannelSftp channel;
+			while((channel = idleChannels.poll()) != null){
+				if(channel.isConnected()){
+					return channel;
+				}
+			}
+			channel = (ChannelSftp) session.openChannel(ShellType.SFTP.toString());
+			channel.connect();
+			return channel;
+		} catch (Exception e) {
+			channelPermits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * This method returns a channel after its transfer ended
+	 * @param channel - the channel
+	 * @param healthy - false if the transfer failed (the channel is closed instead of reused)
+	 */
+	protected void releaseChannel(ChannelSftp channel, boolean healthy){
+		if(healthy && !closed && channel.isConnected()){
+			idleChannels.add(channel);
+		}else{
+			channel.disconnect();
+		}
+		channelPermits.release();
+	}
+
+	private SftpATTRS stat(String remoteFile) throws Exception{
+		ChannelSftp channel = acquireChannel();
+		boolean healthy = false;
+		try {
+			SftpATTRS attributes = channel.stat(remoteFile);
+			healthy = true;
+			return attributes;
+		} finally {
+			releaseChannel(channel, healthy);
+		}
+	}
+
+	private void uploadFile(Path localFile, String remoteFile, SftpTransferResult result) throws Exception{
+		ChannelSftp channel = acquireChannel();
+		boolean healthy = false;
+		try (FileChannel file = FileChannel.open(localFile, StandardOpenOption.READ);
+				InputStream in = Channels.newInputStream(file)) {
+			channel.put(in, remoteFile, new ProgressCounter(result), ChannelSftp.OVERWRITE);
+			healthy = true;
+		} finally {
+			releaseChannel(channel, healthy);
+		}
+		result.fileTransferred();
+	}
+
+	private void downloadFile(final String remoteFile, Path localFile, long size, final SftpTransferResult result, ExecutorService executor) throws Exception{
+		int ranges = getRangeCount(size);
+		try (final FileChannel file = FileChannel.open(localFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			if(ranges == 1){
+				downloadRange(remoteFile, file, 0, -1, result);
+			}else{
+				long rangeSize = (size + ranges - 1) / ranges;
+				List<Future<?>> futures = new ArrayList<>();
+				for(int i=0; i<ranges; i++){
+					final long start = i * rangeSize;
+					final long length = Math.min(rangeSize, size - start);
+					futures.add(executor.submit(() -> {
+						downloadRange(remoteFile, file, start, length, result);
+						return null;
+					}));
+				}
+				Exception failure = null;
+				for(Future<?> future : futures){
+					try {
+						future.get();
+					} catch (Exception e) {
+						if(failure == null){
+							failure = e;
+						}
+					}
+				}
+				if(failure != null){
+					throw failure;
+				}
+			}
+		}
+		result.fileTransferred();
+	}
+
+	/**
+	 * Copies a range of the remote file to the same position in the local file
+	 * @param length - the range length (-1 means until the end of the remote file)
+	 */
+	private void downloadRange(String remoteFile, FileChannel file, long start, long length, SftpTransferResult result) throws Exception{
+		ChannelSftp channel = acquireChannel();
+		boolean healthy = false;
+		try (InputStream in = channel.get(remoteFile, null, start)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long position = start;
+			long remaining = length < 0 ? Long.MAX_VALUE : length;
+			while(remaining > 0){
+				int count = in.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+				if(count < 0){
+					break;
+				}
+				ByteBuffer data = ByteBuffer.wrap(buffer, 0, count);
+				while(data.hasRemaining()){
+					position += file.write(data, position);
+				}
+				remaining -= count;
+				result.addBytes(count);
+			}
+			if(length >= 0 && remaining > 0){
+				throw new Exception("The remote file " + remoteFile + " ended before the end of the range " + start + "-" + (start + length));
+			}
+			healthy = true;
+		} finally {
+			releaseChannel(channel, healthy);
+		}
+	}
+
+	/**
+	 * Transfers the files in parallel, each worker takes the next file until no files are left
+	 */
+	private void runJobs(List<FileJob> jobs, final boolean upload, final SftpTransferResult result) throws InterruptedException{
+		final ConcurrentLinkedQueue<FileJob> pending = new ConcurrentLinkedQueue<>(jobs);
+		final ExecutorService executor = CliExecutors.newCommandExecutor("sftp");
+		try {
+			List<Future<?>> workers = new ArrayList<>();
+			int count = Math.min(maxChannels, jobs.size());
+			for(int i=0; i<count; i++){
+				workers.add(executor.submit(() -> {
+					FileJob job;
+					while((job = pending.poll()) != null){
+						try {
+							if(upload){
+								uploadFile(job.localPath, job.remotePath, result);
+							}else{
+								downloadFile(job.remotePath, job.localPath, job.size, result, executor);
+							}
+						} catch (Exception e) {
+							log.error("Unable to transfer " + job.remotePath + ": " + e.getMessage());
+							result.fileFailed(upload ? job.localPath.toString() : job.remotePath, e);
+						}
+					}
+				}));
+			}
+			for(Future<?> worker : workers){
+				try {
+					worker.get();
+				} catch (ExecutionException e) {
+					log.error("SFTP transfer worker failed", e);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			result.finished();
+		}
+		log.info("SFTP transfer is over, " + result);
+	}
+
+	/**
+	 * Lists the regular files of a remote directory tree and creates the local directories
+	 */
+	@SuppressWarnings("unchecked")
+	private void listTree(ChannelSftp channel, String remoteDirectory, Path localDirectory, List<FileJob> jobs) throws Exception{
+		Files.createDirectories(localDirectory);
+		Vector<ChannelSftp.LsEntry> entries = channel.ls(remoteDirectory);
+		for(ChannelSftp.LsEntry entry : entries){
+			String name = entry.getFilename();
+			if(name.equals(".") || name.equals("..")){
+				continue;
+			}
+			String remotePath = remoteDirectory.endsWith("/") ? remoteDirectory + name : remoteDirectory + "/" + name;
+			SftpATTRS attributes = entry.getAttrs();
+			if(attributes.isDir()){
+				listTree(channel, remotePath, localDirectory.resolve(name), jobs);
+			}else if(attributes.isReg()){
+				jobs.add(new FileJob(remotePath, localDirectory.resolve(name), attributes.getSize()));
+			}
+		}
+	}
+
+	/**
+	 * Creates a remote directory and its missing parents
+	 */
+	private static void mkdirs(ChannelSftp channel, String remoteDirectory) throws Exception{
+		StringBuilder path = new StringBuilder(remoteDirectory.startsWith("/") ? "/" : "");
+		for(String part : remoteDirectory.split("/")){
+			if(part.isEmpty()){
+				continue;
+			}
+			path.append(part);
+			try {
+				channel.stat(path.toString());
+			} catch (Exception e) {
+				channel.mkdir(path.toString());
+			}
+			path.append('/');
+		}
+	}
+
+	private static String remotePath(String remoteDirectory, Path relativePath){
+		StringBuilder path = new StringBuilder(remoteDirectory);
+		for(Path part : relativePath){
+			if(part.toString().isEmpty()){
+				continue;
+			}
+			if(path.length() == 0 || path.charAt(path.length() - 1) != '/'){
+				path.append('/');
+			}
+			path.append(part.toString());
+		}
+		return path.toString();
+	}
+
+	/**
+	 * @return the max number of SFTP channels open at the same time
+	 */
+	public int getMaxChannels() {
+		return maxChannels;
+	}
+
+	/**
+	 * @return the file size (in bytes) from which files are downloaded in parallel ranges
+	 */
+	public long getParallelThreshold() {
+		return parallelThreshold;
+	}
+
+	/**
+	 * @param parallelThreshold - the file size (in bytes) from which files are downloaded in parallel ranges
+	 */
+	public void setParallelThreshold(long parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * @return the min size (in bytes) of a range of a file downloaded in parallel
+	 */
+	public long getMinRangeSize() {
+		return minRangeSize;
+	}
+
+	/**
+	 * @param minRangeSize - the min size (in bytes) of a range of a file downloaded in parallel
+	 */
+	public void setMinRangeSize(long minRangeSize) {
+		this.minRangeSize = minRangeSize;
+	}
+
+	/**
+	 * A file of a directory tree transfer
+	 */
+	private static class FileJob{
+		final String remotePath;
+		final Path localPath;
+		final long size;
+
+		FileJob(String remotePath, Path localPath, long size){
+			this.remotePath = remotePath;
+			this.localPath = localPath;
+			this.size = size;
+		}
+	}
+
+	/**
+	 * Counts the bytes JSCH has transferred
+	 */
+	private static class ProgressCounter implements SftpProgressMonitor{
+		private final SftpTransferResult result;
+
+		ProgressCounter(SftpTransferResult result){
+			this.result = result;
+		}
+
+		@Override
+		public void init(int op, String src, String dest, long max) {
+		}
+
+		@Override
+		public boolean count(long count) {
+			result.addBytes(count);
+			return true;
+		}
+
+		@Override
+		public void end() {
+		}
+	}
+}
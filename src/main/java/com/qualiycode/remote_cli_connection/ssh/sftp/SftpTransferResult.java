@@ -0,0 +1,89 @@
+package com.qualiycode.remote_cli_connection.ssh.sftp;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class holds the result and the throughput metrics of an SFTP transfer (a single file or a directory tree)
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+public class SftpTransferResult {
+
+	private final long startNanos = System.nanoTime();
+	private volatile long durationNanos = -1;
+
+	private final LongAdder bytes = new LongAdder();
+	private final LongAdder files = new LongAdder();
+	private final Map<String, Exception> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+
+	void addBytes(long count){
+		bytes.add(count);
+	}
+
+	void fileTransferred(){
+		files.increment();
+	}
+
+	void fileFailed(String path, Exception e){
+		failures.put(path, e);
+	}
+
+	void finished(){
+		durationNanos = System.nanoTime() - startNanos;
+	}
+
+	/**
+	 * @return the number of bytes transferred
+	 */
+	public long getBytes() {
+		return bytes.sum();
+	}
+
+	/**
+	 * @return the number of files transferred
+	 */
+	public long getFiles() {
+		return files.sum();
+	}
+
+	/**
+	 * @return the files that failed (the path and the failure), empty if all the files were transferred
+	 */
+	public Map<String, Exception> getFailures() {
+		synchronized (failures) {
+			return new LinkedHashMap<>(failures);
+		}
+	}
+
+	/**
+	 * @return true if all the files were transferred
+	 */
+	public boolean isSuccessful() {
+		return failures.isEmpty();
+	}
+
+	/**
+	 * @return the transfer duration (in nanoseconds), the time so far if the transfer is still running
+	 */
+	public long getDurationNanos() {
+		return durationNanos >= 0 ? durationNanos : System.nanoTime() - startNanos;
+	}
+
+	/**
+	 * @return the transfer throughput (in bytes per second)
+	 */
+	public double getThroughput() {
+		long duration = getDurationNanos();
+		return duration <= 0 ? 0 : getBytes() * 1e9 / duration;
+	}
+
+	@Override
+	public String toString() {
+		return "files=" + getFiles() + ", bytes=" + getBytes() + ", failures=" + failures.size()
+				+ ", duration=" + (getDurationNanos() / 1000000) + "ms, throughput=" + String.format("%.1f", getThroughput() / (1024 * 1024)) + "MB/s";
+	}
+}
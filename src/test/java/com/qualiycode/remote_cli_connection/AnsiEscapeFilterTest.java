@@ -0,0 +1,84 @@
+package com.qualiycode.remote_cli_connection;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * This is a unit test class that test the removal of the terminal escape sequences
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class AnsiEscapeFilterTest {
+
+	private static final String ESC = "\u001b";
+	
+	private static String filter(AnsiEscapeFilter filter, String text){
+		char[] chars = text.toCharArray();
+		int kept = filter.filter(chars, 0, chars.length);
+		return new String(chars, 0, kept);
+	}
+	
+	@Test
+	public void colorsTest(){
+		AnsiEscapeFilter filter = new AnsiEscapeFilter();
+		Assert.assertEquals("dir run.sh\r\n", filter(filter, ESC + "[01;34mdir" + ESC + "[0m " + ESC + "[01;32mrun.sh" + ESC + "[0m" + ESC + "[K\r\n"));
+		Assert.assertFalse(filter.isInSequence());
+	}
+	
+	@Test
+	public void sequencesTest(){
+		AnsiEscapeFilter filter = new AnsiEscapeFilter();
+		//cursor movements, modes, window title (ended by BEL and by ST), character set, keypad mode
+		Assert.assertEquals("ab", filter(filter, ESC + "[2J" + ESC + "[1;1Ha" + ESC + "[?2004h" + ESC + "]0;root@host:~\u0007b"));
+		Assert.assertEquals("cd", filter(filter, ESC + "]2;title" + ESC + "\\" + ESC + "(Bc" + ESC + "=" + ESC + "P1$r0m" + ESC + "\\d"));
+		//8 bit CSI and OSC
+		Assert.assertEquals("ef", filter(filter, "\u009b31me\u009d0;title\u0007f"));
+		//a canceled sequence and a sequence that is ended by text that is not part of it
+		Assert.assertEquals("gé", filter(filter, ESC + "[31\u0018g" + ESC + "[é"));
+		Assert.assertFalse(filter.isInSequence());
+	}
+	
+	@Test
+	public void splitSequenceTest(){
+		AnsiEscapeFilter filter = new AnsiEscapeFilter();
+		Assert.assertEquals("red ", filter(filter, "red " + ESC + "[01"));
+		Assert.assertTrue(filter.isInSequence());
+		Assert.assertEquals("text", filter(filter, ";31mtext"));
+		Assert.assertEquals("", filter(filter, ESC + "]0;a long ti"));
+		Assert.assertEquals("", filter(filter, "tle" + ESC));
+		Assert.assertEquals("done", filter(filter, "\\done"));
+		
+		//char by char gives the same result
+		filter.reset();
+		StringBuilder kept = new StringBuilder();
+		for(char c : (ESC + "[1mbold" + ESC + "[0m " + ESC + "]0;t\u0007plain").toCharArray()){
+			if(filter.accept(c)){
+				kept.append(c);
+			}
+		}
+		Assert.assertEquals("bold plain", kept.toString());
+	}
+	
+	@Test
+	public void connectionFilterTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection("]# ");
+		cli.setFilterEscapeSequences(true);
+		//bash with bracketed paste mode sends its prompt wrapped with mode changes and a window title
+		cli.feed("ls --color\r\n" + ESC + "[01;34mdir" + ESC + "[0m\r\n" + ESC + "]0;root@host:~\u0007" + ESC + "[?2004h[root@host ~]# ");
+		
+		Assert.assertEquals("ls --color\r\ndir\r\n[root@host ~]# ", cli.handleCliCommand("ls --color"));
+	}
+	
+	@Test
+	public void filterBytesTest() throws Exception{
+		AnsiEscapeFilter filter = new AnsiEscapeFilter();
+		//the UTF-8 bytes of "Û" include 0x9B (the 8 bit CSI), it must be kept as text
+		byte[] bytes = (ESC + "[01;34mdïrÛ" + ESC + "[0m " + ESC + "]0;títle\u0007ok").getBytes("UTF-8");
+		int kept = filter.filter(bytes, 0, bytes.length);
+		Assert.assertEquals("dïrÛ ok", new String(bytes, 0, kept, "UTF-8"));
+	}
+}
@@ -0,0 +1,154 @@
+package com.qualiycode.remote_cli_connection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.qualiycode.remote_cli_connection.cache.CommandResultCache;
+
+/**
+ * This is a unit test class that test running the commands of many connections on a small pool of threads
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class CliCommandSchedulerTest {
+
+	private static final String PROMPT = "]# ";
+
+	private CliCommandScheduler scheduler;
+
+	@Before
+	public void setUp(){
+		scheduler = new CliCommandScheduler(2);
+	}
+
+	@After
+	public void tearDown(){
+		scheduler.shutdown();
+	}
+
+	@Test
+	public void manyConnectionsTest() throws Exception{
+		int count = 500;
+		List<PipedCliConnection> connections = new ArrayList<>();
+		List<CompletableFuture<String>> results = new ArrayList<>();
+		for(int i=0; i<count; i++){
+			PipedCliConnection cli = new PipedCliConnection(PROMPT);
+			connections.add(cli);
+			results.add(scheduler.submit(cli, "hostname"));
+		}
+
+		//the outputs arrive in two parts, after all the commands were written
+		for(int i=0; i<count; i++){
+			connections.get(i).feed("hostname\r\nhost" + i);
+		}
+		for(int i=0; i<count; i++){
+			connections.get(i).feed("\r\n[root@host" + i + " ~]# ");
+		}
+
+		for(int i=0; i<count; i++){
+			Assert.assertEquals("hostname\r\nhost" + i + "\r\n[root@host" + i + " ~]# ", results.get(i).get(5, TimeUnit.SECONDS));
+			Assert.assertEquals("hostname\n", connections.get(i).getSent());
+		}
+		Assert.assertEquals(count, scheduler.getConnectionCount());
+	}
+
+	@Test
+	public void commandsOrderTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		CompletableFuture<String> first = scheduler.submit(cli, "first");
+		CompletableFuture<String> second = scheduler.submit(cli, "second");
+
+		cli.feed("first\r\n1\r\n]# ");
+		Assert.assertEquals("first\r\n1\r\n]# ", first.get(5, TimeUnit.SECONDS));
+		cli.feed("second\r\n2\r\n]# ");
+		Assert.assertEquals("second\r\n2\r\n]# ", second.get(5, TimeUnit.SECONDS));
+		Assert.assertEquals("first\nsecond\n", cli.getSent());
+	}
+
+	@Test
+	public void timeoutTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.feed("sleep 100\r\n");
+		CliCommand command = new CliCommand("sleep 100");
+		command.setTimeout(1);
+
+		long startTime = System.currentTimeMillis();
+		try {
+			scheduler.submit(cli, command).get(5, TimeUnit.SECONDS);
+			Assert.fail("Expected a timeout");
+		} catch (ExecutionException e) {
+			long elapsTime = System.currentTimeMillis() - startTime;
+			Assert.assertTrue("Timeout was not honored: " + elapsTime, elapsTime >= 1000 && elapsTime < 3000);
+			Assert.assertTrue(e.getCause().getMessage().contains("Got timeout"));
+		}
+		Assert.assertEquals("sleep 100\r\n", command.getCommandOutput());
+
+		//the connection keeps running commands after a failure
+		cli.feed("ls\r\n]# ");
+		Assert.assertEquals("ls\r\n]# ", scheduler.submit(cli, "ls").get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void partialOutputNotCachedTest() throws Exception{
+		CommandResultCache cache = new CommandResultCache();
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.setResultCache(cache);
+
+		//the timeout is ignored, the partial output is returned but not cached
+		cli.feed("uname\r\nLin");
+		CliCommand command = new CliCommand("uname");
+		command.setTimeout(1);
+		command.setIgnoreErrors(true);
+		command.setSilent(true);
+		command.setCacheTtl(60000);
+		Assert.assertEquals("uname\r\nLin", scheduler.submit(cli, command).get(5, TimeUnit.SECONDS));
+		Assert.assertEquals(0, cache.size());
+
+		cli.feed("uname\r\nLinux\r\n]# ");
+		command = new CliCommand("uname");
+		command.setCacheTtl(60000);
+		Assert.assertEquals("uname\r\nLinux\r\n]# ", scheduler.submit(cli, command).get(5, TimeUnit.SECONDS));
+		Assert.assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void notDrivenConnectionTest() throws Exception{
+		//a connection that does not end its outputs by the prompts runs its commands using handleCliCommandAsync
+		PipedCliConnection cli = new PipedCliConnection(PROMPT){
+			@Override
+			protected boolean isEndOfOutputByPrompt(){
+				return false;
+			}
+		};
+		CompletableFuture<String> result = scheduler.submit(cli, "ls");
+		cli.feed("ls\r\n]# ");
+		Assert.assertEquals("ls\r\n]# ", result.get(5, TimeUnit.SECONDS));
+		Assert.assertEquals(0, scheduler.getConnectionCount());
+	}
+
+	@Test
+	public void connectionClosedTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		CompletableFuture<String> result = scheduler.submit(cli, "reboot");
+		cli.feed("reboot\r\n");
+		cli.inputBuffer.getOutputStream().close();
+		try {
+			result.get(5, TimeUnit.SECONDS);
+			Assert.fail("Expected a failure");
+		} catch (ExecutionException e) {
+			Assert.assertTrue(e.getCause().getMessage().contains("Connection closed"));
+		}
+	}
+}
@@ -0,0 +1,459 @@
+package com.qualiycode.remote_cli_connection;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * This is a unit test class that test the terminal reading logic of the CLI connection
+ * 
+ * The remote terminal is simulated using in-memory streams so no remote machine is needed
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class CliConnectionTest {
+
+	private static final String PROMPT = "]# ";
+	
+	@Test
+	public void readUntilPromptTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.feed("ls\r\nfile1\r\nfile2\r\n[root@host ~]# ");
+		
+		String output = cli.handleCliCommand("ls");
+		
+		Assert.assertEquals("ls\r\nfile1\r\nfile2\r\n[root@host ~]# ", output);
+		Assert.assertEquals("ls\n", cli.getSent());
+	}
+	
+	@Test
+	public void outputArrivingLaterTest() throws Exception{
+		final PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		Thread remote = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(300);
+					cli.feed("sleep 1\r\n");
+					Thread.sleep(300);
+					cli.feed("[root@host ~]# ");
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		remote.start();
+		
+		String output = cli.handleCliCommand("sleep 1");
+		remote.join();
+		
+		Assert.assertEquals("sleep 1\r\n[root@host ~]# ", output);
+	}
+	
+	@Test
+	public void outputAfterPromptKeptTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		//both outputs arrive before the first command is read
+		cli.feed("ls\r\nfile1\r\n[root@host ~]# pwd\r\n/root\r\n[root@host ~]# ");
+		
+		Assert.assertEquals("ls\r\nfile1\r\n[root@host ~]# ", cli.handleCliCommand("ls"));
+		Assert.assertEquals("pwd\r\n/root\r\n[root@host ~]# ", cli.handleCliCommand("pwd"));
+	}
+	
+	@Test
+	public void discardTrailingOutputTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.setDiscardTrailingOutput(true);
+		cli.feed("ls\r\nfile1\r\n[root@host ~]# [root@host ~]# ");
+		
+		Assert.assertEquals("ls\r\nfile1\r\n[root@host ~]# ", cli.handleCliCommand("ls"));
+		cli.feed("pwd\r\n/root\r\n[root@host ~]# ");
+		Assert.assertEquals("pwd\r\n/root\r\n[root@host ~]# ", cli.handleCliCommand("pwd"));
+	}
+	
+	@Test
+	public void outputSpillTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.feed("ls\r\nfile1\r\nfile2\r\n[root@host ~]# ");
+		CliCommand command = new CliCommand("ls");
+		command.setOutputSpillThreshold(10);
+		
+		Assert.assertEquals("", cli.handleCliCommand(command));
+		Assert.assertTrue(command.isOutputSpilled());
+		Assert.assertEquals("ls\r\nfile1\r\nfile2\r\n[root@host ~]# ", command.getOutput().toString());
+		Assert.assertEquals("ls\r\nfile1\r\nfile2\r\n[root@host ~]# ", command.getCommandOutput());
+		command.releaseOutput();
+	}
+	
+	@Test
+	public void timeoutTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.feed("sleep 100\r\n");
+		CliCommand command = new CliCommand("sleep 100");
+		command.setTimeout(1);
+		
+		long startTime = System.currentTimeMillis();
+		try {
+			cli.handleCliCommand(command);
+			Assert.fail("Expected a timeout");
+		} catch (Exception e) {
+			long elapsTime = System.currentTimeMillis() - startTime;
+			Assert.assertTrue("Timeout was not honored: " + elapsTime, elapsTime >= 1000 && elapsTime < 3000);
+		}
+		Assert.assertEquals("sleep 100\r\n", command.getCommandOutput());
+	}
+	
+	@Test
+	public void responsePromptTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		Prompt passwordPrompt = new Prompt();
+		passwordPrompt.setPrompt("password: ");
+		passwordPrompt.setResponseString("secret");
+		cli.addPrompt(passwordPrompt);
+		cli.feed("sudo ls\r\n[sudo] password: \r\nfile1\r\n[root@host ~]# ");
+		
+		String output = cli.handleCliCommand("sudo ls");
+		
+		Assert.assertEquals("sudo ls\r\n[sudo] password: \r\nfile1\r\n[root@host ~]# ", output);
+		Assert.assertEquals("sudo ls\nsecret\n", cli.getSent());
+	}
+	
+	@Test
+	public void largeOutputTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		StringBuilder expected = new StringBuilder("cat big.log\r\n");
+		for(int i=0; i<20000; i++){
+			expected.append("line number ").append(i).append("\r\n");
+		}
+		expected.append("[root@host ~]# ");
+		cli.feed(expected.toString());
+		
+		String output = cli.handleCliCommand("cat big.log");
+		
+		Assert.assertEquals(expected.toString(), output);
+	}
+	
+	@Test
+	public void regexPromptTest() throws Exception{
+		regexPrompt(new PipedCliConnection(PROMPT));
+	}
+	
+	@Test
+	public void regexPromptBytesTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.setBytePromptMatching(true);
+		regexPrompt(cli);
+		
+		//the chars after the regular expression end prompt were returned to the byte read buffer
+		cli.feed("\r\nls\r\n]# ");
+		Assert.assertEquals(" trailing\r\nls\r\n]# ", cli.handleCliCommand("ls"));
+	}
+	
+	private void regexPrompt(final PipedCliConnection cli) throws Exception{
+		Prompt confirmPrompt = new Prompt();
+		confirmPrompt.setPrompt("\\[y/N\\] ?$");
+		confirmPrompt.setRegularExpression(true, false);
+		confirmPrompt.setResponseString("y");
+		cli.addPrompt(confirmPrompt);
+		Prompt endPrompt = new Prompt();
+		endPrompt.setPrompt("DONE \\d+");
+		endPrompt.setRegularExpression(true, false);
+		endPrompt.setMarkEndOfOutput(true);
+		cli.addPrompt(endPrompt);
+		cli.feed("yum remove foo\r\nIs this ok [y/N] ");
+		
+		final StringBuilder longLine = new StringBuilder();
+		for(int i=0; i<5000; i++){
+			longLine.append("0123456789");
+		}
+		//the remote terminal continues only after getting the response
+		Thread remote = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while(!cli.getSent().endsWith("y\n")){
+						Thread.sleep(10);
+					}
+					cli.feed(longLine + "\r\nDONE 42 trailing");
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		remote.start();
+		
+		CliCommand command = new CliCommand("yum remove foo");
+		String output = cli.handleCliCommand(command);
+		remote.join();
+		
+		Assert.assertEquals("yum remove foo\r\nIs this ok [y/N] " + longLine + "\r\nDONE 42", output);
+		//the response is sent only once, although the prompt stays in the line
+		Assert.assertEquals("yum remove foo\ny\n", cli.getSent());
+	}
+	
+	@Test
+	public void asyncCommandsTest() throws Exception{
+		final PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		List<CompletableFuture<String>> results = new ArrayList<>();
+		for(int i=0; i<5; i++){
+			results.add(cli.handleCliCommandAsync("echo " + i));
+		}
+		//the commands run one after the other, so each output is fed once its command was sent
+		for(int i=0; i<5; i++){
+			while(!cli.getSent().contains("echo " + i + "\n")){
+				Thread.sleep(5);
+			}
+			cli.feed("echo " + i + "\r\n" + i + "\r\n[root@host ~]# ");
+			Assert.assertEquals("echo " + i + "\r\n" + i + "\r\n[root@host ~]# ", results.get(i).get(5, TimeUnit.SECONDS));
+		}
+		Assert.assertEquals("echo 0\necho 1\necho 2\necho 3\necho 4\n", cli.getSent());
+	}
+	
+	@Test
+	public void outputListenerTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.feed("cat log\r\nline1\r\nline2\r\n[root@host ~]# ");
+		final List<String> lines = new ArrayList<>();
+		final boolean[] ended = new boolean[1];
+		CliCommand command = new CliCommand("cat log");
+		command.setRetainOutput(false);
+		command.setOutputListener(new CliOutputListener() {
+			@Override
+			public void outputLine(CliCommand command, String line) throws Exception {
+				lines.add(line);
+			}
+			
+			@Override
+			public void outputEnded(CliCommand command) {
+				ended[0] = true;
+			}
+		});
+		
+		String output = cli.handleCliCommand(command);
+		
+		Assert.assertEquals("", output);
+		Assert.assertEquals("", command.getCommandOutput());
+		Assert.assertEquals(4, lines.size());
+		Assert.assertEquals("line1\r\n", lines.get(1));
+		Assert.assertEquals("[root@host ~]# ", lines.get(3));
+		Assert.assertTrue(ended[0]);
+	}
+	
+	@Test
+	public void commandsBatchTest() throws Exception{
+		commandsBatch(new PipedCliConnection(PROMPT));
+	}
+	
+	@Test
+	public void commandsBatchBytesTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.setBytePromptMatching(true);
+		commandsBatch(cli);
+	}
+	
+	@Test
+	public void bytePromptMatchingTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection("ü]# ");
+		cli.setBytePromptMatching(true);
+		Assert.assertTrue(cli.isBytePromptMatching());
+		byte[] output = "ls\r\nfile-é\r\n文件\r\n[root@hüst ~ü]# ls\r\n".getBytes("UTF-8");
+		
+		//the output arrives in two parts, split in the middle of a multi byte char
+		int split = "ls\r\nfile-é\r\n文".getBytes("UTF-8").length - 1;
+		cli.inputBuffer.getOutputStream().write(output, 0, split);
+		cli.inputBuffer.getOutputStream().write(output, split, output.length - split);
+		
+		Assert.assertEquals("ls\r\nfile-é\r\n文件\r\n[root@hüst ~ü]# ", cli.handleCliCommand("ls"));
+		
+		//the bytes after the prompt are kept for the next command
+		cli.feed("ü]# ");
+		Assert.assertEquals("ls\r\nü]# ", cli.handleCliCommand("ls"));
+		
+		//lines nobody reads are not decoded, the output still ends at the prompt
+		CliCommand command = new CliCommand("cat big");
+		command.setRetainOutput(false);
+		command.setSilent(true);
+		cli.feed("cat big\r\nline 1\r\nline 2\r\nend ü]# ls\r\nü]# ");
+		Assert.assertEquals("", cli.handleCliCommand(command));
+		Assert.assertEquals("ls\r\nü]# ", cli.handleCliCommand("ls"));
+	}
+	
+	@Test
+	public void charsetTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		Assert.assertEquals(StandardCharsets.UTF_8, cli.getCharset());
+		cli.feed("]# ");
+		cli.handleCliCommand("echo é");
+		Assert.assertEquals("echo é\n", cli.getSent());
+		
+		//a single byte charset encodes the command (and the prompts) with its own bytes
+		cli = new PipedCliConnection(PROMPT);
+		cli.setCharset(StandardCharsets.ISO_8859_1);
+		cli.setBytePromptMatching(true);
+		cli.inputBuffer.getOutputStream().write("echo \u00e9\r\n\u00e9\r\n]# ".getBytes(StandardCharsets.ISO_8859_1));
+		Assert.assertEquals("echo \u00e9\r\n\u00e9\r\n]# ", cli.handleCliCommand("echo \u00e9"));
+		Assert.assertArrayEquals("echo \u00e9\n".getBytes(StandardCharsets.ISO_8859_1), cli.sent.toByteArray());
+		
+		//the line feed is not a single byte in UTF-16, so the bytes can not be matched
+		cli.setCharset(StandardCharsets.UTF_16);
+		Assert.assertFalse(cli.isBytePromptMatching());
+	}
+	
+	@Test
+	public void commandsBatchEndTimeoutTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.setBatchEndTimeout(1);
+		CliCommand command = new CliCommand("echo 0");
+		command.setTimeout(60);
+		CompletableFuture<List<String>> outputs = CompletableFuture.supplyAsync(() -> {
+			try {
+				return cli.handleCliCommands(Collections.singletonList(command));
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!cli.getSent().endsWith("'_0_'$?'__'\n")){
+			Assert.assertTrue("The batch was not sent", System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+		Matcher markerCommand = Pattern.compile("echo '(\\S+)''(_\\d+_)'\\$\\?'__'\n").matcher(cli.getSent());
+		Assert.assertTrue(markerCommand.find());
+		
+		//the terminal prompt after the last marker never arrives, the batch does not wait for the command timeout
+		cli.feed("echo 0\r\n0\r\n" + markerCommand.group(1) + markerCommand.group(2) + "0__\r\n");
+		List<String> results = outputs.get(10, TimeUnit.SECONDS);
+		Assert.assertEquals("echo 0\r\n0\r\n", results.get(0));
+		Assert.assertEquals(0, command.getExitStatus());
+	}
+	
+	@Test
+	public void singleCharReadTest() throws Exception{
+		//an extender class that still reads one char at a time (the carriage returns are dropped)
+		PipedCliConnection cli = new PipedCliConnection(PROMPT){
+			@Override
+			@SuppressWarnings("deprecation")
+			protected void readOutputAndAddLine(BufferedReader dataIn, StringBuilder line) throws Exception{
+				int character = dataIn.read();
+				if(character != '\r'){
+					line.append((char)character);
+				}
+			}
+		};
+		cli.setBytePromptMatching(true);
+		Assert.assertFalse(cli.isBytePromptMatching());
+		cli.feed("ls\r\nfile1\r\n[root@host ~]# ");
+		Assert.assertEquals("ls\nfile1\n[root@host ~]# ", cli.handleCliCommand("ls"));
+		
+		//the end of the stream is still detected, without waiting for the command timeout
+		cli.feed("reboot\r\n");
+		cli.inputBuffer.getOutputStream().close();
+		long startTime = System.currentTimeMillis();
+		try {
+			cli.handleCliCommand("reboot");
+			Assert.fail("Expected a failure");
+		} catch (Exception e) {
+			Assert.assertTrue(System.currentTimeMillis() - startTime < 5000);
+		}
+	}
+	
+	@Test
+	public void commandsBatchWithoutEndPromptTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.setBatchEndTimeout(5);
+		
+		//the batch ends on the marker, the terminal prompt is not waited for
+		long startTime = System.currentTimeMillis();
+		Assert.assertEquals("echo 0\r\n0\r\n", batchWithoutEndPrompt(cli, new CliCommand("echo 0"), "echo 0\r\n0\r\n"));
+		Assert.assertTrue("The batch waited for the prompt", System.currentTimeMillis() - startTime < 2000);
+		
+		//the prompt that arrives after the marker is not part of the next batch output
+		cli.feed("[host ~]$ ");
+		Assert.assertEquals("echo 1\r\n1\r\n", batchWithoutEndPrompt(cli, new CliCommand("echo 1"), "echo 1\r\n1\r\n"));
+	}
+	
+	private String batchWithoutEndPrompt(final PipedCliConnection cli, final CliCommand command, String output) throws Exception{
+		final int sentBefore = cli.getSent().length();
+		CompletableFuture<List<String>> outputs = CompletableFuture.supplyAsync(() -> {
+			try {
+				return cli.handleCliCommands(Collections.singletonList(command), false);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!cli.getSent().substring(sentBefore).endsWith("'_0_'$?'__'\n")){
+			Assert.assertTrue("The batch was not sent", System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+		Matcher markerCommand = Pattern.compile("echo '(\\S+)''(_\\d+_)'\\$\\?'__'\n").matcher(cli.getSent().substring(sentBefore));
+		Assert.assertTrue(markerCommand.find());
+		cli.feed(output + markerCommand.group(1) + markerCommand.group(2) + "0__\r\n");
+		String result = outputs.get(10, TimeUnit.SECONDS).get(0);
+		Assert.assertEquals(0, command.getExitStatus());
+		return result;
+	}
+	
+	private void commandsBatch(final PipedCliConnection cli) throws Exception{
+		final List<CliCommand> commands = new ArrayList<>();
+		for(int i=0; i<3; i++){
+			commands.add(new CliCommand("echo " + i));
+		}
+		CompletableFuture<List<String>> outputs = CompletableFuture.supplyAsync(() -> {
+			try {
+				return cli.handleCliCommands(commands);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		
+		//all the commands are sent at once, the remote shell answers each marker command with the marker
+		Matcher markerCommand = Pattern.compile("echo '(\\S+)''(_\\d+_)'\\$\\?'__'\n").matcher("");
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!cli.getSent().endsWith("'_2_'$?'__'\n")){
+			Assert.assertTrue("The batch was not sent", System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+		markerCommand.reset(cli.getSent());
+		StringBuilder remote = new StringBuilder();
+		for(int i=0; i<3; i++){
+			Assert.assertTrue(markerCommand.find());
+			remote.append("[root@host ~]# echo " + i + "\r\n" + i + "\r\n");
+			//outputs that contain the prompt text do not end the command output
+			remote.append("log line ]# " + i + "\r\n");
+			remote.append("[root@host ~]# " + markerCommand.group(0).replace("\n", "\r\n"));
+			remote.append(markerCommand.group(1) + markerCommand.group(2) + i + "__\r\n");
+		}
+		remote.append("[root@host ~]# ");
+		cli.feed(remote.toString());
+		
+		List<String> results = outputs.get(5, TimeUnit.SECONDS);
+		Assert.assertEquals(3, results.size());
+		for(int i=0; i<3; i++){
+			Assert.assertTrue(results.get(i), results.get(i).startsWith("[root@host ~]# echo " + i + "\r\n" + i + "\r\n"));
+			Assert.assertTrue(results.get(i), results.get(i).contains("log line ]# " + i + "\r\n"));
+			Assert.assertFalse(results.get(i), results.get(i).contains("]# echo " + (i + 1) + "\r\n"));
+			//the echo of the marker command is not part of the output
+			Assert.assertEquals("[root@host ~]# echo " + i + "\r\n" + i + "\r\nlog line ]# " + i + "\r\n", results.get(i));
+			Assert.assertEquals(results.get(i), commands.get(i).getCommandOutput());
+			Assert.assertEquals(i, commands.get(i).getExitStatus());
+		}
+		
+		//the prompt after the last marker was read, so the next command gets only its own output
+		cli.feed("ls\r\nfile1\r\n[root@host ~]# ");
+		Assert.assertEquals("ls\r\nfile1\r\n[root@host ~]# ", cli.handleCliCommand("ls"));
+	}
+}
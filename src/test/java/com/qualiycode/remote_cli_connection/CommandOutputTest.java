@@ -0,0 +1,97 @@
+package com.qualiycode.remote_cli_connection;
+
+import java.io.File;
+import java.io.Reader;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * This is a unit test class that test keeping command outputs in memory and moving them to a file
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class CommandOutputTest {
+
+	@Test
+	public void keptInMemoryTest() throws Exception{
+		CommandOutput output = new CommandOutput(100);
+		output.append("line 1\n").append("line 2\n");
+		
+		Assert.assertFalse(output.isSpilled());
+		Assert.assertNull(output.getFile());
+		Assert.assertEquals("line 1\nline 2\n", output.toString());
+	}
+	
+	@Test
+	public void spillTest() throws Exception{
+		//segments of 16 chars, so reads cross segments
+		CommandOutput output = new CommandOutput(20, 4);
+		StringBuilder expected = new StringBuilder();
+		for(int i=0; i<1000; i++){
+			String line = "line " + i + "\n";
+			output.append(line);
+			expected.append(line);
+		}
+		
+		Assert.assertTrue(output.isSpilled());
+		Assert.assertEquals(expected.length(), output.length());
+		Assert.assertEquals(expected.charAt(0), output.charAt(0));
+		Assert.assertEquals(expected.charAt(5000), output.charAt(5000));
+		Assert.assertEquals(expected.subSequence(17, 30).toString(), output.subSequence(17, 30).toString());
+		Assert.assertEquals(expected.subSequence(10, 100).toString(), output.subSequence(10, 100).toString());
+		Assert.assertEquals(expected.toString(), output.toString());
+		Assert.assertEquals(expected.length() * 2, output.getFile().length());
+		
+		StringBuilder read = new StringBuilder();
+		try (Reader reader = output.getReader()) {
+			char[] buffer = new char[7];
+			int count;
+			while((count = reader.read(buffer, 0, buffer.length)) != -1){
+				read.append(buffer, 0, count);
+			}
+		}
+		Assert.assertEquals(expected.toString(), read.toString());
+		
+		//chars added after the output was read are visible too
+		output.append("last line\n");
+		Assert.assertTrue(output.toString().endsWith("line 999\nlast line\n"));
+		
+		output.release();
+		Assert.assertFalse(output.getFile().exists());
+	}
+	
+	@Test
+	public void commandOutputHeldOnceTest() throws Exception{
+		CliCommand command = new CliCommand("ls");
+		CommandOutput output = new CommandOutput(100);
+		output.append("file1\n");
+		command.setOutput(output);
+		Assert.assertSame(output, command.getOutput());
+		
+		//the String replaces the output that was read
+		Assert.assertEquals("file1\n", command.getCommandOutput());
+		Assert.assertTrue(command.getOutput() instanceof String);
+		Assert.assertSame(command.getCommandOutput(), command.getCommandOutput());
+	}
+	
+	@Test
+	public void replacedOutputReleasedTest() throws Exception{
+		CliCommand command = new CliCommand("ls");
+		CommandOutput output = new CommandOutput(4);
+		output.append("0123456789");
+		command.setOutput(output);
+		File file = output.getFile();
+		Assert.assertTrue(file.exists());
+		
+		//a spilled output is not turned into a String, and its file is deleted once it is replaced
+		Assert.assertEquals("0123456789", command.getCommandOutput());
+		Assert.assertTrue(command.isOutputSpilled());
+		command.setCommandOutput("");
+		Assert.assertFalse(file.exists());
+	}
+}
@@ -0,0 +1,83 @@
+package com.qualiycode.remote_cli_connection;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+/**
+ * This class is a CLI connection over in-memory streams, used for testing the terminal reading logic without a remote machine
+ * 
+ * The remote side is simulated by calling feed() with the text the remote terminal should output
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+public class PipedCliConnection extends CliConnection {
+
+	protected static final Charset CHARSET = Charset.forName("UTF-8");
+	
+	/**
+	 * Holds everything that was sent to the "remote" terminal 
+	 */
+	protected ByteArrayOutputStream sent = new ByteArrayOutputStream();
+	
+	protected boolean connected = false;
+
+	public PipedCliConnection(String endLineStr) {
+		super("user", "password", "127.0.0.1", 0, endLineStr);
+		inputBuffer = new TerminalInputBuffer();
+		dataIn = new BufferedReader(new InputStreamReader(inputBuffer.getInputStream(), CHARSET));
+		dataOut = new DataOutputStream(sent);
+	}
+	
+	/**
+	 * @param output - the text the remote terminal outputs
+	 * @throws Exception
+	 */
+	public void feed(String output) throws Exception{
+		inputBuffer.getOutputStream().write(output.getBytes(CHARSET));
+	}
+
+	/**
+	 * @return everything that was sent to the remote terminal
+	 */
+	public String getSent(){
+		return new String(sent.toByteArray(), CHARSET);
+	}
+	
+	@Override
+	protected boolean doConnect() {
+		connected = true;
+		return true;
+	}
+
+	@Override
+	public boolean doDisconnect() {
+		connected = false;
+		return true;
+	}
+
+	@Override
+	public String handleCliCommand(String command) throws Exception {
+		return handleCliCommand(new CliCommand(command));
+	}
+
+	@Override
+	public String handleCliCommand(CliCommand command) throws Exception {
+		if(loadCachedResult(command)){
+			return command.getCommandOutput();
+		}
+		writeToTerminal(command.getCommand() + LINUX_CRLF);
+		String output = waitForTerminal(command);
+		cacheResult(command);
+		return output;
+	}
+
+	@Override
+	public boolean isConnected() throws Exception {
+		return connected;
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.qualiycode.remote_cli_connection;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * This is a unit test class that test the literal prompts matcher
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class PromptMatcherTest {
+
+	private static Prompt prompt(String text){
+		Prompt prompt = new Prompt();
+		prompt.setPrompt(text);
+		return prompt;
+	}
+	
+	/**
+	 * @return the index of the prompt found at each char of the output (-1 if no prompt was found)
+	 */
+	private static List<Integer> feed(PromptMatcher matcher, String output){
+		List<Integer> found = new ArrayList<>();
+		for(char c : output.toCharArray()){
+			found.add(matcher.next(c));
+		}
+		return found;
+	}
+	
+	@Test
+	public void findPromptsTest(){
+		List<Prompt> prompts = new ArrayList<>();
+		prompts.add(prompt("]# "));
+		prompts.add(prompt("password: "));
+		prompts.add(prompt("--More--"));
+		PromptMatcher matcher = new PromptMatcher(prompts);
+		
+		List<Integer> found = feed(matcher, "[root@host ~]# ");
+		Assert.assertEquals(Integer.valueOf(0), found.get(found.size() - 1));
+		Assert.assertEquals(1, found.size() - found.lastIndexOf(-1) - 1);
+		
+		matcher.reset();
+		Assert.assertEquals(1, (int)feed(matcher, "[sudo] password: ").get(16));
+		
+		matcher.reset();
+		found = feed(matcher, "line\n--More--");
+		Assert.assertEquals(2, (int)found.get(found.size() - 1));
+	}
+	
+	@Test
+	public void overlappingPromptsTest(){
+		List<Prompt> prompts = new ArrayList<>();
+		prompts.add(prompt("]# "));
+		prompts.add(prompt("# "));
+		prompts.add(prompt("aab"));
+		PromptMatcher matcher = new PromptMatcher(prompts);
+		
+		//both prompts end here, the first one in the list is reported
+		List<Integer> found = feed(matcher, "]# ");
+		Assert.assertEquals(0, (int)found.get(2));
+		
+		matcher.reset();
+		found = feed(matcher, "$ # ");
+		Assert.assertEquals(1, (int)found.get(3));
+		
+		//the automaton should fall back correctly after a partial match
+		matcher.reset();
+		found = feed(matcher, "aaab");
+		Assert.assertEquals(2, (int)found.get(3));
+	}
+	
+	@Test
+	public void nonAsciiPromptTest(){
+		List<Prompt> prompts = new ArrayList<>();
+		prompts.add(prompt("» "));
+		Prompt regex = prompt("[0-9]+>");
+		regex.setRegularExpression(true, false);
+		prompts.add(regex);
+		PromptMatcher matcher = new PromptMatcher(prompts);
+		
+		List<Integer> found = feed(matcher, "host » ");
+		Assert.assertEquals(0, (int)found.get(found.size() - 1));
+		
+		//regular expression prompts are not handled by the matcher
+		matcher.reset();
+		found = feed(matcher, "12>");
+		Assert.assertEquals(-1, (int)found.get(2));
+	}
+	
+	@Test
+	public void bytePromptsTest() throws Exception{
+		List<Prompt> prompts = new ArrayList<>();
+		prompts.add(prompt("ü]# "));
+		prompts.add(prompt("密码: "));
+		BytePromptMatcher matcher = new BytePromptMatcher(prompts, StandardCharsets.UTF_8);
+		
+		byte[] output = "[root@hüst ~ü]# ".getBytes(StandardCharsets.UTF_8);
+		for(int i=0; i<output.length - 1; i++){
+			Assert.assertEquals(-1, matcher.next(output[i]));
+		}
+		Assert.assertEquals(0, matcher.next(output[output.length - 1]));
+		
+		matcher.reset();
+		int found = -1;
+		for(byte b : "sudo 密码: ".getBytes(StandardCharsets.UTF_8)){
+			found = matcher.next(b);
+		}
+		Assert.assertEquals(1, found);
+	}
+}
@@ -0,0 +1,91 @@
+package com.qualiycode.remote_cli_connection;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * This is a unit test class that test the buffer between the transport and the connection reader
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class TerminalInputBufferTest {
+
+	@Test
+	public void writerBlockedWhenFullTest() throws Exception{
+		final TerminalInputBuffer buffer = new TerminalInputBuffer(16, 64);
+		final byte[] data = new byte[200];
+		for(int i=0; i<data.length; i++){
+			data[i] = (byte) i;
+		}
+		CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+			try {
+				buffer.getOutputStream().write(data);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+
+		//the writer fills the buffer and waits for room
+		long deadline = System.currentTimeMillis() + 5000;
+		while(buffer.available() < 64){
+			Assert.assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+		Thread.sleep(50);
+		Assert.assertFalse(writer.isDone());
+		Assert.assertEquals(64, buffer.available());
+
+		//reading makes room, so the writer completes and all the bytes arrive in order
+		InputStream in = buffer.getInputStream();
+		byte[] read = new byte[data.length];
+		int total = 0;
+		while(total < read.length){
+			total += in.read(read, total, Math.min(10, read.length - total));
+		}
+		writer.get(5, TimeUnit.SECONDS);
+		Assert.assertArrayEquals(data, read);
+		Assert.assertEquals(200, buffer.getBytesRead());
+	}
+
+	@Test
+	public void closedReaderReleasesWriterTest() throws Exception{
+		final TerminalInputBuffer buffer = new TerminalInputBuffer(16, 32);
+		CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+			try {
+				buffer.getOutputStream().write(new byte[100]);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		Thread.sleep(50);
+		Assert.assertFalse(writer.isDone());
+
+		//nobody is going to read the data, the rest is dropped
+		buffer.getInputStream().close();
+		writer.get(5, TimeUnit.SECONDS);
+		Assert.assertTrue(buffer.isEndOfStream());
+	}
+
+	@Test
+	public void singleBytesTest() throws Exception{
+		TerminalInputBuffer buffer = new TerminalInputBuffer();
+		OutputStream out = buffer.getOutputStream();
+		out.write('a');
+		out.write(0xFF);
+		out.close();
+
+		InputStream in = buffer.getInputStream();
+		Assert.assertEquals('a', in.read());
+		Assert.assertEquals(0xFF, in.read());
+		Assert.assertEquals(-1, in.read());
+	}
+}
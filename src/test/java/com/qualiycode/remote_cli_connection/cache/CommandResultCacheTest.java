@@ -0,0 +1,153 @@
+package com.qualiycode.remote_cli_connection.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.PipedCliConnection;
+
+/**
+ * This is a unit test class that test answering read only commands from the result cache
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class CommandResultCacheTest {
+
+	private static final String PROMPT = "]# ";
+	
+	private static CliCommand uname(long ttl){
+		CliCommand command = new CliCommand("uname");
+		command.setCacheTtl(ttl);
+		return command;
+	}
+	
+	@Test
+	public void hitAndExpireTest() throws Exception{
+		CommandResultCache cache = new CommandResultCache();
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.setResultCache(cache);
+		
+		cli.feed("uname\r\nLinux\r\n[root@host ~]# ");
+		Assert.assertEquals("uname\r\nLinux\r\n[root@host ~]# ", cli.handleCliCommand(uname(200)));
+		Assert.assertEquals(1, cache.getMissCount());
+		
+		//answered from the cache, nothing is sent to the terminal
+		CliCommand cached = uname(200);
+		Assert.assertEquals("uname\r\nLinux\r\n[root@host ~]# ", cli.handleCliCommand(cached));
+		Assert.assertEquals("uname\r\nLinux\r\n[root@host ~]# ", cached.getCommandOutput());
+		Assert.assertEquals("uname\n", cli.getSent());
+		Assert.assertEquals(1, cache.getHitCount());
+		Assert.assertEquals(1, cache.getHitCount("user@127.0.0.1:0"));
+		
+		//commands without a TTL always run
+		cli.feed("uname\r\nLinux2\r\n[root@host ~]# ");
+		Assert.assertEquals("uname\r\nLinux2\r\n[root@host ~]# ", cli.handleCliCommand("uname"));
+		
+		Thread.sleep(250);
+		cli.feed("uname\r\nLinux3\r\n[root@host ~]# ");
+		Assert.assertEquals("uname\r\nLinux3\r\n[root@host ~]# ", cli.handleCliCommand(uname(200)));
+		Assert.assertEquals(2, cache.getMissCount());
+		Assert.assertEquals(1, cache.getEvictionCount());
+	}
+	
+	@Test
+	public void invalidateTest() throws Exception{
+		CommandResultCache cache = new CommandResultCache();
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.setResultCache(cache);
+		
+		cli.feed("uname\r\nLinux\r\n[root@host ~]# ");
+		cli.handleCliCommand(uname(60000));
+		Assert.assertEquals(1, cache.size());
+		
+		cache.invalidate("user@127.0.0.1:0");
+		Assert.assertEquals(0, cache.size());
+		cli.feed("uname\r\nLinux2\r\n[root@host ~]# ");
+		Assert.assertEquals("uname\r\nLinux2\r\n[root@host ~]# ", cli.handleCliCommand(uname(60000)));
+	}
+	
+	@Test
+	public void partialOutputNotCachedTest() throws Exception{
+		CommandResultCache cache = new CommandResultCache();
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.setResultCache(cache);
+		
+		//the end of output prompt never arrives, the partial output is returned but not cached
+		cli.feed("uname\r\nLin");
+		CliCommand command = uname(60000);
+		command.setTimeout(1);
+		command.setIgnoreErrors(true);
+		command.setSilent(true);
+		Assert.assertEquals("uname\r\nLin", cli.handleCliCommand(command));
+		Assert.assertFalse(command.isOutputComplete());
+		Assert.assertEquals(0, cache.size());
+		
+		cli.feed("uname\r\nLinux\r\n[root@host ~]# ");
+		command = uname(60000);
+		Assert.assertEquals("uname\r\nLinux\r\n[root@host ~]# ", cli.handleCliCommand(command));
+		Assert.assertTrue(command.isOutputComplete());
+		Assert.assertEquals(1, cache.size());
+	}
+	
+	@Test
+	public void reusedCommandTest() throws Exception{
+		CommandResultCache cache = new CommandResultCache();
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.setResultCache(cache);
+		
+		//the exit status of an earlier run does not belong to the new output
+		CliCommand command = uname(60000);
+		command.setExitStatus(2);
+		cli.feed("uname\r\nLinux\r\n[root@host ~]# ");
+		cli.handleCliCommand(command);
+		Assert.assertEquals(-1, command.getExitStatus());
+		Assert.assertEquals(1, cache.size());
+	}
+	
+	@Test
+	public void hostKeyTest() throws Exception{
+		CommandResultCache cache = new CommandResultCache();
+		PipedCliConnection root = new PipedCliConnection(PROMPT);
+		root.setResultCache(cache);
+		PipedCliConnection guest = new PipedCliConnection(PROMPT);
+		guest.setUsername("guest");
+		guest.setResultCache(cache);
+		
+		root.feed("id\r\nuid=0(root)\r\n[root@host ~]# ");
+		CliCommand command = new CliCommand("id");
+		command.setCacheTtl(60000);
+		root.handleCliCommand(command);
+		
+		//another user on the same host does not get the cached result
+		CliCommand other = new CliCommand("id");
+		other.setCacheTtl(60000);
+		Assert.assertNull(cache.get(guest, other));
+		Assert.assertNotNull(cache.get(root, other));
+	}
+	
+	@Test
+	public void maxEntriesTest() throws Exception{
+		CommandResultCache cache = new CommandResultCache();
+		cache.setMaxEntriesPerHost(2);
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.setResultCache(cache);
+		
+		for(String name : new String[]{"a", "b", "c"}){
+			cli.feed(name + "\r\n[root@host ~]# ");
+			CliCommand command = new CliCommand(name);
+			command.setCacheTtl(60000);
+			cli.handleCliCommand(command);
+		}
+		
+		//the least recently used result was evicted
+		Assert.assertEquals(2, cache.size());
+		Assert.assertEquals(1, cache.getEvictionCount());
+		CliCommand first = new CliCommand("a");
+		first.setCacheTtl(60000);
+		Assert.assertNull(cache.get(cli, first));
+	}
+}
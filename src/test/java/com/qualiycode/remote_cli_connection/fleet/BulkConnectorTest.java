@@ -0,0 +1,116 @@
+package com.qualiycode.remote_cli_connection.fleet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.qualiycode.remote_cli_connection.CliConnection;
+import com.qualiycode.remote_cli_connection.PipedCliConnection;
+
+/**
+ * This is a unit test class that test connecting many hosts in parallel
+ * 
+ * The hosts are simulated using in-memory connections so no remote machine is needed
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class BulkConnectorTest {
+
+	/**
+	 * Simulates the hosts: host "10.0.0.y" connects after y*10 milliseconds and hosts ending with ".13" refuse to connect
+	 */
+	private static class SimulatedHosts extends BulkConnector{
+		
+		final AtomicInteger connecting = new AtomicInteger();
+		final AtomicInteger maxConnecting = new AtomicInteger();
+		final AtomicInteger connections = new AtomicInteger();
+		
+		@Override
+		protected CliConnection createConnection(String host) throws Exception {
+			connections.incrementAndGet();
+			final int delay = Integer.parseInt(host.substring(host.lastIndexOf('.') + 1));
+			PipedCliConnection connection = new PipedCliConnection("]# "){
+				@Override
+				protected boolean doConnect() {
+					maxConnecting.accumulateAndGet(connecting.incrementAndGet(), Math::max);
+					try {
+						Thread.sleep(delay * 10);
+						feed("]# ");
+					} catch (Exception e) {
+						return false;
+					} finally {
+						connecting.decrementAndGet();
+					}
+					return delay != 13 && super.doConnect();
+				}
+			};
+			connection.setNumberOfRetries(1);
+			return connection;
+		}
+	}
+	
+	@Test
+	public void bulkConnectTest() throws Exception{
+		SimulatedHosts connector = new SimulatedHosts();
+		connector.setMaxConcurrency(3);
+		connector.setReadyFraction(0.5);
+		List<String> hosts = new ArrayList<>();
+		for(int i=1; i<=20; i++){
+			hosts.add("10.0.0." + i);
+		}
+		
+		final AtomicInteger reported = new AtomicInteger();
+		BulkConnect bulk = connector.connect(hosts, (host, connection, durationMillis, progress) -> reported.incrementAndGet());
+		
+		//the application can start once half of the hosts are connected
+		Assert.assertTrue(bulk.awaitReady(5000));
+		Assert.assertTrue(bulk.getConnectedCount() >= 10);
+		Assert.assertTrue(bulk.getTimeToReadyMillis() >= 0);
+		
+		Assert.assertTrue(bulk.awaitDone(5000));
+		Assert.assertEquals(19, bulk.getConnectedCount());
+		Assert.assertEquals(1, bulk.getFailedCount());
+		Assert.assertEquals("10.0.0.13", bulk.getFailedHosts().get(0));
+		Assert.assertEquals(19, bulk.getConnections().size());
+		Assert.assertTrue(bulk.getConnections().get("10.0.0.7").isConnected());
+		Assert.assertTrue(bulk.getTimeToDoneMillis() >= bulk.getTimeToReadyMillis());
+		Assert.assertTrue("Too many hosts connected at the same time: " + connector.maxConnecting.get(), connector.maxConnecting.get() <= 3);
+		
+		//all the hosts are reported, the listener may still be running for the last host
+		long deadline = System.currentTimeMillis() + 1000;
+		while(reported.get() < 20 && System.currentTimeMillis() < deadline){
+			Thread.sleep(5);
+		}
+		Assert.assertEquals(20, reported.get());
+		
+		//a fraction that can not be connected anymore does not wait for the timeout
+		long startTime = System.currentTimeMillis();
+		Assert.assertFalse(bulk.awaitReady(1.0, 5000));
+		Assert.assertTrue(System.currentTimeMillis() - startTime < 1000);
+	}
+	
+	@Test
+	public void duplicateHostsTest() throws Exception{
+		SimulatedHosts connector = new SimulatedHosts();
+		List<String> hosts = new ArrayList<>();
+		hosts.add("10.0.0.1");
+		hosts.add("10.0.0.2");
+		hosts.add("10.0.0.1");
+		
+		//each host is connected once, so the bulk is done once both hosts connected
+		BulkConnect bulk = connector.connect(hosts);
+		long startTime = System.currentTimeMillis();
+		Assert.assertTrue(bulk.awaitDone(5000));
+		Assert.assertTrue(System.currentTimeMillis() - startTime < 1000);
+		Assert.assertEquals(2, connector.connections.get());
+		Assert.assertEquals(2, bulk.getTotal());
+		Assert.assertEquals(2, bulk.getConnections().size());
+	}
+}
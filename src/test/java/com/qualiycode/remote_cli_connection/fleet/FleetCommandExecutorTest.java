@@ -0,0 +1,160 @@
+package com.qualiycode.remote_cli_connection.fleet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.CliConnection;
+import com.qualiycode.remote_cli_connection.PipedCliConnection;
+import com.qualiycode.remote_cli_connection.parser.TableParser;
+
+/**
+ * This is a unit test class that test running a command on a fleet of hosts
+ * 
+ * The hosts are simulated using in-memory connections so no remote machine is needed
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class FleetCommandExecutorTest {
+
+	/**
+	 * Simulates the fleet: host "10.0.x.y" answers after y*10 milliseconds, hosts ending with ".99" never answer
+	 * and hosts ending with ".13" refuse to connect
+	 */
+	private static class SimulatedFleet extends FleetCommandExecutor{
+		
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final AtomicInteger connections = new AtomicInteger();
+		
+		@Override
+		protected CliConnection createConnection(final String host) throws Exception {
+			connections.incrementAndGet();
+			final int delay = Integer.parseInt(host.substring(host.lastIndexOf('.') + 1));
+			return new PipedCliConnection("]# "){
+				@Override
+				protected boolean doConnect() {
+					try {
+						feed("]# ");
+					} catch (Exception e) {
+						return false;
+					}
+					return delay != 13 && super.doConnect();
+				}
+				
+				@Override
+				public String handleCliCommand(CliCommand command) throws Exception {
+					maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+					try {
+						if(delay != 99){
+							Thread.sleep(delay * 10);
+							feed(command.getCommand() + "\r\n" + host + "\r\n]# ");
+						}
+						return super.handleCliCommand(command);
+					} finally {
+						running.decrementAndGet();
+					}
+				}
+			};
+		}
+	}
+	
+	@Test
+	public void fleetRunTest() throws Exception{
+		SimulatedFleet fleet = new SimulatedFleet();
+		fleet.setMaxConcurrency(4);
+		fleet.setMaxConcurrencyPerSubnet(2);
+		List<String> hosts = new ArrayList<>();
+		for(int i=1; i<=5; i++){
+			hosts.add("10.0.1." + i);
+			hosts.add("10.0.2." + i);
+		}
+		hosts.add("10.0.3.13");
+		hosts.add("10.0.4.99");
+		
+		final List<FleetHostResult> streamed = new ArrayList<>();
+		CliCommand command = new CliCommand("hostname");
+		command.setTimeout(30);
+		command.setSilent(true);
+		FleetResult result = fleet.run(hosts, command, 2000, new FleetResultListener() {
+			@Override
+			public synchronized void hostFinished(FleetHostResult hostResult) {
+				streamed.add(hostResult);
+			}
+		});
+		
+		Assert.assertEquals(10, result.getSucceeded().size());
+		Assert.assertEquals(1, result.getFailed().size());
+		Assert.assertEquals("10.0.3.13", result.getFailed().get(0).getHost());
+		Assert.assertEquals(1, result.getStragglers().size());
+		Assert.assertEquals("10.0.4.99", result.getStragglers().get(0).getHost());
+		Assert.assertEquals(11, streamed.size());
+		Assert.assertTrue(result.getSucceeded().get(0).getOutput().contains(result.getSucceeded().get(0).getHost()));
+		Assert.assertTrue("Concurrency limit was not honored: " + fleet.maxRunning.get(), fleet.maxRunning.get() <= 4);
+		//the original command is not changed
+		Assert.assertNull(command.getCommandOutput());
+	}
+	
+	@Test
+	public void duplicateHostsTest() throws Exception{
+		SimulatedFleet fleet = new SimulatedFleet();
+		List<String> hosts = new ArrayList<>();
+		hosts.add("10.0.1.1");
+		hosts.add("10.0.1.2");
+		hosts.add("10.0.1.1");
+		
+		CliCommand command = new CliCommand("hostname");
+		command.setTimeout(30);
+		command.setSilent(true);
+		FleetResult result = fleet.run(hosts, command, 2000);
+		
+		//each host is connected and reported once
+		Assert.assertEquals(2, fleet.connections.get());
+		Assert.assertEquals(2, result.getSucceeded().size());
+		Assert.assertEquals(0, result.getStragglers().size());
+		Assert.assertEquals("10.0.1.1", result.getSucceeded().get(0).getHost());
+	}
+	
+	@Test
+	public void sharedParserTest() throws Exception{
+		SimulatedFleet fleet = new SimulatedFleet();
+		List<String> hosts = new ArrayList<>();
+		hosts.add("10.0.1.1");
+		hosts.add("10.0.1.2");
+		
+		//a parser holds the records of a single output, so the hosts can not share it
+		CliCommand command = new CliCommand("df");
+		command.setOutputParser(new TableParser());
+		try {
+			fleet.run(hosts, command, 2000);
+			Assert.fail("Expected the command to be rejected");
+		} catch (IllegalArgumentException e) {
+			Assert.assertTrue(e.getMessage().contains("parser"));
+		}
+		Assert.assertEquals(0, fleet.connections.get());
+		
+		//a copy of the command has no parser
+		command.setTimeout(30);
+		CliCommand copy = new CliCommand(command);
+		Assert.assertNull(copy.getOutputParser());
+		Assert.assertNull(copy.getOutputListener());
+		Assert.assertEquals(30, copy.getTimeout());
+	}
+	
+	@Test
+	public void subnetTest(){
+		SimulatedFleet fleet = new SimulatedFleet();
+		Assert.assertEquals("192.168.1.0/24", fleet.getSubnet("192.168.1.77"));
+		fleet.setSubnetPrefixLength(16);
+		Assert.assertEquals("192.168.0.0/16", fleet.getSubnet("192.168.1.77"));
+		Assert.assertEquals("host.example.com", fleet.getSubnet("host.example.com"));
+	}
+}
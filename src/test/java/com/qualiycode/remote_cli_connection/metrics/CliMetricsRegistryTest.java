@@ -0,0 +1,77 @@
+package com.qualiycode.remote_cli_connection.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.PipedCliConnection;
+import com.qualiycode.remote_cli_connection.Prompt;
+
+/**
+ * This is a unit test class that test the metrics collected for CLI connections
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class CliMetricsRegistryTest {
+
+	@Test
+	public void histogramTest(){
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(long i=1; i<=1000; i++){
+			histogram.record(i * 1000);
+		}
+		Assert.assertEquals(1000, histogram.getCount());
+		Assert.assertEquals(1000000, histogram.getMax());
+		Assert.assertEquals(500500, histogram.getMean(), 0.001);
+		//the buckets resolution is 12.5%
+		assertClose(500000, histogram.getPercentile(50));
+		assertClose(990000, histogram.getPercentile(99));
+		Assert.assertEquals(1000000, histogram.getPercentile(100));
+		Assert.assertEquals(0, new LatencyHistogram().getPercentile(50));
+	}
+	
+	private static void assertClose(long expected, long actual){
+		Assert.assertTrue("Expected about " + expected + " but got " + actual, Math.abs(actual - expected) <= expected / 8);
+	}
+	
+	@Test
+	public void connectionMetricsTest() throws Exception{
+		CliMetricsRegistry registry = new CliMetricsRegistry();
+		PipedCliConnection cli = new PipedCliConnection("]# ");
+		Prompt question = new Prompt();
+		question.setPrompt("[y/n]? ");
+		question.setResponseString("y");
+		cli.addPrompt(question);
+		cli.setMetricsListener(registry);
+		
+		cli.feed("Last login: today\r\n[root@host ~]# ");
+		Assert.assertTrue(cli.connect());
+		
+		cli.feed("rm file\r\nremove file [y/n]? y\r\n[root@host ~]# ");
+		cli.handleCliCommand("rm file");
+		
+		CliCommand sleep = new CliCommand("sleep 100");
+		sleep.setTimeout(1);
+		sleep.setIgnoreErrors(true);
+		cli.handleCliCommand(sleep);
+		
+		HostMetrics metrics = registry.getHostMetrics("127.0.0.1:0");
+		Assert.assertNotNull(metrics);
+		Assert.assertEquals(1, metrics.getConnects());
+		Assert.assertEquals(0, metrics.getConnectFailures());
+		//the terminal session read while connecting is counted as a command
+		Assert.assertEquals(3, metrics.getCommands());
+		Assert.assertEquals(1, metrics.getTimeouts());
+		Assert.assertEquals(1, metrics.getCommandFailures());
+		Assert.assertEquals(2, metrics.getFirstByteLatency().getCount());
+		Assert.assertTrue(metrics.getCommandLatency().getMax() >= 1000000000L);
+		Assert.assertEquals(Long.valueOf(1), metrics.getPromptMatches().get("[y/n]? "));
+		Assert.assertEquals(Long.valueOf(2), metrics.getPromptMatches().get("]# "));
+		Assert.assertTrue(metrics.getCharsRead() > 0);
+		Assert.assertEquals(metrics.getCharsRead(), metrics.getBytesRead());
+	}
+}
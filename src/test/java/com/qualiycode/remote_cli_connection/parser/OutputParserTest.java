@@ -0,0 +1,133 @@
+package com.qualiycode.remote_cli_connection.parser;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.PipedCliConnection;
+
+/**
+ * This is a unit test class that test parsing command outputs into records while the output is read
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class OutputParserTest {
+
+	private static final String PROMPT = "]# ";
+
+	@Test
+	public void dfTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.feed("df -P\r\n"
+				+ "Filesystem     1024-blocks    Used Available Capacity Mounted on\r\n"
+				+ "/dev/sda1          41152736 9363352  29676288      24% /\r\n"
+				+ "tmpfs               8157380       0   8157380       0% /mnt/my disk\r\n"
+				+ "[root@host ~]# ");
+		TableParser parser = LinuxParsers.df();
+		cli.handleCliCommand(LinuxParsers.command(LinuxParsers.DF_COMMAND, parser));
+
+		List<Map<String, String>> records = parser.getRecords();
+		Assert.assertEquals(2, records.size());
+		Assert.assertEquals("/dev/sda1", records.get(0).get("Filesystem"));
+		Assert.assertEquals("24%", records.get(0).get("Capacity"));
+		Assert.assertEquals("/", records.get(0).get("Mounted on"));
+		Assert.assertEquals("/mnt/my disk", records.get(1).get("Mounted on"));
+	}
+
+	@Test
+	public void psTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.feed("ps -eo pid,ppid,user,args\r\n"
+				+ "  PID  PPID USER     COMMAND\r\n"
+				+ "    1     0 root     /usr/lib/systemd/systemd --system --deserialize 21\r\n"
+				+ "  812     1 root     /usr/sbin/sshd -D\r\n"
+				+ "[root@host ~]# ");
+		TableParser parser = LinuxParsers.ps();
+		cli.handleCliCommand(LinuxParsers.command("ps -eo pid,ppid,user,args", parser));
+
+		List<Map<String, String>> records = parser.getRecords();
+		Assert.assertEquals(2, records.size());
+		Assert.assertEquals("1", records.get(0).get("PID"));
+		Assert.assertEquals("/usr/lib/systemd/systemd --system --deserialize 21", records.get(0).get("COMMAND"));
+		Assert.assertEquals("812", records.get(1).get("PID"));
+		Assert.assertEquals("1", records.get(1).get("PPID"));
+	}
+
+	@Test
+	public void rpmPackagesTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.feed("rpm -qa\r\nbash\t4.2.46\t34.el7\tx86_64\r\nopenssh\t7.4p1\t21.el7\tx86_64\r\n[root@host ~]# ");
+		DelimitedParser parser = LinuxParsers.rpmPackages();
+		CliCommand command = LinuxParsers.command("rpm -qa", parser);
+		command.setRetainOutput(false);
+		cli.handleCliCommand(command);
+
+		List<Map<String, String>> records = parser.getRecords();
+		Assert.assertEquals(2, records.size());
+		Assert.assertEquals("bash", records.get(0).get("name"));
+		Assert.assertEquals("34.el7", records.get(0).get("release"));
+		Assert.assertEquals("x86_64", records.get(1).get("arch"));
+	}
+
+	@Test
+	public void ipAddressesTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.feed("ip -o addr show\r\n"
+				+ "1: lo    inet 127.0.0.1/8 scope host lo\\       valid_lft forever preferred_lft forever\r\n"
+				+ "2: eth0    inet6 fe80::1/64 scope link \\       valid_lft forever preferred_lft forever\r\n"
+				+ "[root@host ~]# ");
+		OutputParser<Map<String, String>> parser = LinuxParsers.ipAddresses();
+		cli.handleCliCommand(LinuxParsers.command(LinuxParsers.IP_ADDR_COMMAND, parser));
+
+		List<Map<String, String>> records = parser.getRecords();
+		Assert.assertEquals(2, records.size());
+		Assert.assertEquals("lo", records.get(0).get("interface"));
+		Assert.assertEquals("127.0.0.1", records.get(0).get("address"));
+		Assert.assertEquals("8", records.get(0).get("prefix"));
+		Assert.assertEquals("inet6", records.get(1).get("family"));
+		Assert.assertEquals("fe80::1", records.get(1).get("address"));
+	}
+
+	@Test
+	public void keyValueTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		cli.feed("cat /etc/os-release\r\nNAME=\"CentOS Linux\"\r\nID=\"centos\"\r\nbroken line\r\n\r\nVERSION_ID=\"7\"\r\n[root@host ~]# ");
+		KeyValueParser parser = LinuxParsers.osRelease();
+		cli.handleCliCommand(LinuxParsers.command(LinuxParsers.OS_RELEASE_COMMAND, parser));
+
+		List<Map<String, String>> records = parser.getRecords();
+		Assert.assertEquals(2, records.size());
+		Assert.assertEquals("CentOS Linux", records.get(0).get("NAME"));
+		Assert.assertEquals("centos", records.get(0).get("ID"));
+		Assert.assertEquals(2, records.get(0).size());
+		Assert.assertEquals("7", records.get(1).get("VERSION_ID"));
+	}
+
+	@Test
+	public void streamBeforePromptTest() throws Exception{
+		PipedCliConnection cli = new PipedCliConnection(PROMPT);
+		TableParser parser = new TableParser("name", "size");
+		Iterator<Map<String, String>> records = parser.stream().iterator();
+		CompletableFuture<String> output = cli.handleCliCommandAsync(LinuxParsers.command("ls -s", parser));
+
+		cli.feed("ls -s\r\nfile1 10\r\n");
+		Assert.assertTrue(records.hasNext());
+		Assert.assertEquals("file1", records.next().get("name"));
+		Assert.assertFalse("The record must arrive before the prompt", output.isDone());
+
+		cli.feed("file2 20\r\n[root@host ~]# ");
+		Assert.assertEquals("20", records.next().get("size"));
+		Assert.assertFalse(records.hasNext());
+		output.get(5, TimeUnit.SECONDS);
+	}
+}
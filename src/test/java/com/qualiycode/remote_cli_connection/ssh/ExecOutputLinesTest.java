@@ -0,0 +1,108 @@
+package com.qualiycode.remote_cli_connection.ssh;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.CliOutputListener;
+import com.qualiycode.remote_cli_connection.parser.KeyValueParser;
+
+/**
+ * This is a unit test class that test sending the exec channel output to the command listener and parser as it arrives
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class ExecOutputLinesTest {
+
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	
+	/**
+	 * Collects the lines it gets
+	 */
+	private static class CollectingListener implements CliOutputListener{
+		final List<String> lines = new ArrayList<>();
+		int ended = 0;
+		
+		@Override
+		public void outputLine(CliCommand command, String line) throws Exception {
+			lines.add(line);
+		}
+		
+		@Override
+		public void outputEnded(CliCommand command) {
+			ended++;
+		}
+	}
+	
+	@Test
+	public void linesSentAsTheyArriveTest() throws Exception{
+		CliCommand command = new CliCommand("cat /etc/os-release");
+		CollectingListener listener = new CollectingListener();
+		command.setOutputListener(listener);
+		SshCliConnection.ExecOutputLines lines = new SshCliConnection.ExecOutputLines(command, CHARSET);
+		
+		byte[] data = "first\nsec".getBytes(CHARSET);
+		lines.write(data, data.length);
+		Assert.assertEquals(1, listener.lines.size());
+		Assert.assertEquals("first\n", listener.lines.get(0));
+		
+		data = "ond\nlast".getBytes(CHARSET);
+		lines.write(data, data.length);
+		Assert.assertEquals("second\n", listener.lines.get(1));
+		Assert.assertEquals(0, listener.ended);
+		
+		//the last line has no line terminator, it is sent once the output ended
+		lines.end();
+		lines.end();
+		Assert.assertEquals(3, listener.lines.size());
+		Assert.assertEquals("last", listener.lines.get(2));
+		Assert.assertEquals(1, listener.ended);
+	}
+	
+	@Test
+	public void splitCharTest() throws Exception{
+		CliCommand command = new CliCommand("cat /etc/motd");
+		CollectingListener listener = new CollectingListener();
+		command.setOutputListener(listener);
+		SshCliConnection.ExecOutputLines lines = new SshCliConnection.ExecOutputLines(command, CHARSET);
+		
+		//a two bytes char split between two reads
+		byte[] data = "שלום\n".getBytes(CHARSET);
+		lines.write(new byte[]{data[0]}, 1);
+		byte[] rest = new byte[data.length - 1];
+		System.arraycopy(data, 1, rest, 0, rest.length);
+		lines.write(rest, rest.length);
+		lines.end();
+		
+		Assert.assertEquals(1, listener.lines.size());
+		Assert.assertEquals("שלום\n", listener.lines.get(0));
+	}
+	
+	@Test
+	public void parserTest() throws Exception{
+		CliCommand command = new CliCommand("cat /etc/os-release");
+		KeyValueParser parser = new KeyValueParser("=");
+		//there is no command echo in the exec output
+		parser.setSkipCommandEcho(false);
+		command.setOutputParser(parser);
+		SshCliConnection.ExecOutputLines lines = new SshCliConnection.ExecOutputLines(command, CHARSET);
+		
+		byte[] data = "ID=centos\nVERSION_ID=7".getBytes(CHARSET);
+		lines.write(data, data.length);
+		lines.end();
+		
+		List<Map<String, String>> records = parser.getRecords();
+		Assert.assertEquals(1, records.size());
+		Assert.assertEquals("centos", records.get(0).get("ID"));
+		Assert.assertEquals("7", records.get(0).get("VERSION_ID"));
+	}
+}
@@ -0,0 +1,148 @@
+package com.qualiycode.remote_cli_connection.ssh;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+import com.qualiycode.remote_cli_connection.TerminalInputBuffer;
+
+/**
+ * This is a unit test class that test reconnecting a lost SSH CLI connection
+ * 
+ * The connection only pretends to connect, the first "session" is lost as soon as a command is sent 
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class SshCliConnectionReconnectTest {
+
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+	
+	/**
+	 * A connection that pretends to connect, its first session is lost when a command is sent 
+	 */
+	private static class DroppingConnection extends SshCliConnection{
+		volatile boolean connected = false;
+		int sessions = 0;
+		
+		/**
+		 * If set - the first session is not lost, it answers any command with this output 
+		 */
+		String firstSessionOutput = null;
+		
+		DroppingConnection(){
+			super("user", "password", "127.0.0.1", "]# ");
+			setNumberOfRetries(1);
+		}
+		
+		@Override
+		protected boolean doConnect() {
+			final int session = ++sessions;
+			final TerminalInputBuffer buffer = new TerminalInputBuffer();
+			inputBuffer = buffer;
+			dataIn = new BufferedReader(new InputStreamReader(buffer.getInputStream(), CHARSET));
+			dataOut = new DataOutputStream(new OutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					if(b != '\n'){
+						return;
+					}
+					if(session == 1 && firstSessionOutput != null){
+						buffer.getOutputStream().write(firstSessionOutput.getBytes(CHARSET));
+					}else if(session == 1){
+						//the session is lost, the transport closes the channel output stream
+						connected = false;
+						buffer.getOutputStream().close();
+					}else{
+						buffer.getOutputStream().write("uptime\nup 10 days\n]# ".getBytes(CHARSET));
+					}
+				}
+			});
+			try {
+				buffer.getOutputStream().write("]# ".getBytes(CHARSET));
+			} catch (IOException e) {
+				return false;
+			}
+			connected = true;
+			return true;
+		}
+		
+		@Override
+		public boolean doDisconnect() {
+			disconnectRequested = true;
+			connected = false;
+			return true;
+		}
+		
+		@Override
+		public boolean isConnected() throws Exception {
+			return connected;
+		}
+	}
+	
+	@Test
+	public void idempotentCommandRetryTest() throws Exception{
+		DroppingConnection connection = new DroppingConnection();
+		connection.setAutoReconnect(true);
+		Assert.assertTrue(connection.connect());
+		
+		CliCommand command = new CliCommand("uptime");
+		command.setTimeout(5000);
+		command.setIdempotent(true);
+		long startTime = System.currentTimeMillis();
+		String output = connection.handleCliCommand(command);
+		
+		Assert.assertTrue(output.contains("up 10 days"));
+		Assert.assertEquals(2, connection.sessions);
+		Assert.assertTrue("the lost session should be detected without waiting for the timeout", System.currentTimeMillis() - startTime < 5000);
+	}
+	
+	@Test
+	public void unreadBytesDroppedTest() throws Exception{
+		DroppingConnection connection = new DroppingConnection();
+		connection.setBytePromptMatching(true);
+		//the characters after the prompt stay unread in the byte read buffer
+		connection.firstSessionOutput = "hostname\nhost1\n]# late]# ";
+		Assert.assertTrue(connection.connect());
+		Assert.assertTrue(connection.handleCliCommand(new CliCommand("hostname")).contains("host1"));
+		
+		//the session is lost, the unread bytes belong to it and must not be read as the start of the new session output
+		connection.connected = false;
+		Assert.assertTrue(connection.reconnect());
+		Assert.assertEquals(2, connection.sessions);
+		String output = connection.handleCliCommand(new CliCommand("uptime"));
+		Assert.assertTrue(output, output.contains("up 10 days"));
+		Assert.assertFalse(output, output.contains("late"));
+	}
+	
+	@Test
+	public void notIdempotentCommandTest() throws Exception{
+		DroppingConnection connection = new DroppingConnection();
+		connection.setAutoReconnect(true);
+		Assert.assertTrue(connection.connect());
+		
+		CliCommand command = new CliCommand("reboot");
+		command.setTimeout(5000);
+		try {
+			connection.handleCliCommand(command);
+			Assert.fail("a command that is not idempotent should not run again");
+		} catch (Exception e) {
+			//expected
+		}
+		Assert.assertEquals(1, connection.sessions);
+		
+		//the next command reconnects before it is sent
+		Assert.assertTrue(connection.handleCliCommand(new CliCommand("uptime")).contains("up 10 days"));
+		Assert.assertEquals(2, connection.sessions);
+	}
+}
@@ -0,0 +1,172 @@
+package com.qualiycode.remote_cli_connection.ssh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.jcraft.jsch.Session;
+
+/**
+ * This is a unit test class that test the shared SSH session
+ * 
+ * The session only pretends to run the SSH handshake, so no remote machine is needed
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class SshCliSessionTest {
+
+	/**
+	 * A session that pretends to run the SSH handshake
+	 */
+	private static class FakeSession extends SshCliSession{
+		final AtomicInteger running;
+		final AtomicInteger maxRunning;
+		final AtomicInteger handshakes = new AtomicInteger();
+		volatile boolean connected = false;
+		volatile int lastTimeout = -1;
+		long handshakeMillis = 0;
+		boolean fail = false;
+		
+		FakeSession(AtomicInteger running, AtomicInteger maxRunning){
+			super("user", "password", "127.0.0.1");
+			this.running = running;
+			this.maxRunning = maxRunning;
+		}
+		
+		FakeSession(){
+			this(new AtomicInteger(), new AtomicInteger());
+		}
+		
+		@Override
+		protected void handshake(Session session, int timeout) throws Exception {
+			handshakes.incrementAndGet();
+			lastTimeout = timeout;
+			int now = running.incrementAndGet();
+			synchronized (maxRunning) {
+				maxRunning.set(Math.max(maxRunning.get(), now));
+			}
+			try {
+				Thread.sleep(handshakeMillis);
+				if(fail){
+					throw new Exception("Auth fail");
+				}
+				connected = true;
+			} finally {
+				running.decrementAndGet();
+			}
+		}
+		
+		@Override
+		public boolean isConnected() {
+			return connected;
+		}
+	}
+	
+	@Test
+	public void handshakePermitsTest() throws Exception{
+		Semaphore permits = new Semaphore(2);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(6);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for(int i=0; i<6; i++){
+				final FakeSession session = new FakeSession(running, maxRunning);
+				session.handshakeMillis = 50;
+				session.setHandshakePermits(permits);
+				results.add(executor.submit(() -> session.connect()));
+			}
+			for(Future<Boolean> result : results){
+				Assert.assertTrue(result.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		//no more than two handshakes at the same time, and all the permits are returned
+		Assert.assertEquals(2, maxRunning.get());
+		Assert.assertEquals(2, permits.availablePermits());
+	}
+	
+	@Test
+	public void failedHandshakeReleasesPermitTest() throws Exception{
+		Semaphore permits = new Semaphore(1);
+		FakeSession session = new FakeSession();
+		session.fail = true;
+		session.setHandshakePermits(permits);
+		
+		Assert.assertFalse(session.connect());
+		Assert.assertEquals(session.getNumberOfRetries(), session.handshakes.get());
+		Assert.assertEquals(1, permits.availablePermits());
+	}
+	
+	@Test
+	public void handshakePermitTimeoutTest() throws Exception{
+		Semaphore permits = new Semaphore(1);
+		permits.acquire();
+		FakeSession session = new FakeSession();
+		session.setHandshakePermits(permits);
+		session.setConnectTimeout(100);
+		session.setNumberOfRetries(1);
+		
+		//no free handshake slot within the connect timeout
+		Assert.assertFalse(session.connect());
+		Assert.assertEquals(0, session.handshakes.get());
+		Assert.assertEquals(0, permits.availablePermits());
+	}
+	
+	@Test
+	public void handshakeTimeoutIncludesWaitTest() throws Exception{
+		final Semaphore permits = new Semaphore(1);
+		permits.acquire();
+		FakeSession session = new FakeSession();
+		session.setHandshakePermits(permits);
+		session.setConnectTimeout(2000);
+		
+		Thread releaser = new Thread(() -> {
+			try {
+				Thread.sleep(300);
+			} catch (InterruptedException e) {
+				return;
+			}
+			permits.release();
+		});
+		releaser.start();
+		Assert.assertTrue(session.connect());
+		releaser.join();
+		
+		//the time spent waiting for the slot is taken from the handshake timeout
+		Assert.assertTrue(session.lastTimeout > 0);
+		Assert.assertTrue(session.lastTimeout <= 1800);
+		Assert.assertEquals(1, permits.availablePermits());
+	}
+	
+	@Test
+	public void sharedSessionNotConnectedTest() throws Exception{
+		FakeSession session = new FakeSession();
+		SshCliConnection connection = new SshCliConnection(session, ShellType.EXEC, "]# ");
+		connection.setNumberOfRetries(1);
+		
+		//a connection does not open a shared session, its owner does
+		Assert.assertFalse(connection.connect());
+		Assert.assertEquals(0, session.handshakes.get());
+		try {
+			session.openConnection(ShellType.EXEC, "]# ");
+			Assert.fail("Expected the connection to fail");
+		} catch (Exception e) {
+			//expected
+		}
+	}
+}
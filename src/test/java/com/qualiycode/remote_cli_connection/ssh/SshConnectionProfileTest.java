@@ -0,0 +1,87 @@
+package com.qualiycode.remote_cli_connection.ssh;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.jcraft.jsch.Compression;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.Session;
+
+/**
+ * This is a unit test class that test setting the SSH algorithm profiles on a session (the session is not connected)
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class SshConnectionProfileTest {
+
+	@Test
+	public void defaultProfileTest() throws Exception{
+		Session session = new JSch().getSession("user", "127.0.0.1", 22);
+		String kex = session.getConfig("kex");
+		String compression = session.getConfig("compression.s2c");
+		
+		SshConnectionProfile.DEFAULT.apply(session);
+		
+		Assert.assertEquals(kex, session.getConfig("kex"));
+		Assert.assertEquals(compression, session.getConfig("compression.s2c"));
+	}
+	
+	@Test
+	public void highThroughputProfileTest() throws Exception{
+		Session session = new JSch().getSession("user", "127.0.0.1", 22);
+		
+		SshConnectionProfile.HIGH_THROUGHPUT.apply(session);
+		
+		Assert.assertTrue(session.getConfig("kex").startsWith("ecdh-sha2-nistp256,"));
+		Assert.assertTrue(session.getConfig("cipher.c2s").startsWith("aes128-ctr,"));
+		Assert.assertTrue(session.getConfig("mac.s2c").startsWith("hmac-sha1,"));
+		Assert.assertEquals("zlib@openssh.com,zlib,none", session.getConfig("compression.s2c"));
+		Assert.assertEquals("zlib@openssh.com,zlib,none", session.getConfig("compression.c2s"));
+		Assert.assertEquals("6", session.getConfig("compression_level"));
+	}
+	
+	@Test
+	public void compressionAvailableTest() throws Exception{
+		//JSCH compresses using jzlib, without it a session that negotiated zlib fails once the compression starts
+		Compression deflater = (Compression) Class.forName(JSch.getConfig("zlib@openssh.com")).getDeclaredConstructor().newInstance();
+		Compression inflater = (Compression) Class.forName(JSch.getConfig("zlib")).getDeclaredConstructor().newInstance();
+		deflater.init(Compression.DEFLATER, 6);
+		inflater.init(Compression.INFLATER, 0);
+		
+		//the data starts at an offset, like the payload of an SSH packet
+		StringBuilder text = new StringBuilder();
+		for(int i=0; i<200; i++){
+			text.append("drwxr-xr-x 2 root root 4096 Jan 1 00:00 dir").append(i).append('\n');
+		}
+		byte[] data = text.toString().getBytes("UTF-8");
+		int start = 5;
+		byte[] packet = new byte[start + data.length];
+		System.arraycopy(data, 0, packet, start, data.length);
+		int[] length = {packet.length};
+		byte[] compressed = deflater.compress(packet, start, length);
+		Assert.assertTrue(length[0] - start < data.length);
+		
+		length[0] = length[0] - start;
+		byte[] uncompressed = inflater.uncompress(compressed, start, length);
+		Assert.assertEquals(text.toString(), new String(uncompressed, start, length[0], "UTF-8"));
+	}
+	
+	@Test
+	public void profilesUseSupportedAlgorithmsTest() throws Exception{
+		//every algorithm in the profiles must be known to JSCH, otherwise the negotiation fails
+		for(SshConnectionProfile profile : SshConnectionProfile.values()){
+			for(String list : new String[]{profile.getKex(), profile.getCipher(), profile.getMac()}){
+				if(list == null){
+					continue;
+				}
+				for(String algorithm : list.split(",")){
+					Assert.assertNotNull(profile + " uses an unknown algorithm: " + algorithm, JSch.getConfig(algorithm));
+				}
+			}
+		}
+	}
+}
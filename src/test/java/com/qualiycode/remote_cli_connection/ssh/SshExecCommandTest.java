@@ -0,0 +1,155 @@
+package com.qualiycode.remote_cli_connection.ssh;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sshd.server.Command;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.qualiycode.remote_cli_connection.CliCommand;
+
+/**
+ * This is a unit test class that test running commands on SSH exec channels
+ *
+ * The commands run against a local SSH server (Apache SSHD), the command "lines N" outputs N numbered lines
+ * and writes "done" to the error output
+ *
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class SshExecCommandTest {
+
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private SshServer server;
+	private SshCliConnection connection;
+
+	/**
+	 * Outputs the number of lines given in the command line
+	 */
+	private static class LinesCommand implements Command{
+		private final int count;
+		private OutputStream out;
+		private OutputStream err;
+		private ExitCallback exitCallback;
+
+		LinesCommand(String command){
+			count = Integer.parseInt(command.substring(command.indexOf(' ') + 1));
+		}
+
+		@Override
+		public void start(Environment env) {
+			new Thread(() -> {
+				try {
+					for(int i=0; i<count; i++){
+						out.write(("line " + i + "\n").getBytes(CHARSET));
+					}
+					out.flush();
+					err.write("done\n".getBytes(CHARSET));
+					err.flush();
+					exitCallback.onExit(0);
+				} catch (Exception e) {
+					exitCallback.onExit(1, e.getMessage());
+				}
+			}).start();
+		}
+
+		@Override
+		public void destroy() {
+		}
+
+		@Override
+		public void setInputStream(InputStream in) {
+		}
+
+		@Override
+		public void setOutputStream(OutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void setErrorStream(OutputStream err) {
+			this.err = err;
+		}
+
+		@Override
+		public void setExitCallback(ExitCallback exitCallback) {
+			this.exitCallback = exitCallback;
+		}
+	}
+
+	@Before
+	public void startServer() throws Exception{
+		server = SshServer.setUpDefaultServer();
+		server.setHost("127.0.0.1");
+		server.setPort(0);
+		server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+		server.setPasswordAuthenticator((username, password, serverSession) -> "user".equals(username) && "password".equals(password));
+		server.setCommandFactory(LinesCommand::new);
+		server.start();
+
+		connection = new SshCliConnection("user", "password", "127.0.0.1", server.getPort(), ShellType.EXEC, "]# ");
+		connection.setNumberOfRetries(1);
+		Assert.assertTrue(connection.connect());
+	}
+
+	@After
+	public void stopServer() throws Exception{
+		if(connection != null){
+			connection.disconnect();
+		}
+		if(server != null){
+			server.stop(true);
+		}
+	}
+
+	@Test
+	public void outputTest() throws Exception{
+		CliCommand command = new CliCommand("lines 2");
+		Assert.assertEquals("line 0\nline 1\n", connection.handleCliCommand(command));
+		Assert.assertEquals("done\n", command.getErrorOutput());
+		Assert.assertEquals(0, command.getExitStatus());
+		Assert.assertTrue(command.isOutputComplete());
+	}
+
+	@Test
+	public void spilledOutputTest() throws Exception{
+		//the output is moved to a file like the output of a terminal command
+		CliCommand command = new CliCommand("lines 1000");
+		command.setOutputSpillThreshold(1024);
+		command.setSilent(true);
+		Assert.assertEquals("", connection.handleCliCommand(command));
+		Assert.assertTrue(command.isOutputSpilled());
+		CharSequence output = command.getOutput();
+		Assert.assertEquals(8890, output.length());
+		Assert.assertEquals("line 999\n", output.subSequence(output.length() - 9, output.length()).toString());
+		command.releaseOutput();
+	}
+
+	@Test
+	public void outputNotRetainedTest() throws Exception{
+		//the lines are only sent to the listener
+		final AtomicInteger lines = new AtomicInteger();
+		CliCommand command = new CliCommand("lines 1000");
+		command.setRetainOutput(false);
+		command.setSilent(true);
+		command.setOutputListener((cliCommand, line) -> lines.incrementAndGet());
+		Assert.assertEquals("", connection.handleCliCommand(command));
+		Assert.assertEquals(1000, lines.get());
+		Assert.assertEquals("", command.getErrorOutput());
+		Assert.assertFalse(command.isOutputSpilled());
+		Assert.assertEquals(0, command.getExitStatus());
+	}
+}
@@ -0,0 +1,268 @@
+package com.qualiycode.remote_cli_connection.ssh.pool;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.qualiycode.remote_cli_connection.TerminalInputBuffer;
+import com.qualiycode.remote_cli_connection.ssh.SshCliConnection;
+
+/**
+ * This is a unit test class that test the SSH CLI connections pool
+ * 
+ * The pool is tested with connections that only pretend to connect, so no remote machine is needed
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class SshCliConnectionPoolTest {
+
+	/**
+	 * A connection that pretends to connect
+	 */
+	private static class FakeConnection extends SshCliConnection{
+		boolean connected = false;
+		
+		/**
+		 * When set, disconnect waits until the latch is released (a slow network)
+		 */
+		CountDownLatch disconnectLatch = null;
+		
+		FakeConnection(SshConnectionKey key){
+			super(key.getUsername(), key.getPassword(), key.getIp(), key.getEndLineStr());
+		}
+		
+		@Override
+		public boolean connect() throws Exception {
+			connected = true;
+			return true;
+		}
+		
+		@Override
+		public boolean disconnect() {
+			if(disconnectLatch != null){
+				try {
+					disconnectLatch.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			connected = false;
+			return true;
+		}
+		
+		@Override
+		public boolean isConnected() throws Exception {
+			return connected;
+		}
+	}
+	
+	/**
+	 * A connection with an in-memory terminal, the remote output is fed by the test
+	 */
+	private static class TerminalConnection extends SshCliConnection{
+		boolean connected = false;
+		
+		TerminalConnection(SshConnectionKey key){
+			super(key.getUsername(), key.getPassword(), key.getIp(), key.getEndLineStr());
+			setNumberOfRetries(1);
+		}
+		
+		@Override
+		protected boolean doConnect() {
+			inputBuffer = new TerminalInputBuffer();
+			dataIn = new BufferedReader(new InputStreamReader(inputBuffer.getInputStream(), Charset.forName("UTF-8")));
+			dataOut = new DataOutputStream(new OutputStream() {
+				@Override
+				public void write(int b) {
+				}
+			});
+			connected = true;
+			try {
+				feed("]# ");
+			} catch (IOException e) {
+				return false;
+			}
+			return true;
+		}
+		
+		@Override
+		public boolean doDisconnect() {
+			connected = false;
+			return true;
+		}
+		
+		@Override
+		public boolean isConnected() throws Exception {
+			return connected;
+		}
+		
+		void feed(String output) throws IOException{
+			inputBuffer.getOutputStream().write(output.getBytes(Charset.forName("UTF-8")));
+		}
+	}
+	
+	/**
+	 * A pool of connections that pretend to connect
+	 */
+	private static class FakePool extends SshCliConnectionPool{
+		@Override
+		protected SshCliConnection createConnection(SshConnectionKey key) throws Exception {
+			return new FakeConnection(key);
+		}
+	}
+	
+	@Test
+	public void reuseConnectionTest() throws Exception{
+		SshCliConnectionPool pool = new FakePool();
+		SshConnectionKey key = new SshConnectionKey("user", "password", "10.0.0.1", "]# ");
+		
+		SshCliConnection first = pool.borrow(key);
+		pool.returnConnection(first);
+		SshCliConnection second = pool.borrow(new SshConnectionKey("user", "password", "10.0.0.1", "]# "));
+		
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, pool.getHits());
+		Assert.assertEquals(1, pool.getMisses());
+		pool.returnConnection(second);
+		
+		//a different password must not get the connection that was authenticated with the right one
+		SshCliConnection otherPassword = pool.borrow(new SshConnectionKey("user", "other password", "10.0.0.1", "]# "));
+		Assert.assertNotSame(first, otherPassword);
+		Assert.assertEquals(2, pool.getMisses());
+		
+		//a different user is a different key
+		SshCliConnection third = pool.borrow(new SshConnectionKey("admin", "password", "10.0.0.1", "]# "));
+		Assert.assertNotSame(first, third);
+		Assert.assertEquals(3, pool.getTotalConnections());
+	}
+	
+	@Test
+	public void deadConnectionTest() throws Exception{
+		SshCliConnectionPool pool = new FakePool();
+		SshConnectionKey key = new SshConnectionKey("user", "password", "10.0.0.1", "]# ");
+		
+		SshCliConnection first = pool.borrow(key);
+		pool.returnConnection(first);
+		((FakeConnection)first).connected = false;
+		SshCliConnection second = pool.borrow(key);
+		
+		Assert.assertNotSame(first, second);
+		Assert.assertEquals(1, pool.getValidationFailures());
+		Assert.assertEquals(1, pool.getTotalConnections());
+	}
+	
+	@Test
+	public void limitsTest() throws Exception{
+		SshCliConnectionPool pool = new FakePool();
+		pool.setMaxConnectionsPerHost(1);
+		pool.setMaxConnections(2);
+		pool.setBorrowTimeout(200);
+		
+		SshCliConnection host1 = pool.borrow(new SshConnectionKey("user", "password", "10.0.0.1", "]# "));
+		try {
+			pool.borrow(new SshConnectionKey("admin", "password", "10.0.0.1", "]# "));
+			Assert.fail("Expected the per host limit to be reached");
+		} catch (Exception e) {
+			//expected
+		}
+		SshCliConnection host2 = pool.borrow(new SshConnectionKey("user", "password", "10.0.0.2", "]# "));
+		pool.returnConnection(host2);
+		
+		//the idle connection to host2 is closed to make room for host3
+		SshCliConnection host3 = pool.borrow(new SshConnectionKey("user", "password", "10.0.0.3", "]# "));
+		Assert.assertFalse(host2.isConnected());
+		Assert.assertEquals(1, pool.getEvictions());
+		
+		pool.returnConnection(host1);
+		pool.returnConnection(host3);
+		Assert.assertEquals(0, pool.getBorrowedConnections());
+	}
+	
+	@Test
+	public void evictionOutsideLockTest() throws Exception{
+		final SshCliConnectionPool pool = new FakePool();
+		pool.setMaxConnections(2);
+		
+		SshCliConnection host1 = pool.borrow(new SshConnectionKey("user", "password", "10.0.0.1", "]# "));
+		SshCliConnection host2 = pool.borrow(new SshConnectionKey("user", "password", "10.0.0.2", "]# "));
+		CountDownLatch disconnectLatch = new CountDownLatch(1);
+		((FakeConnection) host2).disconnectLatch = disconnectLatch;
+		pool.returnConnection(host2);
+		
+		//evicting host2 blocks in disconnect
+		CompletableFuture<SshCliConnection> host3 = CompletableFuture.supplyAsync(() -> {
+			try {
+				return pool.borrow(new SshConnectionKey("user", "password", "10.0.0.3", "]# "));
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		long deadline = System.currentTimeMillis() + 5000;
+		while(pool.getEvictions() == 0){
+			Assert.assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(5);
+		}
+		
+		//the pool is still usable while the evicted connection is disconnecting
+		CompletableFuture<Void> returned = CompletableFuture.runAsync(() -> pool.returnConnection(host1));
+		returned.get(5, TimeUnit.SECONDS);
+		Assert.assertFalse(host3.isDone());
+		
+		disconnectLatch.countDown();
+		Assert.assertNotNull(host3.get(5, TimeUnit.SECONDS));
+		Assert.assertFalse(host2.isConnected());
+	}
+	
+	@Test
+	public void idleEvictionTest() throws Exception{
+		SshCliConnectionPool pool = new FakePool();
+		pool.setIdleTimeout(50);
+		SshConnectionKey key = new SshConnectionKey("user", "password", "10.0.0.1", "]# ");
+		
+		SshCliConnection connection = pool.borrow(key);
+		pool.returnConnection(connection);
+		Thread.sleep(100);
+		
+		Assert.assertEquals(1, pool.evictIdleConnections());
+		Assert.assertFalse(connection.isConnected());
+		Assert.assertEquals(0, pool.getTotalConnections());
+	}
+	
+	@Test
+	public void pendingOutputDroppedTest() throws Exception{
+		SshCliConnectionPool pool = new SshCliConnectionPool(){
+			@Override
+			protected SshCliConnection createConnection(SshConnectionKey key) throws Exception {
+				return new TerminalConnection(key);
+			}
+		};
+		SshConnectionKey key = new SshConnectionKey("user", "password", "10.0.0.1", "]# ");
+		
+		//the first user leaves output after the end prompt, and more output arrives after the connection was returned
+		TerminalConnection first = (TerminalConnection) pool.borrow(key);
+		first.feed("uname\r\nLinux\r\n]# late output");
+		Assert.assertEquals("uname\r\nLinux\r\n]# ", first.handleCliCommand("uname"));
+		pool.returnConnection(first);
+		first.feed(" and more\r\n]# ");
+		
+		//the next user gets only the output of its own command
+		TerminalConnection second = (TerminalConnection) pool.borrow(key);
+		Assert.assertSame(first, second);
+		second.feed("ls\r\nfile1\r\n]# ");
+		Assert.assertEquals("ls\r\nfile1\r\n]# ", second.handleCliCommand("ls"));
+		pool.close();
+	}
+}
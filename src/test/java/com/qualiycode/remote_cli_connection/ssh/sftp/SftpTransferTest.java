@@ -0,0 +1,205 @@
+package com.qualiycode.remote_cli_connection.ssh.sftp;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Random;
+
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.Session;
+
+/**
+ * This is a unit test class that test the SFTP transfers, planning and metrics
+ * 
+ * The transfers run against a local SFTP server (Apache SSHD) that serves a temporary directory
+ * 
+ * @author Eli Rozenfeld
+ *
+ */
+@RunWith(JUnit4.class)
+public class SftpTransferTest {
+
+	private static final long MB = 1024 * 1024;
+	
+	private SshServer server;
+	private Session session;
+	private Path remoteRoot;
+	private Path localRoot;
+	
+	@Before
+	public void startServer() throws Exception{
+		remoteRoot = Files.createTempDirectory("sftp-remote-");
+		localRoot = Files.createTempDirectory("sftp-local-");
+		server = SshServer.setUpDefaultServer();
+		server.setHost("127.0.0.1");
+		server.setPort(0);
+		server.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+		server.setPasswordAuthenticator((username, password, serverSession) -> "user".equals(username) && "password".equals(password));
+		server.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+		server.setFileSystemFactory(new VirtualFileSystemFactory(remoteRoot));
+		server.start();
+		
+		session = new JSch().getSession("user", "127.0.0.1", server.getPort());
+		session.setPassword("password");
+		session.setConfig("StrictHostKeyChecking", "no");
+		session.connect(10000);
+	}
+	
+	@After
+	public void stopServer() throws Exception{
+		if(session != null){
+			session.disconnect();
+		}
+		if(server != null){
+			server.stop(true);
+		}
+		deleteTree(remoteRoot);
+		deleteTree(localRoot);
+	}
+	
+	@Test
+	public void fileTransferTest() throws Exception{
+		byte[] data = randomBytes(300 * 1024);
+		Path local = localRoot.resolve("upload.bin");
+		Files.write(local, data);
+		
+		try (SftpTransfer transfer = new SftpTransfer(session, 2)) {
+			SftpTransferResult upload = transfer.upload(local, "/upload.bin");
+			Assert.assertTrue(upload.isSuccessful());
+			Assert.assertEquals(1, upload.getFiles());
+			Assert.assertEquals(data.length, upload.getBytes());
+			Assert.assertArrayEquals(data, Files.readAllBytes(remoteRoot.resolve("upload.bin")));
+			
+			Path downloaded = localRoot.resolve("download.bin");
+			SftpTransferResult download = transfer.download("/upload.bin", downloaded);
+			Assert.assertEquals(1, download.getFiles());
+			Assert.assertEquals(data.length, download.getBytes());
+			Assert.assertArrayEquals(data, Files.readAllBytes(downloaded));
+		}
+	}
+	
+	@Test
+	public void rangedDownloadTest() throws Exception{
+		//the size is not a multiple of the range size, so the last range is shorter
+		byte[] data = randomBytes((int)MB + 12345);
+		Files.write(remoteRoot.resolve("big.bin"), data);
+		
+		try (SftpTransfer transfer = new SftpTransfer(session, 4)) {
+			transfer.setParallelThreshold(256 * 1024);
+			transfer.setMinRangeSize(128 * 1024);
+			Assert.assertEquals(4, transfer.getRangeCount(data.length));
+			
+			Path downloaded = localRoot.resolve("big.bin");
+			SftpTransferResult result = transfer.download("/big.bin", downloaded);
+			Assert.assertEquals(1, result.getFiles());
+			Assert.assertEquals(data.length, result.getBytes());
+			Assert.assertArrayEquals(data, Files.readAllBytes(downloaded));
+		}
+	}
+	
+	@Test
+	public void directoryTreeTest() throws Exception{
+		Path tree = localRoot.resolve("tree");
+		Files.createDirectories(tree.resolve("etc/ssh"));
+		Files.createDirectories(tree.resolve("empty"));
+		Files.write(tree.resolve("motd"), "welcome\n".getBytes("UTF-8"));
+		Files.write(tree.resolve("etc/hosts"), "127.0.0.1 localhost\n".getBytes("UTF-8"));
+		byte[] config = randomBytes(70 * 1024);
+		Files.write(tree.resolve("etc/ssh/sshd_config"), config);
+		
+		try (SftpTransfer transfer = new SftpTransfer(session, 2)) {
+			//the remote directories are created when needed
+			SftpTransferResult upload = transfer.uploadDirectory(tree, "/backup/host1");
+			Assert.assertTrue(upload.isSuccessful());
+			Assert.assertEquals(3, upload.getFiles());
+			Assert.assertTrue(Files.isDirectory(remoteRoot.resolve("backup/host1/empty")));
+			Assert.assertArrayEquals(config, Files.readAllBytes(remoteRoot.resolve("backup/host1/etc/ssh/sshd_config")));
+			
+			Path restored = localRoot.resolve("restored");
+			SftpTransferResult download = transfer.downloadDirectory("/backup/host1", restored);
+			Assert.assertTrue(download.isSuccessful());
+			Assert.assertEquals(3, download.getFiles());
+			Assert.assertEquals("welcome\n", new String(Files.readAllBytes(restored.resolve("motd")), "UTF-8"));
+			Assert.assertEquals("127.0.0.1 localhost\n", new String(Files.readAllBytes(restored.resolve("etc/hosts")), "UTF-8"));
+			Assert.assertArrayEquals(config, Files.readAllBytes(restored.resolve("etc/ssh/sshd_config")));
+			Assert.assertTrue(Files.isDirectory(restored.resolve("empty")));
+		}
+	}
+	
+	@Test
+	public void missingFileTest() throws Exception{
+		try (SftpTransfer transfer = new SftpTransfer(session, 2)) {
+			try {
+				transfer.download("/no/such/file", localRoot.resolve("missing.bin"));
+				Assert.fail("Expected the download to fail");
+			} catch (Exception e) {
+				//expected
+			}
+			
+			//the failed channel is not reused, the next transfer opens a new one
+			Files.write(remoteRoot.resolve("after.txt"), "ok".getBytes("UTF-8"));
+			transfer.download("/after.txt", localRoot.resolve("after.txt"));
+			Assert.assertEquals("ok", new String(Files.readAllBytes(localRoot.resolve("after.txt")), "UTF-8"));
+		}
+	}
+	
+	@Test
+	public void rangeCountTest() throws Exception{
+		SftpTransfer transfer = new SftpTransfer(null, 4);
+		
+		//small files use a single channel
+		Assert.assertEquals(1, transfer.getRangeCount(0));
+		Assert.assertEquals(1, transfer.getRangeCount(31 * MB));
+		
+		//ranges are at least minRangeSize and at most one per channel
+		Assert.assertEquals(4, transfer.getRangeCount(32 * MB));
+		Assert.assertEquals(4, transfer.getRangeCount(1024 * MB));
+		transfer.setMinRangeSize(16 * MB);
+		Assert.assertEquals(2, transfer.getRangeCount(40 * MB));
+		
+		Assert.assertEquals(1, new SftpTransfer(null, 1).getRangeCount(1024 * MB));
+	}
+	
+	@Test
+	public void resultTest() throws Exception{
+		SftpTransferResult result = new SftpTransferResult();
+		result.addBytes(10 * MB);
+		result.fileTransferred();
+		result.fileFailed("/var/log/messages", new Exception("Permission denied"));
+		Thread.sleep(10);
+		result.finished();
+		
+		Assert.assertEquals(10 * MB, result.getBytes());
+		Assert.assertEquals(1, result.getFiles());
+		Assert.assertFalse(result.isSuccessful());
+		Assert.assertTrue(result.getFailures().containsKey("/var/log/messages"));
+		Assert.assertTrue(result.getThroughput() > 0);
+		Assert.assertEquals(result.getDurationNanos(), result.getDurationNanos());
+	}
+	
+	private static byte[] randomBytes(int size){
+		byte[] data = new byte[size];
+		new Random(size).nextBytes(data);
+		return data;
+	}
+	
+	private static void deleteTree(Path root) throws Exception{
+		if(root == null || !Files.exists(root)){
+			return;
+		}
+		try (java.util.stream.Stream<Path> walk = Files.walk(root)) {
+			walk.sorted(Collections.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+}